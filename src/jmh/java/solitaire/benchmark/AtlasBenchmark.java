@@ -0,0 +1,91 @@
+/*
+    Compares drawing every card image from its own decoded PNG, the way ImageLoader used to keep them, with copying
+    the same images out of the atlas ImageLoader packs them into. Both draw the 52 faces and the back once per
+    operation, laid out the way a full board is, onto a canvas in the format of the window.
+
+    Run with ./gradlew jmh. Scores are per 53 images drawn.
+ */
+
+package solitaire.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import solitaire.graphics.ImageLoader;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AtlasBenchmark {
+    private final static int IMAGES = ImageLoader.SPRITE_BACK + 1;
+
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+    private BufferedImage[] separate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ImageLoader.init("images");
+        canvas = new BufferedImage(GameBenchmark.WIDTH, GameBenchmark.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = canvas.createGraphics();
+
+        String[] suitNames = {"spades", "clubs", "hearts", "diamonds"};
+        String[] numberNames = {"ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "jack", "queen", "king"};
+        separate = new BufferedImage[IMAGES];
+        for (int i = 0; i < IMAGES; i++) {
+            String name = i == ImageLoader.SPRITE_BACK ? "back" : numberNames[i % 13] + "_of_" + suitNames[i / 13];
+            try (InputStream in = ClassLoader.getSystemResourceAsStream("images/" + name + ".png")) {
+                separate[i] = ImageIO.read(in);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * Draws each image from its own decoded PNG
+     */
+    @Benchmark
+    public BufferedImage separateImages() {
+        for (int i = 0; i < IMAGES; i++) {
+            graphics.drawImage(separate[i], x(i), y(i), null);
+        }
+        return canvas;
+    }
+
+    /**
+     * Draws each image from the atlas
+     */
+    @Benchmark
+    public BufferedImage atlas() {
+        for (int i = 0; i < IMAGES; i++) {
+            ImageLoader.drawSprite(graphics, i, x(i), y(i));
+        }
+        return canvas;
+    }
+
+    // Seven piles of overlapping cards across the board, like the main piles of a game
+    private static int x(int i) {
+        return 190 + i % 7 * 120;
+    }
+
+    private static int y(int i) {
+        return 10 + i / 7 * 40;
+    }
+}
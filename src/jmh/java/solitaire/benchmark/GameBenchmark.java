@@ -0,0 +1,148 @@
+/*
+    Measures the methods that run on every click and every repaint. Every benchmark starts from the same seeded
+    deals, and each one either leaves the game as it found it or cycles through a fixed set of states, so scores
+    from different runs can be compared.
+
+    Run with ./gradlew jmh. Allocation rates are printed by the gc profiler next to every score.
+ */
+
+package solitaire.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import solitaire.game.CardStack;
+import solitaire.game.Game;
+import solitaire.game.Layout;
+import solitaire.game.PackedState;
+import solitaire.graphics.BoardRenderer;
+import solitaire.graphics.ImageLoader;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameBenchmark {
+    // The window content is 1200 by 800, see GameDisplay
+    public final static int WIDTH = 1200;
+    public final static int HEIGHT = 800;
+
+    @Param({"1", "42", "1000"})
+    public long dealNumber;
+
+    private Game game;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    // The top card of the last main pile, which is always face up in a new deal
+    private int pileTopX;
+    private int pileTopY;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ImageLoader.init("images");
+        canvas = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = canvas.createGraphics();
+
+        game = new Game(null, dealNumber);
+
+        int lastPile = Game.MAIN_PILE_COUNT - 1;
+        int topCard = game.getStack(lastPile).getCardCount() - 1;
+        pileTopX = Layout.cardX(game, lastPile, topCard) + Layout.CARD_WIDTH / 2;
+        pileTopY = Layout.cardY(game, lastPile, topCard) + Layout.CARD_HEIGHT / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * Finds the stack under a face up card
+     */
+    @Benchmark
+    public Object getSelectedCardstack() {
+        return game.getSelectedCardstack(pileTopX, pileTopY);
+    }
+
+    /**
+     * Selects a card, then clears the selection by clicking the empty table
+     */
+    @Benchmark
+    public Game onClickSelectAndClear() {
+        game.onClick(pileTopX, pileTopY);
+        game.onClick(WIDTH - 1, HEIGHT - 1);
+        return game;
+    }
+
+    /**
+     * Clicks the hidden stock, which draws a card or turns the stock over
+     */
+    @Benchmark
+    public Game onClickStock() {
+        game.onClick(Layout.stackX(Game.STACK_HIDDENSTOCK) + Layout.CARD_WIDTH / 2,
+                Layout.stackY(Game.STACK_HIDDENSTOCK) + Layout.CARD_HEIGHT / 2);
+        return game;
+    }
+
+    /**
+     * Draws a card from the stock or turns the stock over without going through a click
+     */
+    @Benchmark
+    public Game cycleStock() {
+        game.cycleStock();
+        return game;
+    }
+
+    /**
+     * Puts the top card of the last pile onto the first pile and takes it off again, the way moveCards does
+     */
+    @Benchmark
+    public CardStack appendAndDeletePartOfStack() {
+        CardStack from = game.getStack(Game.MAIN_PILE_COUNT - 1);
+        CardStack to = game.getStack(0);
+        CardStack moved = from.getSubstack(from.getCardCount() - 1, from.getCardCount());
+
+        to.appendStack(moved);
+        to.deletePartOfStack(moved);
+        return to;
+    }
+
+    /**
+     * Gets the Zobrist hash the stacks keep up to date
+     */
+    @Benchmark
+    public long positionHash() {
+        return game.getPositionHash();
+    }
+
+    /**
+     * Works out the Zobrist hash from scratch by packing the game first
+     */
+    @Benchmark
+    public long packedPositionHash() {
+        return PackedState.of(game).getPositionHash();
+    }
+
+    /**
+     * Paints the whole window the way GameDisplay does
+     */
+    @Benchmark
+    public BufferedImage draw() {
+        graphics.setColor(new Color(0, 102, 0));
+        graphics.fillRect(0, 0, WIDTH, HEIGHT);
+        BoardRenderer.draw(graphics, game, 0, 0);
+        return canvas;
+    }
+}
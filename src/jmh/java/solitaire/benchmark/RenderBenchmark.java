@@ -0,0 +1,62 @@
+/*
+    Measures how many whole boards BoardRenderer draws per second, headless, at the size of the window, at half size
+    and at the size of save thumbnails. The game is a deal part way through, with cards spread down the main piles,
+    on the foundations and in the display stock, so every kind of stack is drawn.
+
+    Run with ./gradlew jmh. Scores are frames per second.
+ */
+
+package solitaire.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.graphics.BoardRenderer;
+import solitaire.graphics.ImageLoader;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenderBenchmark {
+    @Param({"1.0", "0.5", "0.1"})
+    public double scale;
+
+    private Game game;
+    private BoardRenderer renderer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("java.awt.headless", "true");
+        ImageLoader.init("images");
+
+        game = new Game(null, 42);
+        Random random = new Random(42);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        for (int i = 0; i < 60; i++) {
+            int count = game.getLegalMoves(moves);
+            game.applyMove(moves[random.nextInt(count)]);
+        }
+
+        renderer = new BoardRenderer(scale);
+    }
+
+    /**
+     * Draws the whole board into the same image
+     */
+    @Benchmark
+    public BufferedImage render() {
+        return renderer.render(game);
+    }
+}
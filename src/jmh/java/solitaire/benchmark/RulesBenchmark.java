@@ -0,0 +1,69 @@
+/*
+    Compares checking whether one card can be put on another with the Rules tables against working it out from the
+    rank, suit and color of the two Cards, the way Game used to. Every operation checks every card against every top
+    card, and an empty stack, for both a main pile and a foundation.
+
+    Run with ./gradlew jmh. Scores are per 5512 checks.
+ */
+
+package solitaire.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import solitaire.game.Card;
+import solitaire.game.PackedState;
+import solitaire.game.Rules;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RulesBenchmark {
+    /**
+     * Checks every pair with the tables
+     */
+    @Benchmark
+    public int table() {
+        int legal = 0;
+        for (int top = Rules.EMPTY; top < PackedState.CARD_COUNT; top++) {
+            for (int card = 0; card < PackedState.CARD_COUNT; card++) {
+                if (Rules.canPutOnPile(card, top))
+                    legal++;
+                if (Rules.canPutOnFoundation(card, top))
+                    legal++;
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Checks every pair by comparing the Cards
+     */
+    @Benchmark
+    public int cards() {
+        int legal = 0;
+        for (int top = Rules.EMPTY; top < PackedState.CARD_COUNT; top++) {
+            for (int card = 0; card < PackedState.CARD_COUNT; card++) {
+                Card attemptCard = Card.of(card);
+                if (top == Rules.EMPTY) {
+                    if (attemptCard.val == 12)
+                        legal++;
+                    if (attemptCard.val == 0)
+                        legal++;
+                } else {
+                    Card destCard = Card.of(top);
+                    if (destCard.val == attemptCard.val + 1 && !destCard.isSameColor(attemptCard))
+                        legal++;
+                    if (attemptCard.val == destCard.val + 1 && attemptCard.suit == destCard.suit)
+                        legal++;
+                }
+            }
+        }
+        return legal;
+    }
+}
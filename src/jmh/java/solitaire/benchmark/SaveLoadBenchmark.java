@@ -0,0 +1,90 @@
+/*
+    Measures saving and loading games in the binary format of SaveFile, and in the Gson and SHA-256 format older
+    versions saved in, without the file IO. The games have the undo history of a few moves.
+ */
+
+package solitaire.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.save.SaveFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveLoadBenchmark {
+    @Param({"1", "42", "1000"})
+    public long dealNumber;
+
+    private Game game;
+    private byte[] saveBytes;
+    private String gameData;
+    private String gameHash;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchAlgorithmException {
+        game = new Game(null, dealNumber);
+        for (int i = 0; i < 8; i++) {
+            game.applyMove(Move.CYCLE_STOCK);
+        }
+        saveBytes = SaveFile.toBytes(game);
+        gameData = SaveFile.GSON.toJson(game);
+        gameHash = hash(gameData);
+    }
+
+    /**
+     * Turns a game into the bytes of a save file
+     */
+    @Benchmark
+    public byte[] save() {
+        return SaveFile.toBytes(game);
+    }
+
+    /**
+     * Checks the checksum of a save and turns it back into a game
+     */
+    @Benchmark
+    public Game load() throws IOException {
+        return SaveFile.fromBytes(saveBytes);
+    }
+
+    /**
+     * Turns a game into the two lines older versions wrote to a save file
+     */
+    @Benchmark
+    public String jsonSave() throws NoSuchAlgorithmException {
+        String data = SaveFile.GSON.toJson(game);
+        return data + "\n" + hash(data);
+    }
+
+    /**
+     * Checks the hash of an older save and turns it back into a game
+     */
+    @Benchmark
+    public Game jsonLoad() throws NoSuchAlgorithmException {
+        if (!gameHash.equals(hash(gameData)))
+            throw new IllegalStateException("The save hash does not match");
+
+        return SaveFile.GSON.fromJson(gameData, Game.class);
+    }
+
+    private static String hash(String data) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        return new String(messageDigest.digest(data.getBytes(StandardCharsets.UTF_8)));
+    }
+}
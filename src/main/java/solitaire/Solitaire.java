@@ -1,128 +1,301 @@
 package solitaire;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Deal;
 import solitaire.game.Game;
+import solitaire.game.GameListener;
 import solitaire.graphics.GameDisplay;
 import solitaire.graphics.ImageLoader;
 import solitaire.graphics.Setup;
+import solitaire.save.CorruptSaveException;
+import solitaire.save.MoveJournal;
+import solitaire.save.SaveFile;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
 import java.awt.GraphicsConfiguration;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
-public class Solitaire {
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class Solitaire implements GameListener {
+    // Every move of the displayed game is journaled here, so it can be recovered if the program does not close normally
+    private final static Path JOURNAL_FILE = Paths.get(System.getProperty("user.home"), ".solitaire", "session.journal");
+
+    // How long each phase of starting the program took, printed to stderr once the window is shown when the
+    // system property is true, for example with -Dsolitaire.startupTimings=true
+    private final static String TIMINGS_PROPERTY = "solitaire.startupTimings";
+    private final static StartupTimings timings = new StartupTimings();
+
     private JFrame frame;
+    @Nullable
+    private MoveJournal journal;
 
     public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
-                | UnsupportedLookAndFeelException e) {
-            System.out.println("An error occurred while setting the GUI display style. Program will continue as normal.");
-        }
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<?> imageLoading = executor.submit(() -> {
-            String resourceFolderPath = "images";
-            ImageLoader.init(resourceFolderPath);
+        timings.run("look and feel", () -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
+                    | UnsupportedLookAndFeelException e) {
+                System.out.println("An error occurred while setting the GUI display style. Program will continue as normal.");
+            }
         });
 
-        File save = Setup.showSetupWindow();
+        // Startup is a graph of phases that only wait for each other where they have to. The images load and the
+        // empty frame is built while the user answers the setup questions and the save is read. The game is put in
+        // the frame once both are there, and the window is shown once the game display and the images are ready
+        CompletableFuture<Void> images = CompletableFuture.runAsync(() ->
+                timings.run("images", () -> ImageLoader.init("images")));
+
         Solitaire s = new Solitaire();
-        Game g = null;
+        CompletableFuture<Void> frame = CompletableFuture.runAsync(() -> timings.run("frame", s::createFrame),
+                SwingUtilities::invokeLater);
+
+        // A deal number on the command line replays that deal without asking about saves
+        Long dealNumber = null;
+        if (args.length > 0) {
+            try {
+                dealNumber = Long.parseLong(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("The deal number " + args[0] + " is not a number. A random deal will be played.");
+            }
+        }
+
+        Game g = dealNumber == null ? s.offerRecovery() : null;
+        File save = dealNumber == null && g == null ? Setup.showSetupWindow() : null;
 
-        if (save == null) {
-            g = new Game(s);
+        CompletableFuture<Game> game;
+        if (g != null) {
+            g.setListener(s);
+            game = CompletableFuture.completedFuture(g);
+        } else if (dealNumber != null) {
+            game = CompletableFuture.completedFuture(new Game(s, dealNumber));
+        } else if (save == null) {
+            game = CompletableFuture.completedFuture(new Game(s));
         } else {
-            boolean error = false;
-            String errorMessage = "";
+            game = loadSave(save, s);
+        }
 
-            try {
-                Scanner scanner = new Scanner(save);
-                String gameData = scanner.nextLine();
-                String gameHash = scanner.nextLine();
-
-                try {
-                    MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-                    if (!gameHash.equals(new String(messageDigest.digest(gameData.getBytes(StandardCharsets.UTF_8))))) {
-                        JOptionPane.showMessageDialog(null,
-                                "Save data appears to be corrupted. Please try to load a new save or start a new game.",
-                                "Error loading save", JOptionPane.ERROR_MESSAGE);
-                        System.exit(1);
+        frame.thenCombine(game, (built, loaded) -> loaded)
+                .thenAcceptAsync(loaded -> timings.run("game display", () -> s.displayGame(loaded)),
+                        SwingUtilities::invokeLater)
+                .thenCombine(images, (display, loaded) -> null)
+                .thenRunAsync(() -> {
+                    s.showFrame();
+                    timings.mark("window shown");
+                    if (Boolean.getBoolean(TIMINGS_PROPERTY)) {
+                        System.err.println("Startup: " + timings);
                     }
-                } catch (NoSuchAlgorithmException e1) {
-                    System.err.println("SHA-256 MessageDigest is not supported :(");
-                }
+                }, SwingUtilities::invokeLater)
+                .exceptionally(error -> {
+                    error.printStackTrace();
+                    System.exit(1);
+                    return null;
+                });
+    }
 
-                Gson gson = new Gson();
-                g = gson.fromJson(gameData, Game.class);
+    /**
+     * Loads a save file of either format in the background, see SaveFile. If it cannot be loaded the user is asked
+     * on the Event Dispatch Thread whether to play a new game instead
+     *
+     * @param save The save file
+     * @param s    The listener of the loaded game
+     * @return Completes with the loaded game, or a new game if the save could not be loaded and the user wants to play
+     * anyway
+     */
+    private static CompletableFuture<Game> loadSave(File save, Solitaire s) {
+        return CompletableFuture.supplyAsync(() -> timings.supply("save load", () -> {
+            try {
+                return SaveFile.read(save.toPath());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        })).handleAsync((g, error) -> {
+            if (error == null) {
                 g.loadedFrom = save;
-                g.setSolitaire(s);
-            } catch (FileNotFoundException e) {
-                error = true;
-                errorMessage = "The save file specified could not be loaded. Would you like to begin a new game?";
-            } catch (JsonSyntaxException er) {
-                error = true;
-                errorMessage = "An error occurred while parsing the specified save file. Would you like to begin a new game?";
+                g.setListener(s);
+                return g;
             }
+            return onLoadFailed(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error, s);
+        }, SwingUtilities::invokeLater);
+    }
 
-            if (error) {
-                int response = JOptionPane.showConfirmDialog(null, errorMessage, "An error has occurred",
-                        JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE);
+    /**
+     * Tells the user a save could not be loaded, and exits unless they want to play a new game instead
+     *
+     * @param cause Why the save could not be loaded
+     * @param s     The listener of the new game
+     * @return The new game
+     */
+    private static Game onLoadFailed(Throwable cause, Solitaire s) {
+        if (cause instanceof CorruptSaveException) {
+            JOptionPane.showMessageDialog(null,
+                    "Save data appears to be corrupted. Please try to load a new save or start a new game.",
+                    "Error loading save", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
 
-                if (response == JOptionPane.YES_OPTION) {
-                    g = new Game(s);
-                } else {
-                    System.exit(0);
-                }
-            }
+        String errorMessage;
+        if (cause instanceof IOException) {
+            errorMessage = "The save file specified could not be loaded. Would you like to begin a new game?";
+        } else if (cause instanceof JsonSyntaxException || cause instanceof NoSuchElementException) {
+            errorMessage = "An error occurred while parsing the specified save file. Would you like to begin a new game?";
+        } else {
+            throw new CompletionException(cause);
         }
 
-        try {
-            while (!imageLoading.isDone()) {
-                Thread.sleep(50);
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        int response = JOptionPane.showConfirmDialog(null, errorMessage, "An error has occurred",
+                JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE);
+
+        if (response != JOptionPane.YES_OPTION) {
+            System.exit(0);
+        }
+        return new Game(s);
+    }
+
+    /**
+     * Notifies the user they won and gives them the option of playing a new game or quitting
+     *
+     * @param game The game that was won
+     */
+    @Override
+    public void onGameWon(Game game) {
+        int response = JOptionPane.showConfirmDialog(null,
+                "Congratulations! You won! Would you like to start a new game?", "You won!",
+                JOptionPane.YES_NO_OPTION);
+
+        if (response == JOptionPane.YES_OPTION) {
+            onNewGameRequested(game, Deal.randomDealNumber());
+        } else {
+            exit();
         }
+    }
 
-        s.displayGame(g);
+    /**
+     * Replaces the displayed game with a new one
+     *
+     * @param game       The game being replaced
+     * @param dealNumber The number of the deal to start the new game from
+     */
+    @Override
+    public void onNewGameRequested(Game game, long dealNumber) {
+        displayGame(new Game(this, dealNumber));
     }
 
     public void displayGame(Game game) {
-        boolean createNewFrame = frame == null;
-        if (createNewFrame) {
-            frame = new JFrame((GraphicsConfiguration) null);
-            frame.setResizable(false);
-            frame.setTitle("Solitaire");
-            frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        if (journal == null || journal.getGame() != game) {
+            discardJournal();
+            journal = MoveJournal.start(JOURNAL_FILE, game);
+        }
+
+        if (frame == null) {
+            createFrame();
         } else {
             frame.getContentPane().removeAll();
         }
 
         JPanel panel = new GameDisplay(game);
         frame.add(panel);
+        frame.setTitle("Solitaire - Deal #" + game.getDealNumber());
 
-        if (createNewFrame) {
-            frame.pack();
-            frame.setLocationRelativeTo(null);
-            frame.setVisible(true);
-        } else {
+        if (frame.isVisible()) {
             frame.revalidate();
+        } else {
+            frame.pack();
         }
     }
+
+    /**
+     * Creates the window without showing it or putting a game in it
+     */
+    private void createFrame() {
+        frame = new JFrame((GraphicsConfiguration) null);
+        frame.setResizable(false);
+        // Closing the window normally needs no recovery, so it exits once the journal is deleted
+        frame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exit();
+            }
+        });
+    }
+
+    /**
+     * Shows the window in the middle of the screen, once displayGame has put a game in it
+     */
+    private void showFrame() {
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Asks the user whether to continue the game of a journal left behind when the program did not close normally
+     *
+     * @return The recovered game, or null to start normally
+     */
+    private @Nullable Game offerRecovery() {
+        if (!Files.exists(JOURNAL_FILE))
+            return null;
+
+        int response = JOptionPane.showConfirmDialog(null,
+                "Solitaire did not close properly last time. Would you like to continue the game you were playing?",
+                "Recover game", JOptionPane.YES_NO_OPTION);
+
+        try {
+            if (response == JOptionPane.YES_OPTION) {
+                journal = MoveJournal.recover(JOURNAL_FILE);
+                return journal.getGame();
+            }
+
+            Files.delete(JOURNAL_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "The game could not be recovered. A new game will be started.",
+                    "Error recovering game", JOptionPane.ERROR_MESSAGE);
+        }
+
+        return null;
+    }
+
+    /**
+     * Stops journaling the displayed game and deletes its journal in the background
+     *
+     * @return Completes once the journal is deleted, or could not be
+     */
+    private CompletableFuture<Void> discardJournal() {
+        if (journal == null)
+            return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> discarded = journal.discard().whenComplete((done, error) -> {
+            if (error != null) {
+                System.err.println("The move journal could not be deleted:");
+                error.printStackTrace();
+            }
+        });
+        journal = null;
+        return discarded;
+    }
+
+    /**
+     * Hides the window and exits once the journal of the game is deleted, as the game ended normally
+     */
+    private void exit() {
+        frame.setVisible(false);
+        discardJournal().whenComplete((done, error) -> System.exit(0));
+    }
 }
@@ -0,0 +1,84 @@
+/*
+    Records how long each phase of starting the program takes, so changes to the startup time can be tracked. Phases
+    can run on any thread and overlap, so each one is timed on its own, and the time from the start of the program
+    until the window is shown is recorded as a whole.
+ */
+
+package solitaire;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public final class StartupTimings {
+    private final long start = System.nanoTime();
+
+    // Milliseconds per phase, in the order the phases finished
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+    /**
+     * Runs a phase and records how long it took, even if it throws
+     *
+     * @param phase The name of the phase
+     * @param work  The phase
+     */
+    public void run(String phase, Runnable work) {
+        supply(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a phase that has a result and records how long it took, even if it throws
+     *
+     * @param phase The name of the phase
+     * @param work  The phase
+     * @return The result of the phase
+     */
+    public <T> T supply(String phase, Supplier<T> work) {
+        long phaseStart = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, System.nanoTime() - phaseStart);
+        }
+    }
+
+    /**
+     * Records the time since the program started as a phase, for milestones like the window being shown
+     *
+     * @param milestone The name of the milestone
+     */
+    public void mark(String milestone) {
+        record(milestone, System.nanoTime() - start);
+    }
+
+    private synchronized void record(String phase, long nanos) {
+        durations.put(phase, nanos / 1000000);
+    }
+
+    /**
+     * @param phase The name of a phase
+     * @return How many milliseconds the phase took, or -1 if it has not finished
+     */
+    public synchronized long getDuration(String phase) {
+        Long duration = durations.get(phase);
+        return duration == null ? -1 : duration;
+    }
+
+    /**
+     * @return Every finished phase with its duration, like "images 120 ms, frame 40 ms"
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append(" ms");
+        }
+        return builder.toString();
+    }
+}
@@ -1,84 +1,55 @@
 /*
-The card class holds data mostly unique data used to identity, draw, and perform comparisons on the card.
+The card class holds data mostly unique data used to identity and perform comparisons on the card.
+There are only ever 52 cards, one per ID, shared by every game. Cards cannot change, so which way a card is facing is
+kept by the CardStack holding it, where it is drawn by the Layout and how by the BoardRenderer.
  */
 
 package solitaire.game;
 
-import solitaire.graphics.IDrawable;
-import solitaire.graphics.ImageLoader;
-
-import java.awt.Graphics;
-import java.awt.Rectangle;
-import java.util.Objects;
-
-public class Card implements IDrawable {
+public final class Card {
     public static int SUIT_SPADE = 1;
     public static int SUIT_CLUB = 2;
     public static int SUIT_HEART = 3;
     public static int SUIT_DIAMOND = 4;
 
-    private boolean isFaceUp;
+    private final static Card[] DECK = new Card[52];
+
+    static {
+        for (int id = 0; id < DECK.length; id++) {
+            DECK[id] = new Card(id);
+        }
+    }
+
     private final int id;
     public final int val;
     public final int suit;
 
-    public int lastX;
-    public int lastY;
-
 
     /**
      * Initializer which sets the unique properties of the object based off the id. All card ID's are 0 - 51; values, and suits are formed from the ID.
       * @param id
      */
-    public Card(int id) {
+    private Card(int id) {
         this.id = id;
         this.val = id % 13;
         this.suit = id / 13 + 1;
-
-        this.isFaceUp = false;
     }
 
     /**
-     * Draws the card using the x and y coordinates.
-     * @param g
-     * @param x
-     * @param y
+     * Gets the card with an ID. The same instance is returned every time, so cards can be compared with ==.
+     * @param id The ID of the card, from 0 to 51.
+     * @return The card.
      */
-    @Override
-    public void draw(Graphics g, int x, int y) {
-        if (isFaceUp) {
-	        /*
-            Caching card images in the card causes problems because game is created before card images are guaranteed
-            to be loaded and may, when the game is saved, cause all the images to be included in the game save
-            */
-            g.drawImage(ImageLoader.cardTextures[id], x, y, null);
-        } else {
-            g.drawImage(ImageLoader.backTexture, x, y, null);
-        }
-
-        lastX = x;
-        lastY = y;
+    public static Card of(int id) {
+        return DECK[id];
     }
 
     /**
-     * Setter method that makes the card either face up or face down.
-     * @param isUp
+     * Getter method for the ID of the card.
+     * @return The ID of the card, from 0 to 51.
      */
-    public void setFaceDir(boolean isUp) {
-        this.isFaceUp = isUp;
-    }
-
-    /**
-     * Getter method for face direction of card.
-     * @return
-     */
-    public boolean isFaceUp() {
-        return isFaceUp;
-    }
-
-    public boolean inBounds(int x, int y) {
-        Rectangle bounds = new Rectangle(lastX, lastY, ImageLoader.cardTexWidth, ImageLoader.cardTexHeight);
-        return bounds.contains(x, y);
+    public int getId() {
+        return id;
     }
 
     /**
@@ -99,26 +70,4 @@ public class Card implements IDrawable {
 
         return true;
     }
-
-    /**
-     * Determines if this card's ID is the same as the card passed in.
-     * @param o
-     * @return
-     */
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (!(o instanceof Card)) return false;
-        Card card = (Card) o;
-        return id == card.id;
-    }
-
-    /**
-     * Makes hash code representation of the card.
-     * @return
-     */
-    @Override
-    public int hashCode() {
-        return Objects.hash(id);
-    }
 }
@@ -1,18 +1,21 @@
 /*  This file defines the CardStack object, which is used to store and manipulate multiple Card
-    objects. It also can draw all stored Card objects at an offset using offset values.
+    objects. Its offset values say how far apart its cards are drawn, see Layout and BoardRenderer.
+    Cards are shared between stacks and games, so which way each card is facing is kept here, one bit per position.
+    The cards are kept as an array of card IDs. Adding or taking cards off the top does not move the other cards, and
+    a substack reads the array of the stack it was taken from instead of copying the cards.
+    Taking cards off the bottom, which is how the stock is drawn, moves where the stack starts instead of the other
+    cards, and the room left in front of it is used when cards are put back under it.
+    Every change also updates the Zobrist hash of the stack, at a cost of one key per card added, taken or turned
+    over, plus one for the card that ends up on the bottom. Deleting cards from the middle of a stack rehashes it.
  */
 package solitaire.game;
 
-import org.jetbrains.annotations.Nullable;
-import solitaire.graphics.IDrawable;
-import solitaire.graphics.ImageLoader;
+import com.google.gson.annotations.JsonAdapter;
 
-import java.awt.Graphics;
-import java.awt.Rectangle;
-import java.util.List;
-import java.util.Stack;
+import java.util.Arrays;
 
-public class CardStack implements IDrawable {
+@JsonAdapter(CardStackAdapter.class)
+public class CardStack {
     public final static int FLIPTYPE_TOP = 0;
     public final static int FLIPTYPE_NONE = 1;
     public final static int FLIPTYPE_ALL = 2;
@@ -24,7 +27,13 @@ public class CardStack implements IDrawable {
     public final static int STACKTYPE_TEMP = 4;
     public final static int STACKTYPE_HIDDENDISPLAYSTOCK = 5;
 
-    private Stack<Card> cards;
+    // The IDs of the cards from the bottom up, starting at offset. A substack shares the array of the stack it was
+    // taken from, so it only holds the cards it was taken with until that stack changes
+    private byte[] ids;
+    private int offset;
+    private int size;
+    private long faceUp; // Bit i is set if the card at index i is face up
+    private long hash; // See Zobrist. Not kept for substacks
     public final int stackType;
 
     // If the lower cards peek out of the stack, otherwise only the top card is visible
@@ -33,8 +42,6 @@ public class CardStack implements IDrawable {
     public int tieredXOffset; // There are the value(s) that the cards will be offset by when they are tiered.
     public int tieredYOffset;
 
-    private Rectangle bounds;
-
     /**
      * Creates a new CardStack with the specified flip type and stack type, but with
      * no cards in it, and no drawing offset values.
@@ -54,64 +61,100 @@ public class CardStack implements IDrawable {
      * @param tieredYOffset The vertical drawing offset that each card in the stack will be drawn at.
      */
     public CardStack(int flipType, int stackType, int tieredXOffset, int tieredYOffset) {
-        this(null, flipType, stackType, tieredXOffset, tieredYOffset);
+        this(new byte[PackedState.CARD_COUNT], 0, 0, 0, flipType, stackType, tieredXOffset, tieredYOffset);
     }
 
     /**
      * Creates a new CardStack with the specified flip type, stack type,
-     * the specified drawing offsets, and the passed in List of Card objects.
-     * @param cards A List containing Card objects.
+     * the specified drawing offsets, and the cards in part of an array of card IDs.
+     * @param ids The array holding the IDs of the cards, which is used without copying it.
+     * @param offset The index in ids of the bottom card.
+     * @param size How many cards are in the CardStack.
+     * @param faceUp Which of the cards are face up, bit i being set if the card at index i is.
      * @param flipType The type of flip type this CardStack will use, which determines which cards are face up.
      * @param stackType The type of CardStack this is, which is used to determine how cards are allowed to move.
      * @param tieredXOffset The horizontal drawing offset that each card in the stack will be drawn at.
      * @param tieredYOffset The vertical drawing offset that each card in the stack will be drawn at.
      */
-    private CardStack(@Nullable List<Card> cards, int flipType, int stackType, int tieredXOffset, int tieredYOffset) {
-        this.cards = new Stack<>();
+    private CardStack(byte[] ids, int offset, int size, long faceUp, int flipType, int stackType, int tieredXOffset,
+                      int tieredYOffset) {
+        this.ids = ids;
+        this.offset = offset;
+        this.size = size;
+        this.faceUp = faceUp;
         this.stackType = stackType;
         this.flipType = flipType;
         this.tieredXOffset = tieredXOffset;
         this.tieredYOffset = tieredYOffset;
-
-        if (cards != null) {
-            this.cards.addAll(cards);
-        }
     }
 
     /**
-     * Draws the CardStack to the screen with the specified starting coordinates, where each card's position is
-     * the initial position plus the offset values.
-     * @param g The Graphics object that allows images to be drawn to the screen.
-     * @param x The horizontal position that the CardStack is drawn at.
-     * @param y The vertical position that the CardStack is drawn at.
+     * Creates a CardStack that was loaded from a save, see CardStackAdapter.
+     * @param ids The IDs of the cards from the bottom up, which the CardStack keeps using without copying them.
+     * @param size How many cards are in the CardStack.
+     * @param faceUp Which of the cards are face up, bit i being set if the card at index i is.
+     * @param flipType The type of flip type this CardStack will use, which determines which cards are face up.
+     * @param stackType The type of CardStack this is, which is used to determine how cards are allowed to move.
+     * @param tieredXOffset The horizontal drawing offset that each card in the stack will be drawn at.
+     * @param tieredYOffset The vertical drawing offset that each card in the stack will be drawn at.
+     * @return The CardStack.
      */
-    @Override
-    public void draw(Graphics g, int x, int y) {
-        if (cards.size() > 0) {
-            for (int i = 0; i < this.cards.size(); i++) {
-                this.cards.get(i).draw(g, x + (tieredXOffset * i), y + (tieredYOffset * i));
-            }
-        } else {
-            g.drawImage(ImageLoader.emptySpotTexture, x, y, null);
-
-            if (stackType == STACKTYPE_HIDDENSTOCK)
-                g.drawImage(ImageLoader.redoSymbol, x + 15, y + 37, null);
-        }
-
-        calcBounds(x, y);
-
+    static CardStack loaded(byte[] ids, int size, long faceUp, int flipType, int stackType, int tieredXOffset,
+                            int tieredYOffset) {
+        CardStack stack = new CardStack(ids, 0, size, faceUp & lowBits(size), flipType, stackType, tieredXOffset,
+                tieredYOffset);
+        stack.hash = stack.hashOnTopOf(Rules.EMPTY);
+        return stack;
     }
 
     /**
-     * Creates a new Card object in the CardStack based on the passed in ID value, then
+     * Puts the Card with the passed in ID value on top of the CardStack, then
      * solves which cards should be drawn face up or not.
-     * @param id The ID of the Card to be created, from 0 to 51.
+     * @param id The ID of the Card to be added, from 0 to 51.
      */
     public void addNewCard(int id) {
-        this.cards.add(new Card(id));
+        push(id);
         solveFlipType(flipType);
     }
 
+    /**
+     * Puts the Card with the passed in ID value on top of the CardStack with the given face direction, leaving
+     * the face direction of every other card alone. Used to rebuild a stack exactly as it was.
+     * @param id The ID of the Card to be added, from 0 to 51.
+     * @param faceUp If the new Card is face up.
+     */
+    void addCard(int id, boolean faceUp) {
+        push(id);
+        setFaceUp(size - 1, faceUp);
+    }
+
+    /**
+     * Puts a card on top of the CardStack without setting its face direction.
+     * @param id The ID of the Card to be added, from 0 to 51.
+     */
+    private void push(int id) {
+        ensureCapacity(size + 1);
+        this.hash ^= Zobrist.chain(id, getTopCardId());
+        this.ids[offset + size++] = (byte) id;
+    }
+
+    /**
+     * Makes sure the array of card IDs has room for a number of cards, growing it if it does not.
+     * @param capacity How many cards have to fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (offset + capacity <= ids.length)
+            return;
+
+        if (capacity <= ids.length) {
+            // Cards taken off the bottom left room in front of the stack
+            System.arraycopy(ids, offset, ids, 0, size);
+        } else {
+            ids = Arrays.copyOfRange(ids, offset, offset + Math.max(capacity, ids.length * 2));
+        }
+        offset = 0;
+    }
+
     /**
      * Solves which cards should be drawn face up or not based on the passed in flip type.
      * @param flipType The type of logic to be used when solving which cards should be face up.
@@ -122,95 +165,216 @@ public class CardStack implements IDrawable {
 
         switch (flipType) {
             case FLIPTYPE_TOP:
-                for (int i = 0; i < cards.size() - 1; i++) {
-                    cards.get(i).setFaceDir(false);
-                }
-                cards.get(cards.size() - 1).setFaceDir(true);
+                setFaceUpBits(1L << (size - 1));
                 break;
             case FLIPTYPE_ALL:
-                for (Card card : cards) {
-                    card.setFaceDir(true);
-                }
+                setFaceUpBits(lowBits(size));
                 break;
             case FLIPTYPE_NONE:
-                for (Card card : cards) {
-                    card.setFaceDir(false);
-                }
+                setFaceUpBits(0);
                 break;
         }
     }
 
     /**
-     * Calculates the overall bounding box of the CardStack.
-     * @param x The top left x-coordinate to be used in calculating the bounding box.
-     * @param y The top left y-coordinate to be used in calculating the bounding box.
+     * Calculates the width of the CardStack's bounding box with the cards it has now.
+     * @return The width in pixels.
      */
-    private void calcBounds(int x, int y) {
-        int width = (this.tieredXOffset * (Math.max(0, this.getCardCount() - 1))) + ImageLoader.cardTexWidth;
-        int height = (this.tieredYOffset * (Math.max(0, this.getCardCount() - 1))) + ImageLoader.cardTexHeight;
-
-        this.bounds = new Rectangle(x, y, width, height);
+    public int getDrawnWidth() {
+        return (this.tieredXOffset * (Math.max(0, this.getCardCount() - 1))) + Layout.CARD_WIDTH;
     }
 
     /**
-     * Checks if the passed in position is within the CardStack's bounding box.
-     * @param x The x-coordinate of the position being checked.
-     * @param y The x-coordinate of the position being checked.
-     * @return A boolean representing if the position is within the bounding box or not.
+     * Calculates the height of the CardStack's bounding box with the cards it has now.
+     * @return The height in pixels.
      */
-    public boolean inBounds(int x, int y) {
-        return bounds.contains(x, y);
-    }
-
-    /**
-     * Finds the forward-most card between all cards the passed in position is within.
-     * @param x The x-coordinate to check for in each card's bounding box.
-     * @param y The x-coordinate to check for in each card's bounding box.
-     * @return The index of the forward-most card.
-     */
-    public int getClickedCardIndex(int x, int y) {
-        int maxIndex = 0;
-        for (int i = this.getCardCount() - 1; i >= 0; i--) {
-            if (this.cards.get(i).inBounds(x, y)) {
-                maxIndex = Math.max(maxIndex, i);
-            }
-        }
-
-        return maxIndex;
+    public int getDrawnHeight() {
+        return (this.tieredYOffset * (Math.max(0, this.getCardCount() - 1))) + Layout.CARD_HEIGHT;
     }
 
     /**
      * Finds and returns a CardStack containing of the cards from a minimum index (inclusive)
-     * to a maximum index (exclusive) within this CardStack.
+     * to a maximum index (exclusive) within this CardStack. Nothing is copied, so the returned CardStack
+     * only holds those cards until this one changes, and should not be changed itself.
      * @param minIndex The minimum index to get cards from in this CardStack.
      * @param maxIndex The maximum index to get cards from in this CardStack.
      * @return A CardStack containing the cards between the two passed in index values.
      */
     public CardStack getSubstack(int minIndex, int maxIndex) {
-        return new CardStack(cards.subList(minIndex, maxIndex), FLIPTYPE_NONE, STACKTYPE_TEMP, 0, 0);
+        if (minIndex < 0 || maxIndex > size || minIndex > maxIndex)
+            throw new IndexOutOfBoundsException("Substack " + minIndex + " to " + maxIndex + " of " + size + " cards");
+
+        return new CardStack(ids, offset + minIndex, maxIndex - minIndex,
+                (faceUp >>> minIndex) & lowBits(maxIndex - minIndex), FLIPTYPE_NONE, STACKTYPE_TEMP, 0, 0);
     }
 
     /**
-     * Appends all of the Cards in the passed in CardStack to the current one.
+     * Appends all of the Cards in the passed in CardStack to the current one, keeping their face direction.
      * @param newStack The CardStack that the cards being added to the current CardStack are pulled from.
      */
     public void appendStack(CardStack newStack) {
-        this.cards.addAll(newStack.cards);
+        int count = newStack.size;
+        ensureCapacity(size + count);
+        this.hash ^= newStack.hashOnTopOf(getTopCardId());
+        System.arraycopy(newStack.ids, newStack.offset, this.ids, offset + size, count);
+        this.faceUp |= newStack.faceUp << size;
+        this.size += count;
+    }
+
+    /**
+     * Puts all of the Cards in the passed in CardStack under the current ones, keeping their face direction.
+     * @param newStack The CardStack that the cards being added to the bottom of the current CardStack are pulled from.
+     */
+    void insertAtBottom(CardStack newStack) {
+        int count = newStack.size;
+        if (count == 0)
+            return;
+
+        this.hash ^= newStack.hashOnTopOf(Rules.EMPTY);
+        if (size > 0) {
+            // The old bottom card now lies on the top inserted card
+            int bottom = this.ids[offset];
+            this.hash ^= Zobrist.chain(bottom, Rules.EMPTY) ^ Zobrist.chain(bottom, newStack.getTopCardId());
+        }
+
+        if (offset >= count) {
+            offset -= count;
+        } else {
+            ensureCapacity(size + count);
+            System.arraycopy(this.ids, offset, this.ids, offset + count, size);
+        }
+        System.arraycopy(newStack.ids, newStack.offset, this.ids, offset, count);
+        this.faceUp = this.faceUp << count | newStack.faceUp;
+        this.size += count;
     }
 
     /**
      * Deletes all Cards in the passed in CardStack from the current one. It then flips the new top
-     * card in the CardStack face up if it is face down.
+     * card in the CardStack face up if it is face down. Takes time in proportion to the number of
+     * deleted cards when they are the top of this CardStack, which they are for every move, or the
+     * bottom, which they are for every stock draw. Otherwise takes time in proportion to the size.
      * @param c The CardStack containing the Cards to be deleted from this CardStack.
      */
     public void deletePartOfStack(CardStack c) {
-        this.cards.removeAll(c.cards);
+        if (isTop(c)) {
+            truncate(size - c.size);
+        } else if (isBottom(c)) {
+            dropBottom(c.size);
+        } else {
+            long deleted = 0; // A bit per card ID
+            for (int i = 0; i < c.size; i++) {
+                deleted |= 1L << c.getCardId(i);
+            }
 
-        if (this.getCardCount() > 0) {
-            if (!this.getCard(this.getCardCount() - 1).isFaceUp()) {
-                this.getCard(this.getCardCount() - 1).setFaceDir(true);
+            // Moves the kept cards and their face directions down over the deleted ones
+            int kept = 0;
+            long keptFaceUp = 0;
+            for (int i = 0; i < size; i++) {
+                byte id = this.ids[offset + i];
+                if ((deleted & 1L << id) == 0) {
+                    keptFaceUp |= ((this.faceUp >>> i) & 1) << kept;
+                    this.ids[offset + kept++] = id;
+                }
             }
+            this.size = kept;
+            this.faceUp = keptFaceUp;
+            this.hash = hashOnTopOf(Rules.EMPTY);
+        }
+
+        if (size > 0) {
+            setFaceUp(size - 1, true);
+        }
+    }
+
+    /**
+     * @param c A CardStack.
+     * @return True if the Cards of c are the top Cards of this CardStack, in the same order.
+     */
+    private boolean isTop(CardStack c) {
+        if (c.size > size)
+            return false;
+        if (c.ids == this.ids && c.offset == offset + size - c.size)
+            return true;
+
+        for (int i = 0; i < c.size; i++) {
+            if (c.ids[c.offset + i] != this.ids[offset + size - c.size + i])
+                return false;
         }
+        return true;
+    }
+
+    /**
+     * @param c A CardStack.
+     * @return True if the Cards of c are the bottom Cards of this CardStack, in the same order.
+     */
+    private boolean isBottom(CardStack c) {
+        if (c.size > size)
+            return false;
+        if (c.ids == this.ids && c.offset == offset)
+            return true;
+
+        for (int i = 0; i < c.size; i++) {
+            if (c.ids[c.offset + i] != this.ids[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes Cards off the bottom of the CardStack by moving where it starts, so the other cards stay
+     * where they are.
+     * @param count How many cards are taken.
+     */
+    private void dropBottom(int count) {
+        for (int i = 0; i < count; i++) {
+            this.hash ^= keyOf(i, i == 0 ? Rules.EMPTY : this.ids[offset + i - 1]);
+        }
+        if (count < size) {
+            // The new bottom card lay on the last card taken
+            int bottom = this.ids[offset + count];
+            this.hash ^= Zobrist.chain(bottom, this.ids[offset + count - 1]) ^ Zobrist.chain(bottom, Rules.EMPTY);
+        }
+
+        this.offset += count;
+        this.size -= count;
+        this.faceUp >>>= count;
+    }
+
+    /**
+     * Takes Cards off the top of the CardStack until it holds a number of cards. Substacks taken
+     * from the top keep their cards, since the array is not cleared.
+     * @param newSize How many cards are left.
+     */
+    private void truncate(int newSize) {
+        for (int i = newSize; i < size; i++) {
+            this.hash ^= keyOf(i, i == 0 ? Rules.EMPTY : this.ids[offset + i - 1]);
+        }
+        this.size = newSize;
+        this.faceUp &= lowBits(newSize);
+    }
+
+    /**
+     * Works out the hash the Cards of this CardStack would add to a stack they were put on.
+     * @param belowId The ID of the top card of the stack they are put on, or Rules.EMPTY if it is empty.
+     * @return The XOR of the Zobrist keys of the Cards.
+     */
+    private long hashOnTopOf(int belowId) {
+        long h = 0;
+        for (int i = 0; i < size; i++) {
+            h ^= keyOf(i, belowId);
+            belowId = this.ids[offset + i];
+        }
+        return h;
+    }
+
+    /**
+     * @param index The index value of a Card in this CardStack.
+     * @param belowId The ID of the card it lies on, or Rules.EMPTY if it is at the bottom.
+     * @return The Zobrist keys of the Card lying there with its face direction.
+     */
+    private long keyOf(int index, int belowId) {
+        int id = this.ids[offset + index];
+        return Zobrist.chain(id, belowId) ^ (isFaceUp(index) ? Zobrist.face(id) : 0);
     }
 
     /**
@@ -219,7 +383,64 @@ public class CardStack implements IDrawable {
      * @return The Card object at the specified index value.
      */
     public Card getCard(int index) {
-        return this.cards.get(index);
+        return Card.of(getCardId(index));
+    }
+
+    /**
+     * Gets the ID of the Card at the specified index value without looking up the Card.
+     * @param index The index value of the Card in this CardStack.
+     * @return The ID of the Card, from 0 to 51.
+     */
+    public int getCardId(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Card " + index + " of " + size);
+        return this.ids[offset + index];
+    }
+
+    /**
+     * Gets which way the Card at the specified index value is facing.
+     * @param index The index value of the Card in this CardStack.
+     * @return True if the Card is face up.
+     */
+    public boolean isFaceUp(int index) {
+        return ((this.faceUp >>> index) & 1) != 0;
+    }
+
+    /**
+     * Turns the Card at the specified index value face up or face down.
+     * @param index The index value of the Card in this CardStack.
+     * @param up If the Card should be face up.
+     */
+    void setFaceUp(int index, boolean up) {
+        setFaceUpBits(up ? this.faceUp | 1L << index : this.faceUp & ~(1L << index));
+    }
+
+    /**
+     * Turns over every Card whose face direction differs from the passed in bits.
+     * @param newFaceUp A bit per Card, bit i being set if the card at index i should be face up.
+     */
+    private void setFaceUpBits(long newFaceUp) {
+        for (long changed = this.faceUp ^ newFaceUp; changed != 0; changed &= changed - 1) {
+            this.hash ^= Zobrist.face(this.ids[offset + Long.numberOfTrailingZeros(changed)]);
+        }
+        this.faceUp = newFaceUp;
+    }
+
+    /**
+     * Gets the ID of the top Card.
+     * @return The ID of the Card, or Rules.EMPTY if this CardStack is empty.
+     */
+    public int getTopCardId() {
+        return size == 0 ? Rules.EMPTY : this.ids[offset + size - 1];
+    }
+
+    /**
+     * Gets the Zobrist hash of the Cards and their face directions, which is kept up to date as the
+     * CardStack changes. Substacks do not keep one.
+     * @return The XOR of the Zobrist keys of every Card, see Zobrist.
+     */
+    long getHash() {
+        return this.hash;
     }
 
     /**
@@ -227,6 +448,31 @@ public class CardStack implements IDrawable {
      * @return An integer representing how many Cards are stored in this CardStack.
      */
     public int getCardCount() {
-        return this.cards.size();
+        return this.size;
+    }
+
+    /**
+     * Gets the flip type this CardStack was created with.
+     * @return The flip type, which determines which cards are face up.
+     */
+    int getFlipType() {
+        return this.flipType;
+    }
+
+    /**
+     * Gets which way every Card is facing at once.
+     * @return A bit per Card, bit i being set if the card at index i is face up.
+     */
+    long getFaceUpBits() {
+        return this.faceUp;
+    }
+
+    /**
+     * Makes a mask of the lowest bits of a long.
+     * @param count How many bits are set, from 0 to 63.
+     * @return The mask.
+     */
+    private static long lowBits(int count) {
+        return (1L << count) - 1;
     }
 }
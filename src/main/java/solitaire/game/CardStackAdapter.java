@@ -0,0 +1,116 @@
+/*
+    Saves a CardStack as the IDs of its cards and one number holding which way each of them is facing, instead of an
+    object per card. Saves written before cards were shared between games store every card as an object with its own
+    "isFaceUp", and those are still read.
+
+    {"cards":[12,40,3],"faceUp":6,"stackType":0,"flipType":0,"tieredXOffset":0,"tieredYOffset":40}
+ */
+
+package solitaire.game;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+class CardStackAdapter extends TypeAdapter<CardStack> {
+    @Override
+    public void write(JsonWriter out, CardStack stack) throws IOException {
+        if (stack == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("cards").beginArray();
+        for (int i = 0; i < stack.getCardCount(); i++) {
+            out.value(stack.getCardId(i));
+        }
+        out.endArray();
+        out.name("faceUp").value(stack.getFaceUpBits());
+        out.name("stackType").value(stack.stackType);
+        out.name("flipType").value(stack.getFlipType());
+        out.name("tieredXOffset").value(stack.tieredXOffset);
+        out.name("tieredYOffset").value(stack.tieredYOffset);
+        out.endObject();
+    }
+
+    @Override
+    public CardStack read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        // Becomes the array of the loaded stack
+        byte[] ids = new byte[PackedState.CARD_COUNT];
+        int count = 0;
+        long faceUp = 0;
+        int stackType = 0;
+        int flipType = 0;
+        int tieredXOffset = 0;
+        int tieredYOffset = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "cards":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (count == ids.length)
+                            throw new JsonSyntaxException("A stack cannot hold more than " + ids.length + " cards");
+
+                        int id = -1;
+                        if (in.peek() == JsonToken.NUMBER) {
+                            id = in.nextInt();
+                        } else {
+                            // An old save, where every card was an object
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "id":
+                                        id = in.nextInt();
+                                        break;
+                                    case "isFaceUp":
+                                        faceUp |= in.nextBoolean() ? 1L << count : 0;
+                                        break;
+                                    default:
+                                        in.skipValue();
+                                }
+                            }
+                            in.endObject();
+                        }
+
+                        if (id < 0 || id >= PackedState.CARD_COUNT)
+                            throw new JsonSyntaxException("Invalid card ID " + id);
+                        ids[count++] = (byte) id;
+                    }
+                    in.endArray();
+                    break;
+                case "faceUp":
+                    faceUp = in.nextLong();
+                    break;
+                case "stackType":
+                    stackType = in.nextInt();
+                    break;
+                case "flipType":
+                    flipType = in.nextInt();
+                    break;
+                case "tieredXOffset":
+                    tieredXOffset = in.nextInt();
+                    break;
+                case "tieredYOffset":
+                    tieredYOffset = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return CardStack.loaded(ids, count, faceUp, flipType, stackType, tieredXOffset, tieredYOffset);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+    Turns deal numbers into the order cards are dealt in. The same deal number always gives the same deal, on every
+    machine and every version, so a deal can be replayed, shared in a bug report or generated in bulk.
+
+    The cards are shuffled in place with a Fisher-Yates shuffle driven by a SplitMix64 generator seeded with the deal
+    number. Nothing is allocated once the caller has an array, and each deal takes 51 swaps.
+ */
+
+package solitaire.game;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class Deal {
+    public final static int CARD_COUNT = 52;
+
+    private Deal() {
+    }
+
+    /**
+     * @return A deal number picked at random, small enough to be typed back in by the user
+     */
+    public static long randomDealNumber() {
+        return ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fills an array with the ids of all 52 cards in the order they are dealt. The first 28 cards go to the main
+     * piles, one pile after the other from left to right and each from bottom to top. The remaining 24 go to the
+     * hidden stock, the first of them being drawn first.
+     *
+     * @param dealNumber The number of the deal
+     * @param dest       The array to fill, with at least CARD_COUNT entries
+     * @return dest
+     */
+    public static int[] shuffle(long dealNumber, int[] dest) {
+        for (int i = 0; i < CARD_COUNT; i++) {
+            dest[i] = i;
+        }
+
+        long state = dealNumber;
+        for (int i = CARD_COUNT - 1; i > 0; i--) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+
+            // Maps the top 32 bits onto 0..i. The bias is below 2^-26 since i is at most 51
+            int j = (int) (((z >>> 32) * (i + 1)) >>> 32);
+            int swap = dest[i];
+            dest[i] = dest[j];
+            dest[j] = swap;
+        }
+
+        return dest;
+    }
+}
@@ -4,20 +4,37 @@
 
 package solitaire.game;
 
+import com.google.gson.annotations.JsonAdapter;
 import org.jetbrains.annotations.Nullable;
-import solitaire.Solitaire;
-import solitaire.graphics.IDrawable;
-import solitaire.graphics.ImageLoader;
 
-import javax.swing.JOptionPane;
-import java.awt.Graphics;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Random;
 
-public class Game implements IDrawable {
+@JsonAdapter(GameAdapter.class)
+public class Game {
     // Represents a complete game with all of its CardStacks and data
 
+    // Ids of every CardStack in the game, used by the headless move API. See getStack and Move
+    public final static int MAIN_PILE_COUNT = 7;
+    public final static int FOUNDATION_COUNT = 4;
+    public final static int STACK_FOUNDATION_FIRST = MAIN_PILE_COUNT;
+    public final static int STACK_DISPLAYSTOCK = STACK_FOUNDATION_FIRST + FOUNDATION_COUNT;
+    public final static int STACK_HIDDENSTOCK = STACK_DISPLAYSTOCK + 1;
+    public final static int STACK_HIDDENDISPLAYSTOCK = STACK_HIDDENSTOCK + 1;
+    public final static int STACK_COUNT = STACK_HIDDENDISPLAYSTOCK + 1;
+
+    // The size of the board, see BoardRenderer
+    public final static int BOARD_WIDTH = 1200;
+    public final static int BOARD_HEIGHT = 800;
+
+    // Undo history entries are Moves with these bits added. Stock draws are stored as a move from the hidden stock to
+    // the display stock, and turning the stock over as a move from the hidden display stock to the hidden stock with
+    // the number of display stock cards above it. See undo
+    private final static int HISTORY_MOVE_MASK = 0xFFFF;
+    private final static int HISTORY_FLIPPED = 1 << 16; // The move turned over the new top card of its source
+    private final static int HISTORY_OVERFLOWED = 1 << 17; // The draw pushed a card into the hidden display stock
+    private final static int HISTORY_DISPLAY_SHIFT = 18;
+    private final static int HISTORY_NONE = -1;
+
     private CardStack[] foundationStacks;
     private CardStack[] mainPiles;
     private CardStack hiddenStock;
@@ -28,151 +45,543 @@ public class Game implements IDrawable {
 
     @Nullable
     public transient File loadedFrom;
-    private transient Solitaire solitaire;
+    @Nullable
+    private transient GameListener listener;
+    @Nullable
+    private transient MoveListener moveListener;
+    private transient MoveHistory history = new MoveHistory();
+
+    // Where the board is on the screen, see setBoardPosition
+    private transient int drawX;
+    private transient int drawY;
+    // What has to be drawn again since takeDirtyRegion was last called. The region holds the bounds the changed stacks
+    // had before they changed, their bounds afterwards are added when the region is taken
+    private transient boolean allDirty;
+    private transient int dirtyStacks; // A bit per stack id
+    private transient int dirtyLeft;
+    private transient int dirtyTop;
+    private transient int dirtyRight;
+    private transient int dirtyBottom;
 
     public int moves;
     public int seconds;
     public int minutes;
 
+    private long dealNumber;
+
+    /**
+     * Creates a new headless game that reports results only through return values
+     */
+    public Game() {
+        this(null);
+    }
+
+    /**
+     * Creates a new game that reports wins and new game requests to a listener
+     *
+     * @param listener the listener to notify, or null to run headless
+     */
+    public Game(@Nullable GameListener listener) {
+        this(listener, Deal.randomDealNumber());
+    }
+
     /**
-     * Creates a new game with a reference to the controlling Solitaire instance
+     * Creates a game from a deal number. The same number always deals the same cards
      *
-     * @param solitaire the instance of Solitaire that started the game
+     * @param listener   the listener to notify, or null to run headless
+     * @param dealNumber the number of the deal to play
      */
-    public Game(Solitaire solitaire) {
+    public Game(@Nullable GameListener listener, long dealNumber) {
         loadedFrom = null;
-        this.solitaire = solitaire;
-        //Add more here later, for now it always initializes a new game
-        initNewGame();
+        this.listener = listener;
+        initNewGame(dealNumber);
     }
 
     /**
-     * Sets the reference to the controlling Solitaire instance
+     * Creates a headless game from stacks that were loaded from a save, see GameAdapter
      *
-     * @param solitaire the instance of Solitaire that started the game
+     * @param mainPiles          The main piles
+     * @param foundationStacks   The foundations
+     * @param hiddenStock        The hidden stock
+     * @param displayStock       The display stock
+     * @param hiddenDisplayStock The hidden display stock
+     * @param dealNumber         The number of the deal the game was started from
      */
-    public void setSolitaire(Solitaire solitaire) {
-        this.solitaire = solitaire;
+    Game(CardStack[] mainPiles, CardStack[] foundationStacks, CardStack hiddenStock, CardStack displayStock,
+         CardStack hiddenDisplayStock, long dealNumber) {
+        this.mainPiles = mainPiles;
+        this.foundationStacks = foundationStacks;
+        this.hiddenStock = hiddenStock;
+        this.displayStock = displayStock;
+        this.hiddenDisplayStock = hiddenDisplayStock;
+        this.dealNumber = dealNumber;
+        allDirty = true;
     }
 
     /**
-     * Draws the state of the game
+     * Creates a headless game holding the cards of a packed state, without dealing a game first
      *
-     * @param g The graphics instance to draw the game on to
-     * @param x The x coordinate of the top left corner to start drawing from
-     * @param y The y coordinate of the top left corner to start drawing from
+     * @param state      The state to copy the cards from
+     * @param dealNumber The number of the deal the game was started from
      */
-    @Override
-    public void draw(Graphics g, int x, int y) {
-        hiddenStock.draw(g, x + 20, y + 10);
-        displayStock.draw(g, x + 20, y + 185);
+    Game(PackedState state, long dealNumber) {
+        this.dealNumber = dealNumber;
+        restore(state);
+    }
 
-        for (int i = 0; i < mainPiles.length; i++) {
-            mainPiles[i].draw(g, x + 190 + i * 120, y + 10);
+    /**
+     * Sets the listener that is notified when the game is won or a new game is requested
+     *
+     * @param listener the listener to notify, or null to run headless
+     */
+    public void setListener(@Nullable GameListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the listener that is told about every move that changes the game
+     *
+     * @param moveListener the listener to notify, or null for none
+     */
+    public void setMoveListener(@Nullable MoveListener moveListener) {
+        this.moveListener = moveListener;
+    }
+
+    /**
+     * Sets where the board is drawn on the screen, so clicks and the dirty region are worked out relative to it, see
+     * BoardRenderer.draw
+     *
+     * @param x The x coordinate of the top left corner of the board
+     * @param y The y coordinate of the top left corner of the board
+     */
+    public void setBoardPosition(int x, int y) {
+        drawX = x;
+        drawY = y;
+    }
+
+    /**
+     * @return The id of the stack the selected cards are in, or Layout.NONE if no cards are selected
+     */
+    public int getSelectedStackId() {
+        if (highlightedStack == null || highlightedStack.fullStack.getCardCount() == 0)
+            return Layout.NONE;
+        return stackIdOf(highlightedStack.fullStack);
+    }
+
+    /**
+     * @return How many cards from the top of the selected stack are selected, 0 if no cards are selected
+     */
+    public int getSelectedCardCount() {
+        return getSelectedStackId() == Layout.NONE ? 0 : highlightedStack.subStack.getCardCount();
+    }
+
+    /**
+     * Marks a stack as changed, adding the bounds it has now to the dirty region. Call this before the stack changes
+     *
+     * @param stackId The id of the stack
+     */
+    private void markDirty(int stackId) {
+        // The hidden display stock is never drawn
+        if (stackId == STACK_HIDDENDISPLAYSTOCK || (dirtyStacks & 1 << stackId) != 0)
+            return;
+
+        dirtyStacks |= 1 << stackId;
+        addDirtyBounds(stackId);
+    }
+
+    private void addDirtyBounds(int stackId) {
+        CardStack stack = getStack(stackId);
+        int left = drawX + Layout.stackX(stackId);
+        int top = drawY + Layout.stackY(stackId);
+        int right = left + stack.getDrawnWidth();
+        int bottom = top + stack.getDrawnHeight();
+
+        if (dirtyRight <= dirtyLeft) {
+            dirtyLeft = left;
+            dirtyTop = top;
+            dirtyRight = right;
+            dirtyBottom = bottom;
+        } else {
+            dirtyLeft = Math.min(dirtyLeft, left);
+            dirtyTop = Math.min(dirtyTop, top);
+            dirtyRight = Math.max(dirtyRight, right);
+            dirtyBottom = Math.max(dirtyBottom, bottom);
         }
+    }
 
-        for (int i = 0; i < foundationStacks.length; i++) {
-            foundationStacks[i].draw(g, x + 1080, y + 40 + i * 165);
+    /**
+     * Finds what has to be drawn again since the last call, which is the old and new bounds of every stack that
+     * changed or was selected, and starts tracking changes again
+     *
+     * @param region Set to the x, y, width and height of the area to draw again, in the coordinates of the screen the
+     *               board is on, see setBoardPosition. The width and height are 0 if nothing changed
+     */
+    public void takeDirtyRegion(int[] region) {
+        if (allDirty) {
+            region[0] = drawX;
+            region[1] = drawY;
+            region[2] = BOARD_WIDTH;
+            region[3] = BOARD_HEIGHT;
+        } else {
+            for (int stackId = 0; stackId < STACK_COUNT; stackId++) {
+                if ((dirtyStacks & 1 << stackId) != 0) {
+                    addDirtyBounds(stackId);
+                }
+            }
+            region[0] = dirtyLeft;
+            region[1] = dirtyTop;
+            region[2] = Math.max(0, dirtyRight - dirtyLeft);
+            region[3] = Math.max(0, dirtyBottom - dirtyTop);
         }
 
-        if (highlightedStack != null && highlightedStack.fullStack.getCardCount() != 0) {
-            int xPos = highlightedStack.subStack.getCard(0).lastX;
-            int yPos = highlightedStack.subStack.getCard(0).lastY;
-            int width = ImageLoader.cardTexWidth;
-            int height = ImageLoader.cardTexHeight + (mainPiles[0].tieredYOffset * (highlightedStack.subStack.getCardCount() - 1));
+        allDirty = false;
+        dirtyStacks = 0;
+        dirtyLeft = 0;
+        dirtyTop = 0;
+        dirtyRight = 0;
+        dirtyBottom = 0;
+    }
 
-            g.drawImage(ImageLoader.highlightTexture, xPos, yPos, width, height, null, null);
+    /**
+     * Selects a stack, or clears the selection. The highlight is drawn over the stack so both stacks are marked dirty
+     *
+     * @param stack The newly selected stack, or null
+     */
+    private void setHighlightedStack(@Nullable SelectedStackResult stack) {
+        if (highlightedStack != null) {
+            markDirty(stackIdOf(highlightedStack.fullStack));
+        }
+        if (stack != null) {
+            markDirty(stackIdOf(stack.fullStack));
         }
+        highlightedStack = stack;
+    }
 
+    /**
+     * Sets the state of the game to that of a new game with a random deal number
+     */
+    public void initNewGame() {
+        initNewGame(Deal.randomDealNumber());
     }
 
     /**
      * Sets the state of the game to that of a new game
+     *
+     * @param dealNumber The number of the deal to play. The same number always deals the same cards
      */
-    public void initNewGame() {
+    public void initNewGame(long dealNumber) {
+        this.dealNumber = dealNumber;
+        history.clear();
         seconds = 0;
         minutes = 0;
         moves = 0;
 
         highlightedStack = null;
+        allDirty = true;
         hiddenDisplayStock = new CardStack(CardStack.FLIPTYPE_NONE, CardStack.STACKTYPE_HIDDENDISPLAYSTOCK);
 
         foundationStacks = new CardStack[4];
         mainPiles = new CardStack[7];
 
-        // Creates a list of cards to be distributed into the different piles
-        ArrayList<Integer> remainingCards = new ArrayList<>();
-        for (int i = 0; i < 52; i++) {
-            remainingCards.add(i);
-        }
-
         for (int i = 0; i < foundationStacks.length; i++) {
             foundationStacks[i] = new CardStack(CardStack.FLIPTYPE_ALL, CardStack.STACKTYPE_FOUNDATION);
         }
 
-        Random rand = new Random();
+        int[] cards = Deal.shuffle(dealNumber, new int[Deal.CARD_COUNT]);
+        int dealt = 0;
 
         for (int i = 0; i < mainPiles.length; i++) {
             mainPiles[i] = new CardStack(CardStack.FLIPTYPE_TOP, CardStack.STACKTYPE_MAIN, 0, 40);
             for (int j = 0; j < i + 1; j++) {
-                int indexChoice = rand.nextInt(remainingCards.size());
-                mainPiles[i].addNewCard(remainingCards.get(indexChoice));
-                remainingCards.remove(indexChoice);
+                mainPiles[i].addNewCard(cards[dealt++]);
             }
         }
 
         hiddenStock = new CardStack(CardStack.FLIPTYPE_NONE, CardStack.STACKTYPE_HIDDENSTOCK);
         displayStock = new CardStack(CardStack.FLIPTYPE_ALL, CardStack.STACKTYPE_DISPLAYSTOCK, 0, 40);
-        while (remainingCards.size() > 0) {
-            int indexChoice = rand.nextInt(remainingCards.size());
-            hiddenStock.addNewCard(remainingCards.get(indexChoice));
-            remainingCards.remove(indexChoice);
+        while (dealt < cards.length) {
+            hiddenStock.addNewCard(cards[dealt++]);
         }
 
     }
 
     /**
-     * Gets the instance of the CardStack that was clicked on
+     * @return The number of the deal this game was started from. Passing it to initNewGame deals the same cards again
+     */
+    public long getDealNumber() {
+        return dealNumber;
+    }
+
+    /**
+     * Replaces every stack with the cards of a packed state. The move counter and timer are left alone
      *
-     * @param clickedX The x coordinate of where the mouse was clicked
-     * @param clickedY The y coordinate of where the mouse was clicked
-     * @return The full stack that was clicked on and every card below the card that was clicked on, or null if no stack
-     * was clicked
+     * @param state The state to copy the cards from
      */
-    public @Nullable SelectedStackResult getSelectedCardstack(int clickedX, int clickedY) {
-        //Check through all main piles, use an individual card version for the display stock pile
+    public void restore(PackedState state) {
+        highlightedStack = null;
+        allDirty = true;
+        history.clear();
+        foundationStacks = new CardStack[FOUNDATION_COUNT];
+        mainPiles = new CardStack[MAIN_PILE_COUNT];
 
-        for (CardStack c : mainPiles) {
-            if (c.inBounds(clickedX, clickedY)) {
-                int clickedCardIndex = c.getClickedCardIndex(clickedX, clickedY);
-                if (c.getCardCount() == 0 || c.getCard(clickedCardIndex).isFaceUp()) {
-                    return new SelectedStackResult(c, c.getSubstack(clickedCardIndex, c.getCardCount()));
-                }
+        for (int stackId = 0; stackId < STACK_COUNT; stackId++) {
+            CardStack stack = newStack(stackId);
+            for (int i = 0; i < state.getCardCount(stackId); i++) {
+                stack.addCard(state.getCardId(stackId, i), state.isFaceUp(stackId, i));
             }
-        }
 
-        if (displayStock.inBounds(clickedX, clickedY)) {
-            // Only the last displayStock card can be selected
-            if (displayStock.getCardCount() > 0 &&
-                    displayStock.getClickedCardIndex(clickedX, clickedY) == displayStock.getCardCount() - 1) {
-                return new SelectedStackResult(displayStock,
-                        displayStock.getSubstack(displayStock.getCardCount() - 1, displayStock.getCardCount()));
+            if (stackId < STACK_FOUNDATION_FIRST) {
+                mainPiles[stackId] = stack;
+            } else if (stackId < STACK_DISPLAYSTOCK) {
+                foundationStacks[stackId - STACK_FOUNDATION_FIRST] = stack;
+            } else if (stackId == STACK_DISPLAYSTOCK) {
+                displayStock = stack;
+            } else if (stackId == STACK_HIDDENSTOCK) {
+                hiddenStock = stack;
+            } else {
+                hiddenDisplayStock = stack;
             }
+        }
+    }
 
-            return null;
+    /**
+     * Creates an empty CardStack with the flip type, stack type and offsets used for the stack with the given id
+     *
+     * @param stackId The id of the stack to create
+     * @return The new empty stack
+     */
+    private static CardStack newStack(int stackId) {
+        if (stackId < STACK_FOUNDATION_FIRST)
+            return new CardStack(CardStack.FLIPTYPE_TOP, CardStack.STACKTYPE_MAIN, 0, 40);
+        if (stackId < STACK_DISPLAYSTOCK)
+            return new CardStack(CardStack.FLIPTYPE_ALL, CardStack.STACKTYPE_FOUNDATION);
+
+        switch (stackId) {
+            case STACK_DISPLAYSTOCK:
+                return new CardStack(CardStack.FLIPTYPE_ALL, CardStack.STACKTYPE_DISPLAYSTOCK, 0, 40);
+            case STACK_HIDDENSTOCK:
+                return new CardStack(CardStack.FLIPTYPE_NONE, CardStack.STACKTYPE_HIDDENSTOCK);
+            default:
+                return new CardStack(CardStack.FLIPTYPE_NONE, CardStack.STACKTYPE_HIDDENDISPLAYSTOCK);
         }
+    }
 
-        for (CardStack c : foundationStacks) {
-            if (c.inBounds(clickedX, clickedY)) {
-                if (c.getCardCount() == 0) {
-                    return new SelectedStackResult(c, c.getSubstack(0, 0));
-                } else {
-                    return new SelectedStackResult(c, c.getSubstack(c.getCardCount() - 1, c.getCardCount()));
+    /**
+     * Makes a copy of the cards, counters, deal number and undo history that shares nothing with this game, so it can
+     * be handed to another thread. The selection and listeners are not copied
+     *
+     * @return The copy
+     */
+    public Game snapshot() {
+        Game copy = PackedState.of(this).toGame(dealNumber);
+        copy.history.load(history.toArray(), history.getUndoCount());
+        copy.moves = moves;
+        copy.seconds = seconds;
+        copy.minutes = minutes;
+        copy.loadedFrom = loadedFrom;
+        return copy;
+    }
+
+    /**
+     * Gets the Zobrist hash of where every card is and which way it is facing. The stacks keep their hashes up to
+     * date through every move, stock cycle and undo, so this only combines 14 numbers. See Zobrist
+     *
+     * @return The hash, the same as PackedState.getPositionHash gives for the cards of this game
+     */
+    public long getPositionHash() {
+        long h = 0;
+        for (int stackId = 0; stackId < STACK_COUNT; stackId++) {
+            h ^= Zobrist.mixStack(stackId, getStack(stackId).getHash());
+        }
+        return h;
+    }
+
+    /**
+     * Gets a CardStack by its id
+     *
+     * @param stackId The id of the stack, one of the STACK_ constants or a main pile index
+     * @return The CardStack with that id
+     */
+    public CardStack getStack(int stackId) {
+        if (stackId < STACK_FOUNDATION_FIRST)
+            return mainPiles[stackId];
+        if (stackId < STACK_DISPLAYSTOCK)
+            return foundationStacks[stackId - STACK_FOUNDATION_FIRST];
+
+        switch (stackId) {
+            case STACK_DISPLAYSTOCK:
+                return displayStock;
+            case STACK_HIDDENSTOCK:
+                return hiddenStock;
+            case STACK_HIDDENDISPLAYSTOCK:
+                return hiddenDisplayStock;
+        }
+
+        throw new IllegalArgumentException("Unknown stack id " + stackId);
+    }
+
+    /**
+     * Applies a move without going through clicks. Follows the same rules as selecting and moving cards by clicking
+     *
+     * @param move The move to apply, see Move
+     * @return True if the move was legal and has been applied
+     */
+    public boolean applyMove(int move) {
+        if (move == Move.UNDO)
+            return undo();
+        if (move == Move.REDO)
+            return redo();
+        if (move == Move.CYCLE_STOCK) {
+            cycleStock();
+            setHighlightedStack(null);
+            afterMove();
+            return true;
+        }
+
+        return moveCards(Move.fromStack(move), Move.count(move), Move.toStack(move));
+    }
+
+    /**
+     * Lists every legal move without going through clicks, using the same rules as moveCards and cycleStock. Stock
+     * cycles are only listed when they change the stocks. Nothing is allocated, so this can be called in the inner
+     * loop of hints, solvers and bots
+     *
+     * @param moves The buffer to write the moves to, with room for at least Move.MAX_LEGAL_MOVES moves
+     * @return How many moves were written
+     */
+    public int getLegalMoves(int[] moves) {
+        // Every card that some main pile or foundation takes, so a card that fits nowhere costs one bit test
+        long pileTargets = 0;
+        long foundationTargets = 0;
+        for (int toStack = 0; toStack < STACK_DISPLAYSTOCK; toStack++) {
+            int topId = getStack(toStack).getTopCardId();
+            if (toStack < STACK_FOUNDATION_FIRST) {
+                pileTargets |= Rules.pileMask(topId);
+            } else {
+                foundationTargets |= Rules.foundationMask(topId);
+            }
+        }
+
+        int count = 0;
+        for (int fromStack = 0; fromStack <= STACK_DISPLAYSTOCK; fromStack++) {
+            CardStack source = getStack(fromStack);
+            int size = source.getCardCount();
+            // Only the top card of the foundations and display stock can be selected
+            int lowest = source.stackType == CardStack.STACKTYPE_MAIN ? 0 : size - 1;
+
+            for (int index = Math.max(lowest, 0); index < size; index++) {
+                if (!source.isFaceUp(index))
+                    continue;
+
+                int attemptId = source.getCardId(index);
+                // Only a card on its own can go to a foundation
+                long targets = index == size - 1 ? pileTargets | foundationTargets : pileTargets;
+                if ((targets >>> attemptId & 1) == 0)
+                    continue;
+
+                for (int toStack = 0; toStack < STACK_DISPLAYSTOCK; toStack++) {
+                    if (toStack != fromStack && canMoveCards(attemptId, true, size - index, getStack(toStack))) {
+                        moves[count++] = Move.of(fromStack, toStack, size - index);
+                    }
                 }
             }
         }
 
-        return null;
+        if (hiddenStock.getCardCount() > 0 || hiddenDisplayStock.getCardCount() > 0) {
+            moves[count++] = Move.CYCLE_STOCK;
+        }
+        return count;
+    }
+
+    /**
+     * Moves cards from the top of one stack to another if the rules allow it
+     *
+     * @param fromStack The id of the stack to take cards from
+     * @param count     How many cards to take from the top of fromStack
+     * @param toStack   The id of the stack to put the cards on
+     * @return True if the cards were moved
+     */
+    public boolean moveCards(int fromStack, int count, int toStack) {
+        if (fromStack == toStack || fromStack < 0 || fromStack >= STACK_COUNT || toStack < 0 || toStack >= STACK_COUNT)
+            return false;
+
+        if (!isLegalMove(fromStack, count, toStack))
+            return false;
+
+        int entry = relocateCards(fromStack, count, toStack);
+        moves++;
+        recordMove(entry);
+        setHighlightedStack(null);
+
+        afterMove();
+        return true;
+    }
+
+    /**
+     * Checks the rules of moveCards for stack ids that are known to be valid and different
+     *
+     * @return True if the cards can be moved
+     */
+    private boolean isLegalMove(int fromStack, int count, int toStack) {
+        CardStack source = getStack(fromStack);
+        int size = source.getCardCount();
+        if (count < 1 || count > size)
+            return false;
+
+        switch (source.stackType) {
+            case CardStack.STACKTYPE_MAIN:
+                if (!source.isFaceUp(size - count))
+                    return false;
+                break;
+            case CardStack.STACKTYPE_DISPLAYSTOCK:
+            case CardStack.STACKTYPE_FOUNDATION:
+                // Only the top card of these can be selected
+                if (count != 1)
+                    return false;
+                break;
+            default:
+                return false;
+        }
+
+        return canMoveCards(source.getCardId(size - count), source.isFaceUp(size - count), count, getStack(toStack));
+    }
+
+    /**
+     * Gets the instance of the CardStack that was clicked on. Works out what was clicked from the Layout, so the game
+     * does not have to have been drawn
+     *
+     * @param clickedX The x coordinate of where the mouse was clicked, in the coordinates the game is drawn in
+     * @param clickedY The y coordinate of where the mouse was clicked, in the coordinates the game is drawn in
+     * @return The full stack that was clicked on and every card below the card that was clicked on, or null if no stack
+     * was clicked
+     */
+    public @Nullable SelectedStackResult getSelectedCardstack(int clickedX, int clickedY) {
+        int x = clickedX - drawX;
+        int y = clickedY - drawY;
+        int stackId = Layout.stackAt(this, x, y);
+        if (stackId == Layout.NONE || stackId == STACK_HIDDENSTOCK)
+            return null;
+
+        CardStack c = getStack(stackId);
+        int count = c.getCardCount();
+
+        if (stackId < STACK_FOUNDATION_FIRST) {
+            if (count == 0)
+                return new SelectedStackResult(c, c.getSubstack(0, 0));
+
+            int clickedCardIndex = Layout.cardAt(this, stackId, x, y);
+            return c.isFaceUp(clickedCardIndex)
+                    ? new SelectedStackResult(c, c.getSubstack(clickedCardIndex, count)) : null;
+        }
+
+        if (stackId == STACK_DISPLAYSTOCK) {
+            // Only the last displayStock card can be selected
+            if (count > 0 && Layout.cardAt(this, stackId, x, y) == count - 1)
+                return new SelectedStackResult(c, c.getSubstack(count - 1, count));
+            return null;
+        }
+
+        return new SelectedStackResult(c, c.getSubstack(Math.max(0, count - 1), count));
     }
 
     /**
@@ -183,22 +592,20 @@ public class Game implements IDrawable {
      * @param y The y coordinate of where the mouse was clicked
      */
     public void onClick(int x, int y) {
-        if (hiddenStock.inBounds(x, y)) {
+        if (Layout.stackAt(this, x - drawX, y - drawY) == STACK_HIDDENSTOCK) {
             cycleStock();
 
-            highlightedStack = null;
+            setHighlightedStack(null);
 
-            if (checkWinConditions()) {
-                onGameWon();
-            }
+            afterMove();
         } else {
             SelectedStackResult clickedStack = getSelectedCardstack(x, y);
 
             if (clickedStack == null) {
-                highlightedStack = null;
+                setHighlightedStack(null);
             } else {
                 if (highlightedStack == null) {
-                    highlightedStack = clickedStack;
+                    setHighlightedStack(clickedStack);
                 } else {
                     switch (clickedStack.fullStack.stackType) {
                         case CardStack.STACKTYPE_MAIN:
@@ -208,37 +615,41 @@ public class Game implements IDrawable {
                             break;
                     }
 
-                    highlightedStack = null;
+                    setHighlightedStack(null);
                 }
 
-                if (checkWinConditions()) {
-                    onGameWon();
-                }
+                afterMove();
             }
         }
     }
 
     /**
-     * Gets called when the game is won. Notifies the user they won and gives them the option of playing a new game
-     * or quitting
+     * Gets called after every move. Notifies the listener if the move won the game
      */
-    private void onGameWon() {
-        int response = JOptionPane.showConfirmDialog(null,
-                "Congratulations! You won! Would you like to start a new game?", "You won!",
-                JOptionPane.YES_NO_OPTION);
-
-        if (response == JOptionPane.YES_OPTION) {
-            startNewGame();
-        } else {
-            System.exit(0);
+    private void afterMove() {
+        if (listener != null && checkWinConditions()) {
+            listener.onGameWon(this);
         }
     }
 
     /**
-     * Causes the controlling solitaire instance to start a new game
+     * Asks the listener to start a new game, or deals a new game in place when running headless
      */
     public void startNewGame() {
-        solitaire.displayGame(new Game(solitaire));
+        startNewGame(Deal.randomDealNumber());
+    }
+
+    /**
+     * Asks the listener to start a new game from a deal number, or deals it in place when running headless
+     *
+     * @param dealNumber The number of the deal to play
+     */
+    public void startNewGame(long dealNumber) {
+        if (listener != null) {
+            listener.onNewGameRequested(this, dealNumber);
+        } else {
+            initNewGame(dealNumber);
+        }
     }
 
     /**
@@ -247,35 +658,318 @@ public class Game implements IDrawable {
      * display stock and the hidden display stock back to the hidden stock.
      */
     public void cycleStock() {
+        int entry = cycleStockCards();
+        moves++;
+        if (entry != HISTORY_NONE) {
+            recordMove(entry);
+        }
+    }
+
+    /**
+     * Does the card moving part of cycleStock
+     *
+     * @return The undo history entry for the cycle, or HISTORY_NONE if no card moved
+     */
+    private int cycleStockCards() {
+        markDirty(STACK_HIDDENSTOCK);
+        markDirty(STACK_DISPLAYSTOCK);
+
         if (hiddenStock.getCardCount() > 0) {
 
-            // grab bottom card and add it to temp stack while also removing it from the
-            // original stack
+            // grab bottom card and add it to displayStock before removing it from the original stack, since
+            // the temp stack only holds it until the original stack changes
             CardStack tempStack = hiddenStock.getSubstack(0, 1);
-            hiddenStock.deletePartOfStack(tempStack);
-
-            // add tempStack to displayStock
             displayStock.appendStack(tempStack);
+            hiddenStock.deletePartOfStack(tempStack);
             displayStock.solveFlipType(CardStack.FLIPTYPE_ALL);
 
+            int entry = Move.of(STACK_HIDDENSTOCK, STACK_DISPLAYSTOCK, 1);
+
             // if displayStock is full
             if (displayStock.getCardCount() > 3) {
                 // Remove bottom card and put it back into hiddenstock
                 CardStack tempStack2 = displayStock.getSubstack(0, 1);
-                displayStock.deletePartOfStack(tempStack2);
                 hiddenDisplayStock.appendStack(tempStack2);
+                displayStock.deletePartOfStack(tempStack2);
+                entry |= HISTORY_OVERFLOWED;
             }
 
             hiddenStock.solveFlipType(CardStack.FLIPTYPE_NONE);
+            return entry;
         } else if (hiddenDisplayStock.getCardCount() > 0) {
+            int entry = Move.of(STACK_HIDDENDISPLAYSTOCK, STACK_HIDDENSTOCK, hiddenDisplayStock.getCardCount())
+                    | displayStock.getCardCount() << HISTORY_DISPLAY_SHIFT;
+
             hiddenStock.appendStack(hiddenDisplayStock);
             hiddenStock.appendStack(displayStock);
             hiddenStock.solveFlipType(CardStack.FLIPTYPE_NONE);
             hiddenDisplayStock.deletePartOfStack(hiddenDisplayStock);
             displayStock.deletePartOfStack(displayStock);
+            return entry;
+        }
+
+        return HISTORY_NONE;
+    }
+
+    /**
+     * Adds a move that was just made to the undo history and tells the move listener about it
+     *
+     * @param entry The undo history entry of the move
+     */
+    private void recordMove(int entry) {
+        history.record(entry);
+        if (moveListener != null) {
+            int move = entry & HISTORY_MOVE_MASK;
+            int fromStack = Move.fromStack(move);
+            moveListener.onMove(this, fromStack == STACK_HIDDENSTOCK || fromStack == STACK_HIDDENDISPLAYSTOCK
+                    ? Move.CYCLE_STOCK : move);
+        }
+    }
+
+    /**
+     * Moves cards from the top of one stack to another without checking the rules
+     *
+     * @param fromStack The id of the stack to take cards from
+     * @param count     How many cards to take from the top of fromStack
+     * @param toStack   The id of the stack to put the cards on
+     * @return The undo history entry for the move
+     */
+    private int relocateCards(int fromStack, int count, int toStack) {
+        markDirty(fromStack);
+        markDirty(toStack);
+
+        CardStack source = getStack(fromStack);
+        int size = source.getCardCount();
+        boolean flips = size > count && !source.isFaceUp(size - count - 1);
+
+        CardStack subStack = source.getSubstack(size - count, size);
+        getStack(toStack).appendStack(subStack);
+        source.deletePartOfStack(subStack);
+
+        return Move.of(fromStack, toStack, count) | (flips ? HISTORY_FLIPPED : 0);
+    }
+
+    /**
+     * @return True if there is a move that can be undone
+     */
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    /**
+     * @return True if there is an undone move that can be made again
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Gets the undo history so it can be stored with the game. The entries are only meaningful to restoreHistory
+     *
+     * @return Every move that can be undone followed by every move that can be redone, oldest first
+     */
+    public int[] getHistory() {
+        return history.toArray();
+    }
+
+    /**
+     * @return How many of the entries returned by getHistory can be undone, the rest can be redone
+     */
+    public int getUndoCount() {
+        return history.getUndoCount();
+    }
+
+    /**
+     * Replaces the undo history with one returned by getHistory for the game as it is now. The history is checked by
+     * undoing every entry on a copy of the game and then redoing them all, so a history that does not belong to this
+     * position is refused instead of moving cards that are not there when it is used
+     *
+     * @param entries   The history entries, oldest first
+     * @param undoCount How many of the entries can be undone, the rest can be redone
+     * @throws IllegalArgumentException If the entries are not undo history entries of this position or there are too
+     *                                  many of them
+     */
+    public void restoreHistory(int[] entries, int undoCount) {
+        for (int entry : entries) {
+            int move = entry & HISTORY_MOVE_MASK;
+            if (Move.fromStack(move) >= STACK_COUNT || Move.toStack(move) >= STACK_COUNT
+                    || Move.fromStack(move) == Move.toStack(move))
+                throw new IllegalArgumentException("Invalid undo history entry " + entry);
+        }
+
+        PackedState position = PackedState.of(this);
+        Game check = position.toGame(dealNumber);
+        check.history.load(entries, undoCount);
+
+        for (int i = undoCount - 1; i >= 0; i--) {
+            if (!check.canUndoEntry(entries[i]))
+                throw new IllegalArgumentException("Undo history entry " + i + " cannot be undone");
+            check.undo();
+        }
+        for (int i = 0; i < entries.length; i++) {
+            if (i == undoCount && !position.equals(PackedState.of(check)))
+                throw new IllegalArgumentException("The undo history does not lead back to this position");
+            if (!check.canRedoEntry(entries[i]))
+                throw new IllegalArgumentException("Undo history entry " + i + " cannot be redone");
+            check.redo();
+        }
+
+        history.load(entries, undoCount);
+    }
+
+    /**
+     * @param entry An undo history entry with valid stack ids
+     * @return True if the cards the entry takes back are where the move would have left them
+     */
+    private boolean canUndoEntry(int entry) {
+        int move = entry & HISTORY_MOVE_MASK;
+        int fromStack = Move.fromStack(move);
+        int toStack = Move.toStack(move);
+        int count = Move.count(move);
+        int flags = entry & ~HISTORY_MOVE_MASK;
+
+        if (fromStack == STACK_HIDDENSTOCK) {
+            return toStack == STACK_DISPLAYSTOCK && count == 1 && (flags & ~HISTORY_OVERFLOWED) == 0
+                    && displayStock.getCardCount() > 0
+                    && ((flags & HISTORY_OVERFLOWED) == 0 || hiddenDisplayStock.getCardCount() > 0);
+        }
+        if (fromStack == STACK_HIDDENDISPLAYSTOCK) {
+            int displayCount = entry >>> HISTORY_DISPLAY_SHIFT;
+            return toStack == STACK_HIDDENSTOCK && count > 0 && (flags & (HISTORY_FLIPPED | HISTORY_OVERFLOWED)) == 0
+                    && displayStock.getCardCount() == 0 && hiddenDisplayStock.getCardCount() == 0
+                    && hiddenStock.getCardCount() == count + displayCount;
+        }
+
+        if (fromStack > STACK_DISPLAYSTOCK || toStack >= STACK_DISPLAYSTOCK || (flags & ~HISTORY_FLIPPED) != 0
+                || count < 1 || count > getStack(toStack).getCardCount())
+            return false;
+        // Only a main pile can have a card to turn over, and the card is face up until the move is taken back
+        CardStack source = getStack(fromStack);
+        return (flags & HISTORY_FLIPPED) == 0 || source.stackType == CardStack.STACKTYPE_MAIN
+                && source.getCardCount() > 0 && source.isFaceUp(source.getCardCount() - 1);
+    }
+
+    /**
+     * @param entry An undo history entry with valid stack ids
+     * @return True if the entry is what making its move now would record, so redoing it follows the rules
+     */
+    private boolean canRedoEntry(int entry) {
+        int move = entry & HISTORY_MOVE_MASK;
+        int fromStack = Move.fromStack(move);
+
+        if (fromStack == STACK_HIDDENSTOCK) {
+            int expected = Move.of(STACK_HIDDENSTOCK, STACK_DISPLAYSTOCK, 1)
+                    | (displayStock.getCardCount() >= 3 ? HISTORY_OVERFLOWED : 0);
+            return hiddenStock.getCardCount() > 0 && entry == expected;
+        }
+        if (fromStack == STACK_HIDDENDISPLAYSTOCK) {
+            int expected = Move.of(STACK_HIDDENDISPLAYSTOCK, STACK_HIDDENSTOCK, hiddenDisplayStock.getCardCount())
+                    | displayStock.getCardCount() << HISTORY_DISPLAY_SHIFT;
+            return hiddenStock.getCardCount() == 0 && hiddenDisplayStock.getCardCount() > 0 && entry == expected;
+        }
+
+        int count = Move.count(move);
+        if (!isLegalMove(fromStack, count, Move.toStack(move)))
+            return false;
+        CardStack source = getStack(fromStack);
+        int size = source.getCardCount();
+        boolean flips = size > count && !source.isFaceUp(size - count - 1);
+        return entry == (move | (flips ? HISTORY_FLIPPED : 0));
+    }
+
+    /**
+     * Takes back the most recent move or stock cycle that has not been undone yet, turning a card that the move
+     * turned over back face down. Takes O(k) time for a move of k cards, O(1) for a draw and O(n) for turning over a
+     * stock of n cards, see Zobrist
+     *
+     * @return False if there is nothing to undo
+     */
+    public boolean undo() {
+        if (!history.canUndo())
+            return false;
+
+        int entry = history.undo();
+        int move = entry & HISTORY_MOVE_MASK;
+        int fromStack = Move.fromStack(move);
+
+        if (fromStack == STACK_HIDDENSTOCK || fromStack == STACK_HIDDENDISPLAYSTOCK) {
+            markDirty(STACK_HIDDENSTOCK);
+            markDirty(STACK_DISPLAYSTOCK);
+        } else {
+            markDirty(fromStack);
+            markDirty(Move.toStack(move));
+        }
+
+        if (fromStack == STACK_HIDDENSTOCK) {
+            // A draw: the drawn card goes back under the hidden stock, and a card pushed out of the display stock
+            // comes back under it
+            CardStack drawn = displayStock.getSubstack(displayStock.getCardCount() - 1, displayStock.getCardCount());
+            displayStock.deletePartOfStack(drawn);
+            hiddenStock.insertAtBottom(drawn);
+            hiddenStock.solveFlipType(CardStack.FLIPTYPE_NONE);
+
+            if ((entry & HISTORY_OVERFLOWED) != 0) {
+                int hiddenDisplayCount = hiddenDisplayStock.getCardCount();
+                CardStack pushed = hiddenDisplayStock.getSubstack(hiddenDisplayCount - 1, hiddenDisplayCount);
+                hiddenDisplayStock.deletePartOfStack(pushed);
+                displayStock.insertAtBottom(pushed);
+                displayStock.solveFlipType(CardStack.FLIPTYPE_ALL);
+            }
+        } else if (fromStack == STACK_HIDDENDISPLAYSTOCK) {
+            // Turning the stock over: the hidden stock is the hidden display stock followed by the display stock
+            int hiddenDisplayCount = Move.count(move);
+            int displayCount = entry >>> HISTORY_DISPLAY_SHIFT;
+
+            hiddenDisplayStock.appendStack(hiddenStock.getSubstack(0, hiddenDisplayCount));
+            displayStock.appendStack(hiddenStock.getSubstack(hiddenDisplayCount, hiddenDisplayCount + displayCount));
+            hiddenStock.deletePartOfStack(hiddenStock);
+            hiddenDisplayStock.solveFlipType(CardStack.FLIPTYPE_ALL);
+            displayStock.solveFlipType(CardStack.FLIPTYPE_ALL);
+        } else {
+            CardStack source = getStack(fromStack);
+            CardStack destination = getStack(Move.toStack(move));
+            int size = destination.getCardCount();
+
+            CardStack subStack = destination.getSubstack(size - Move.count(move), size);
+            destination.deletePartOfStack(subStack);
+            if ((entry & HISTORY_FLIPPED) != 0) {
+                source.setFaceUp(source.getCardCount() - 1, false);
+            }
+            source.appendStack(subStack);
+        }
+
+        moves--;
+        setHighlightedStack(null);
+        if (moveListener != null) {
+            moveListener.onMove(this, Move.UNDO);
+        }
+        return true;
+    }
+
+    /**
+     * Makes the most recently undone move again
+     *
+     * @return False if there is nothing to redo
+     */
+    public boolean redo() {
+        if (!history.canRedo())
+            return false;
+
+        int move = history.redo() & HISTORY_MOVE_MASK;
+        int fromStack = Move.fromStack(move);
+        if (fromStack == STACK_HIDDENSTOCK || fromStack == STACK_HIDDENDISPLAYSTOCK) {
+            cycleStockCards();
+        } else {
+            relocateCards(fromStack, Move.count(move), Move.toStack(move));
         }
 
         moves++;
+        setHighlightedStack(null);
+        if (moveListener != null) {
+            moveListener.onMove(this, Move.REDO);
+        }
+        afterMove();
+        return true;
     }
 
     /**
@@ -286,14 +980,28 @@ public class Game implements IDrawable {
     private void conditionallyMoveStack(SelectedStackResult refStack) {
         if (highlightedStack.subStack.getCardCount() > 0) {
             if (canMoveStack(highlightedStack.subStack, refStack.fullStack)) {
-                refStack.fullStack.appendStack(highlightedStack.subStack);
-                highlightedStack.fullStack.deletePartOfStack(highlightedStack.subStack);
+                int entry = relocateCards(stackIdOf(highlightedStack.fullStack),
+                        highlightedStack.subStack.getCardCount(), stackIdOf(refStack.fullStack));
 
                 moves++;
+                recordMove(entry);
             }
         }
     }
 
+    /**
+     * @param stack One of the stacks of this game
+     * @return The id of the stack, see getStack
+     */
+    private int stackIdOf(CardStack stack) {
+        for (int stackId = 0; stackId < STACK_COUNT; stackId++) {
+            if (getStack(stackId) == stack)
+                return stackId;
+        }
+
+        throw new IllegalArgumentException("The stack is not part of this game");
+    }
+
     /**
      * Checks whether the receivingStack
      *
@@ -302,34 +1010,27 @@ public class Game implements IDrawable {
      * @return True if the stack can be moved
      */
     private boolean canMoveStack(CardStack stackToMove, CardStack receivingStack) {
-        if (receivingStack.stackType == CardStack.STACKTYPE_MAIN) {
-            if (receivingStack.getCardCount() == 0) {
-                Card attemptCard = stackToMove.getCard(0);
-                // If it's a king
-                return attemptCard.val == 12 && attemptCard.isFaceUp();
-            } else {
-                Card destCard = receivingStack.getCard(receivingStack.getCardCount() - 1);
-                Card attemptCard = stackToMove.getCard(0);
-
-                if (destCard.val == (attemptCard.val + 1) && attemptCard.isFaceUp()) {
-                    return !destCard.isSameColor(attemptCard);
-                }
-            }
-        } else if (receivingStack.stackType == CardStack.STACKTYPE_FOUNDATION) {
-            if (stackToMove.getCardCount() == 1) {
-                Card cardBeingMoved = stackToMove.getCard(0);
+        return canMoveCards(stackToMove.getCardId(0), stackToMove.isFaceUp(0), stackToMove.getCardCount(),
+                receivingStack);
+    }
 
-                if (receivingStack.getCardCount() == 0) {
-                    // If it's an ace
-                    return cardBeingMoved.val == 0;
-                } else {
-                    Card cardBeingMovedOnto = receivingStack.getCard(receivingStack.getCardCount() - 1);
+    /**
+     * Checks whether a stack of cards can be moved onto the receivingStack without needing the stack itself, so
+     * illegal moves can be rejected without making a substack. See Rules
+     *
+     * @param attemptId      The ID of the bottom card of the stack that is potentially being moved
+     * @param faceUp         If that card is face up
+     * @param count          How many cards are in the stack that is potentially being moved
+     * @param receivingStack The stack that is having cards moved onto
+     * @return True if the stack can be moved
+     */
+    private boolean canMoveCards(int attemptId, boolean faceUp, int count, CardStack receivingStack) {
+        int destId = receivingStack.getTopCardId();
 
-                    return cardBeingMoved.val == cardBeingMovedOnto.val + 1 &&
-                            cardBeingMoved.suit == cardBeingMovedOnto.suit;
-                }
-            }
-        }
+        if (receivingStack.stackType == CardStack.STACKTYPE_MAIN)
+            return faceUp && Rules.canPutOnPile(attemptId, destId);
+        if (receivingStack.stackType == CardStack.STACKTYPE_FOUNDATION)
+            return count == 1 && Rules.canPutOnFoundation(attemptId, destId);
 
         return false;
     }
@@ -340,14 +1041,14 @@ public class Game implements IDrawable {
      *
      * @return True if the above conditions have been met
      */
-    private boolean checkWinConditions() {
+    public boolean checkWinConditions() {
         if (hiddenStock.getCardCount() != 0 || displayStock.getCardCount() != 0) {
             return false;
         }
 
         for (CardStack stack : mainPiles) {
             for (int i = 0; i < stack.getCardCount(); i++) {
-                if (!stack.getCard(i).isFaceUp()) {
+                if (!stack.isFaceUp(i)) {
                     return false;
                 }
             }
@@ -0,0 +1,146 @@
+/*
+    Saves a Game by writing its stacks, counters and deal number straight to the JSON stream, with the same names and
+    order Gson used when it reflected over Game, so every existing save still loads. Reading builds the Game from the
+    loaded stacks without dealing a new game first, and skips anything it does not know, which includes the selected
+    stack that older saves hold. The selection is not saved anymore since it is only shown on the screen.
+
+    {"foundationStacks":[...],"mainPiles":[...],"hiddenStock":{...},"displayStock":{...},"hiddenDisplayStock":{...},
+     "moves":12,"seconds":30,"minutes":2,"dealNumber":42}
+ */
+
+package solitaire.game;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+class GameAdapter extends TypeAdapter<Game> {
+    private final CardStackAdapter stacks = new CardStackAdapter();
+
+    @Override
+    public void write(JsonWriter out, Game game) throws IOException {
+        if (game == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("foundationStacks");
+        writeStacks(out, game, Game.STACK_FOUNDATION_FIRST, Game.FOUNDATION_COUNT);
+        out.name("mainPiles");
+        writeStacks(out, game, 0, Game.MAIN_PILE_COUNT);
+        out.name("hiddenStock");
+        stacks.write(out, game.getStack(Game.STACK_HIDDENSTOCK));
+        out.name("displayStock");
+        stacks.write(out, game.getStack(Game.STACK_DISPLAYSTOCK));
+        out.name("hiddenDisplayStock");
+        stacks.write(out, game.getStack(Game.STACK_HIDDENDISPLAYSTOCK));
+        out.name("moves").value(game.moves);
+        out.name("seconds").value(game.seconds);
+        out.name("minutes").value(game.minutes);
+        out.name("dealNumber").value(game.getDealNumber());
+        out.endObject();
+    }
+
+    private void writeStacks(JsonWriter out, Game game, int firstStackId, int count) throws IOException {
+        out.beginArray();
+        for (int stackId = firstStackId; stackId < firstStackId + count; stackId++) {
+            stacks.write(out, game.getStack(stackId));
+        }
+        out.endArray();
+    }
+
+    @Override
+    public Game read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        CardStack[] foundationStacks = null;
+        CardStack[] mainPiles = null;
+        CardStack hiddenStock = null;
+        CardStack displayStock = null;
+        CardStack hiddenDisplayStock = null;
+        int moves = 0;
+        int seconds = 0;
+        int minutes = 0;
+        long dealNumber = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "foundationStacks":
+                    foundationStacks = readStacks(in, Game.FOUNDATION_COUNT);
+                    break;
+                case "mainPiles":
+                    mainPiles = readStacks(in, Game.MAIN_PILE_COUNT);
+                    break;
+                case "hiddenStock":
+                    hiddenStock = stacks.read(in);
+                    break;
+                case "displayStock":
+                    displayStock = stacks.read(in);
+                    break;
+                case "hiddenDisplayStock":
+                    hiddenDisplayStock = stacks.read(in);
+                    break;
+                case "moves":
+                    moves = in.nextInt();
+                    break;
+                case "seconds":
+                    seconds = in.nextInt();
+                    break;
+                case "minutes":
+                    minutes = in.nextInt();
+                    break;
+                case "dealNumber":
+                    dealNumber = in.nextLong();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        Game game = new Game(require(mainPiles, "mainPiles"), require(foundationStacks, "foundationStacks"),
+                require(hiddenStock, "hiddenStock"), require(displayStock, "displayStock"),
+                require(hiddenDisplayStock, "hiddenDisplayStock"), dealNumber);
+        game.moves = moves;
+        game.seconds = seconds;
+        game.minutes = minutes;
+        return game;
+    }
+
+    /**
+     * Reads an array of exactly count stacks
+     */
+    private CardStack[] readStacks(JsonReader in, int count) throws IOException {
+        CardStack[] read = new CardStack[count];
+        int i = 0;
+
+        in.beginArray();
+        while (in.hasNext()) {
+            if (i == count)
+                throw new JsonSyntaxException("Expected " + count + " stacks at " + in.getPath());
+            read[i] = require(stacks.read(in), in.getPath());
+            i++;
+        }
+        in.endArray();
+
+        if (i != count)
+            throw new JsonSyntaxException("Expected " + count + " stacks at " + in.getPath());
+        return read;
+    }
+
+    private static <T> T require(@Nullable T value, String name) {
+        if (value == null)
+            throw new JsonSyntaxException("The save has no " + name);
+        return value;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+    Receives the events of a Game that need to be handled outside of the rules, such as telling the user they won.
+    Games without a listener run headless and report everything through return values instead.
+ */
+
+package solitaire.game;
+
+public interface GameListener {
+    /**
+     * Called after a move or a stock cycle leaves the game in a won state
+     *
+     * @param game The game that was won
+     */
+    void onGameWon(Game game);
+
+    /**
+     * Called when the game should be replaced by a new game
+     *
+     * @param game       The game that is asking to be replaced
+     * @param dealNumber The number of the deal the new game should be started from
+     */
+    void onNewGameRequested(Game game, long dealNumber);
+}
@@ -0,0 +1,152 @@
+/*
+    Where every stack and card of a game is on the board, worked out from the cards the game has so it is known
+    without drawing anything. Drawing, repainting and clicks all use it, and headless code can hit-test with it too.
+
+    Points are turned into cards without searching. The board is split into columns that each hold one main pile, the
+    stock or the foundations, and a table gives the column of every x. The stack in the column is then found from y,
+    and the card from y with one division, since the cards of a stack only spread downwards. Nothing is allocated.
+ */
+
+package solitaire.game;
+
+public final class Layout {
+    public final static int NONE = -1;
+
+    // The size of a card on the board, which is the size of the card images
+    public final static int CARD_WIDTH = 100;
+    public final static int CARD_HEIGHT = 145;
+
+    private final static int FOUNDATION_TOP = 40;
+    private final static int FOUNDATION_SPACING = 165;
+
+    // The column of every x on the board: a main pile id, STACK_HIDDENSTOCK for the stock column,
+    // STACK_FOUNDATION_FIRST for the foundation column, or NONE between columns
+    private final static byte[] COLUMNS = new byte[Game.BOARD_WIDTH];
+
+    static {
+        for (int x = 0; x < COLUMNS.length; x++) {
+            COLUMNS[x] = NONE;
+        }
+
+        fillColumn(Game.STACK_HIDDENSTOCK);
+        fillColumn(Game.STACK_FOUNDATION_FIRST);
+        for (int pile = 0; pile < Game.MAIN_PILE_COUNT; pile++) {
+            fillColumn(pile);
+        }
+    }
+
+    private Layout() {
+    }
+
+    private static void fillColumn(int stackId) {
+        int left = stackX(stackId);
+        for (int x = left; x < left + CARD_WIDTH && x < COLUMNS.length; x++) {
+            COLUMNS[x] = (byte) stackId;
+        }
+    }
+
+    /**
+     * @param stackId The id of a stack that is drawn, so not the hidden display stock
+     * @return Where the left edge of the stack is, relative to the left edge of the game
+     */
+    public static int stackX(int stackId) {
+        if (stackId < Game.STACK_FOUNDATION_FIRST)
+            return 190 + stackId * 120;
+        if (stackId < Game.STACK_DISPLAYSTOCK)
+            return 1080;
+        return 20;
+    }
+
+    /**
+     * @param stackId The id of a stack that is drawn, so not the hidden display stock
+     * @return Where the top edge of the stack is, relative to the top edge of the game
+     */
+    public static int stackY(int stackId) {
+        if (stackId < Game.STACK_FOUNDATION_FIRST)
+            return 10;
+        if (stackId < Game.STACK_DISPLAYSTOCK)
+            return FOUNDATION_TOP + (stackId - Game.STACK_FOUNDATION_FIRST) * FOUNDATION_SPACING;
+        return stackId == Game.STACK_DISPLAYSTOCK ? 185 : 10;
+    }
+
+    /**
+     * @param game    The game
+     * @param stackId The id of a stack that is drawn
+     * @param index   The index of a card in the stack, 0 being the bottom card
+     * @return Where the left edge of the card is, relative to the left edge of the game
+     */
+    public static int cardX(Game game, int stackId, int index) {
+        return stackX(stackId) + index * game.getStack(stackId).tieredXOffset;
+    }
+
+    /**
+     * @param game    The game
+     * @param stackId The id of a stack that is drawn
+     * @param index   The index of a card in the stack, 0 being the bottom card
+     * @return Where the top edge of the card is, relative to the top edge of the game
+     */
+    public static int cardY(Game game, int stackId, int index) {
+        return stackY(stackId) + index * game.getStack(stackId).tieredYOffset;
+    }
+
+    /**
+     * Finds the stack drawn at a point. An empty stack takes up the space of one card
+     *
+     * @param game The game
+     * @param x    The x coordinate, relative to the left edge of the game
+     * @param y    The y coordinate, relative to the top edge of the game
+     * @return The id of the stack, or NONE if there is no stack at the point
+     */
+    public static int stackAt(Game game, int x, int y) {
+        if (x < 0 || x >= COLUMNS.length)
+            return NONE;
+
+        int column = COLUMNS[x];
+        if (column == NONE)
+            return NONE;
+
+        if (column == Game.STACK_HIDDENSTOCK) {
+            if (contains(game, Game.STACK_HIDDENSTOCK, x, y))
+                return Game.STACK_HIDDENSTOCK;
+            return contains(game, Game.STACK_DISPLAYSTOCK, x, y) ? Game.STACK_DISPLAYSTOCK : NONE;
+        }
+
+        if (column == Game.STACK_FOUNDATION_FIRST) {
+            int foundation = Math.max(0, Math.min(Game.FOUNDATION_COUNT - 1,
+                    (y - FOUNDATION_TOP) / FOUNDATION_SPACING));
+            int stackId = Game.STACK_FOUNDATION_FIRST + foundation;
+            return contains(game, stackId, x, y) ? stackId : NONE;
+        }
+
+        return contains(game, column, x, y) ? column : NONE;
+    }
+
+    /**
+     * Finds the card of a stack drawn at a point, which is the highest card covering it
+     *
+     * @param game    The game
+     * @param stackId The id of a stack that is drawn
+     * @param x       The x coordinate, relative to the left edge of the game
+     * @param y       The y coordinate, relative to the top edge of the game
+     * @return The index of the card in the stack, or NONE if none of its cards is at the point
+     */
+    public static int cardAt(Game game, int stackId, int x, int y) {
+        CardStack stack = game.getStack(stackId);
+        if (stack.getCardCount() == 0 || !contains(game, stackId, x, y))
+            return NONE;
+
+        if (stack.tieredYOffset == 0)
+            return stack.getCardCount() - 1;
+        return Math.min(stack.getCardCount() - 1, (y - stackY(stackId)) / stack.tieredYOffset);
+    }
+
+    /**
+     * @return True if a point is inside the bounds of a stack
+     */
+    private static boolean contains(Game game, int stackId, int x, int y) {
+        CardStack stack = game.getStack(stackId);
+        int left = stackX(stackId);
+        int top = stackY(stackId);
+        return x >= left && x < left + stack.getDrawnWidth() && y >= top && y < top + stack.getDrawnHeight();
+    }
+}
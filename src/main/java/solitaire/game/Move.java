@@ -0,0 +1,97 @@
+/*
+    Encodes the moves of the headless game API as plain ints so they can be stored and passed around without
+    allocating. A move is either a stock cycle or moving some number of cards from the top of one stack to another.
+ */
+
+package solitaire.game;
+
+public final class Move {
+    /**
+     * The move that cycles the stock, see Game.cycleStock
+     */
+    public final static int CYCLE_STOCK = of(Game.STACK_HIDDENSTOCK, Game.STACK_HIDDENSTOCK, 0);
+
+    /**
+     * The moves that undo the most recent move and redo the most recently undone move, see Game.undo and Game.redo
+     */
+    public final static int UNDO = of(Game.STACK_HIDDENDISPLAYSTOCK, Game.STACK_HIDDENDISPLAYSTOCK, 0);
+    public final static int REDO = of(Game.STACK_HIDDENDISPLAYSTOCK, Game.STACK_HIDDENDISPLAYSTOCK, 1);
+
+    /**
+     * No position has more legal moves than this, so a buffer this long can hold the moves of any position. See
+     * Game.getLegalMoves and PackedState.getLegalMoves
+     */
+    public final static int MAX_LEGAL_MOVES = 256;
+
+    private Move() {
+    }
+
+    /**
+     * Creates a move of cards between two stacks
+     *
+     * @param fromStack The id of the stack the cards are taken from, see Game.getStack
+     * @param toStack   The id of the stack the cards are put on
+     * @param count     How many cards are taken from the top of fromStack
+     * @return The encoded move
+     */
+    public static int of(int fromStack, int toStack, int count) {
+        return fromStack | (toStack << 4) | (count << 8);
+    }
+
+    /**
+     * @param move An encoded move
+     * @return The id of the stack the cards are taken from
+     */
+    public static int fromStack(int move) {
+        return move & 0xF;
+    }
+
+    /**
+     * @param move An encoded move
+     * @return The id of the stack the cards are put on
+     */
+    public static int toStack(int move) {
+        return (move >> 4) & 0xF;
+    }
+
+    /**
+     * @param move An encoded move
+     * @return How many cards are moved
+     */
+    public static int count(int move) {
+        return move >>> 8;
+    }
+
+    /**
+     * Makes a readable representation of a move, useful for logging solutions and debugging
+     *
+     * @param move An encoded move
+     * @return The readable form of the move
+     */
+    public static String toString(int move) {
+        if (move == CYCLE_STOCK)
+            return "cycle stock";
+        if (move == UNDO)
+            return "undo";
+        if (move == REDO)
+            return "redo";
+
+        return count(move) + " from " + stackName(fromStack(move)) + " to " + stackName(toStack(move));
+    }
+
+    private static String stackName(int stackId) {
+        if (stackId < Game.STACK_FOUNDATION_FIRST)
+            return "pile " + (stackId + 1);
+        if (stackId < Game.STACK_DISPLAYSTOCK)
+            return "foundation " + (stackId - Game.STACK_FOUNDATION_FIRST + 1);
+
+        switch (stackId) {
+            case Game.STACK_DISPLAYSTOCK:
+                return "display stock";
+            case Game.STACK_HIDDENSTOCK:
+                return "hidden stock";
+            default:
+                return "hidden display stock";
+        }
+    }
+}
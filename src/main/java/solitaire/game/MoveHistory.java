@@ -0,0 +1,122 @@
+/*
+    A bounded history of the moves made in a game, stored as ints in a ring buffer so undo and redo are O(1) and a
+    long session never uses more memory. When the buffer is full the oldest move is forgotten. Making a new move
+    forgets every move that was undone.
+
+    What the ints mean is up to Game, see Game.undo.
+ */
+
+package solitaire.game;
+
+final class MoveHistory {
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    private final int[] entries;
+    private int start; // The index of the oldest entry
+    private int undoCount; // Entries from start that can be undone
+    private int redoCount; // Entries after those that can be redone
+
+    MoveHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity How many moves can be undone at most
+     */
+    MoveHistory(int capacity) {
+        entries = new int[capacity];
+    }
+
+    /**
+     * Adds a move that was just made, forgetting the undone moves and the oldest move if the history is full
+     *
+     * @param entry The move
+     */
+    void record(int entry) {
+        if (undoCount == entries.length) {
+            start = (start + 1) % entries.length;
+            undoCount--;
+        }
+
+        entries[(start + undoCount) % entries.length] = entry;
+        undoCount++;
+        redoCount = 0;
+    }
+
+    boolean canUndo() {
+        return undoCount > 0;
+    }
+
+    boolean canRedo() {
+        return redoCount > 0;
+    }
+
+    /**
+     * @return The most recent move that has not been undone, which becomes the next move to redo
+     */
+    int undo() {
+        if (undoCount == 0)
+            throw new IllegalStateException("There is no move to undo");
+
+        undoCount--;
+        redoCount++;
+        return entries[(start + undoCount) % entries.length];
+    }
+
+    /**
+     * @return The most recently undone move, which becomes the next move to undo
+     */
+    int redo() {
+        if (redoCount == 0)
+            throw new IllegalStateException("There is no move to redo");
+
+        int entry = entries[(start + undoCount) % entries.length];
+        undoCount++;
+        redoCount--;
+        return entry;
+    }
+
+    /**
+     * @return How many of the entries returned by toArray can be undone, the rest can be redone
+     */
+    int getUndoCount() {
+        return undoCount;
+    }
+
+    /**
+     * @return Every move that can be undone followed by every move that can be redone, oldest first
+     */
+    int[] toArray() {
+        int[] array = new int[undoCount + redoCount];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = entries[(start + i) % entries.length];
+        }
+        return array;
+    }
+
+    /**
+     * Replaces the history with moves returned by toArray
+     *
+     * @param moves     The moves, oldest first
+     * @param undoCount How many of the moves can be undone, the rest can be redone
+     */
+    void load(int[] moves, int undoCount) {
+        if (moves.length > entries.length || undoCount < 0 || undoCount > moves.length)
+            throw new IllegalArgumentException("A history of " + moves.length + " moves with " + undoCount
+                    + " to undo does not fit in " + entries.length + " entries");
+
+        System.arraycopy(moves, 0, entries, 0, moves.length);
+        start = 0;
+        this.undoCount = undoCount;
+        redoCount = moves.length - undoCount;
+    }
+
+    /**
+     * Forgets every move
+     */
+    void clear() {
+        start = 0;
+        undoCount = 0;
+        redoCount = 0;
+    }
+}
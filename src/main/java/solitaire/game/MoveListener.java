@@ -0,0 +1,17 @@
+/*
+    Receives every change a player makes to a Game, for example to write it to a journal. Moves that are rejected,
+    selections and stock cycles that move no card are not reported.
+ */
+
+package solitaire.game;
+
+public interface MoveListener {
+    /**
+     * Called after a move has changed the game. Applying the same moves with Game.applyMove to a copy of the game
+     * from before them gives the same game
+     *
+     * @param game The game that changed
+     * @param move The move, which can also be Move.CYCLE_STOCK, Move.UNDO or Move.REDO
+     */
+    void onMove(Game game, int move);
+}
@@ -0,0 +1,579 @@
+/*
+    An immutable, compact encoding of where every card of a Game is and which way it is facing. It takes 66 bytes:
+    the card count of each of the 14 stacks followed by the 52 cards from the bottom of stack 0 to the top of the
+    last stack, one byte each, holding the card ID with a bit set if the card is face up. Moves are applied directly
+    to the packed form with the same rules as Game, so it can be used for searching, undo history and simulations.
+ */
+
+package solitaire.game;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+public final class PackedState {
+    public final static int CARD_COUNT = 52;
+    public final static int SIZE = Game.STACK_COUNT + CARD_COUNT;
+
+    private final static int FACE_UP = 0x40;
+    private final static int ID_MASK = 0x3F;
+    private final static int SUIT_SIZE = 13;
+    // The cards left after dealing 1 to 7 cards to the main piles
+    private final static int STOCK_SIZE = CARD_COUNT - 28;
+
+    private final byte[] data;
+    private int hash;
+
+    private PackedState(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Packs the cards of a game
+     *
+     * @param game The game to pack
+     * @return The packed state of the game
+     */
+    public static PackedState of(Game game) {
+        byte[] data = new byte[SIZE];
+        int offset = Game.STACK_COUNT;
+
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            CardStack stack = game.getStack(stackId);
+            data[stackId] = (byte) stack.getCardCount();
+
+            for (int i = 0; i < stack.getCardCount(); i++) {
+                data[offset++] = (byte) (stack.getCardId(i) | (stack.isFaceUp(i) ? FACE_UP : 0));
+            }
+        }
+
+        if (offset != SIZE)
+            throw new IllegalArgumentException("A game must hold exactly " + CARD_COUNT + " cards to be packed");
+
+        return new PackedState(data);
+    }
+
+    /**
+     * Reads a state that was stored with toBytes
+     *
+     * @param bytes The stored state
+     * @return The state
+     * @throws IllegalArgumentException If the bytes are not a valid state
+     */
+    public static PackedState fromBytes(byte[] bytes) {
+        if (bytes.length != SIZE)
+            throw new IllegalArgumentException("A packed state is " + SIZE + " bytes, not " + bytes.length);
+
+        int total = 0;
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            if (bytes[stackId] < 0 || bytes[stackId] > maxCardCount(stackId))
+                throw new IllegalArgumentException("Stack " + stackId + " cannot hold " + bytes[stackId] + " cards");
+            total += bytes[stackId];
+        }
+
+        long seen = 0;
+        for (int i = Game.STACK_COUNT; i < SIZE; i++) {
+            int id = bytes[i] & ID_MASK;
+            if (id >= CARD_COUNT || (bytes[i] & ~(ID_MASK | FACE_UP)) != 0)
+                throw new IllegalArgumentException("Invalid card byte " + bytes[i]);
+            seen |= 1L << id;
+        }
+
+        if (total != CARD_COUNT || seen != (1L << CARD_COUNT) - 1)
+            throw new IllegalArgumentException("A packed state must hold every card exactly once");
+
+        return new PackedState(bytes.clone());
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @return The most cards the stack can hold in a game played by the rules: the cards dealt face down on a main pile
+     * and a full run on top of them, a full suit on a foundation, three drawn cards, or the whole stock
+     */
+    private static int maxCardCount(int stackId) {
+        if (stackId < Game.STACK_FOUNDATION_FIRST)
+            return stackId + SUIT_SIZE;
+        if (stackId < Game.STACK_DISPLAYSTOCK)
+            return SUIT_SIZE;
+        if (stackId == Game.STACK_DISPLAYSTOCK)
+            return 3;
+        return STOCK_SIZE;
+    }
+
+    /**
+     * @return A copy of the packed bytes, which can be read back with fromBytes
+     */
+    public byte[] toBytes() {
+        return data.clone();
+    }
+
+    /**
+     * Creates a headless game holding the cards of this state
+     *
+     * @return The new game
+     */
+    public Game toGame() {
+        return toGame(Deal.randomDealNumber());
+    }
+
+    /**
+     * Creates a headless game holding the cards of this state, with a zeroed move counter and timer
+     *
+     * @param dealNumber The number of the deal the game was started from, see Game.getDealNumber
+     * @return The new game
+     */
+    public Game toGame(long dealNumber) {
+        return new Game(this, dealNumber);
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @return How many cards are in the stack
+     */
+    public int getCardCount(int stackId) {
+        return data[stackId];
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @param index   The index of the card in the stack, 0 being the bottom
+     * @return The ID of the card
+     */
+    public int getCardId(int stackId, int index) {
+        return data[offsetOf(data, stackId) + index] & ID_MASK;
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @param index   The index of the card in the stack, 0 being the bottom
+     * @return If the card is face up
+     */
+    public boolean isFaceUp(int stackId, int index) {
+        return (data[offsetOf(data, stackId) + index] & FACE_UP) != 0;
+    }
+
+    /**
+     * Copies the IDs of every card in a stack, from the bottom up, without allocating
+     *
+     * @param stackId    The id of a stack, see Game.getStack
+     * @param dest       The array to copy the IDs to
+     * @param destOffset The index in dest to copy the bottom card to
+     * @return How many cards were copied
+     */
+    public int getCardIds(int stackId, int[] dest, int destOffset) {
+        int offset = offsetOf(data, stackId);
+        int size = data[stackId];
+        for (int i = 0; i < size; i++) {
+            dest[destOffset + i] = data[offset + i] & ID_MASK;
+        }
+        return size;
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @return The ID of the top card of the stack, or Rules.EMPTY if the stack is empty
+     */
+    public int getTopCardId(int stackId) {
+        if (data[stackId] == 0)
+            return Rules.EMPTY;
+        return data[offsetOf(data, stackId) + data[stackId] - 1] & ID_MASK;
+    }
+
+    /**
+     * @param stackId The id of a stack, see Game.getStack
+     * @return The index of the lowest face up card of the stack, or the card count if every card is face down
+     */
+    public int getFirstFaceUpIndex(int stackId) {
+        int offset = offsetOf(data, stackId);
+        int i = 0;
+        while (i < data[stackId] && (data[offset + i] & FACE_UP) == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Same as Game.checkWinConditions
+     *
+     * @return True if the stocks are empty and every card in the main piles is face up
+     */
+    public boolean isWon() {
+        if (data[Game.STACK_HIDDENSTOCK] != 0 || data[Game.STACK_DISPLAYSTOCK] != 0)
+            return false;
+
+        int offset = Game.STACK_COUNT;
+        for (int stackId = 0; stackId < Game.STACK_FOUNDATION_FIRST; stackId++) {
+            for (int i = 0; i < data[stackId]; i++) {
+                if ((data[offset + i] & FACE_UP) == 0)
+                    return false;
+            }
+            offset += data[stackId];
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if a move follows the same rules as Game.moveCards. Stock cycles are always legal
+     *
+     * @param move The move to check, see Move
+     * @return True if the move can be applied
+     */
+    public boolean canApply(int move) {
+        if (move == Move.CYCLE_STOCK)
+            return true;
+
+        int fromStack = Move.fromStack(move);
+        int toStack = Move.toStack(move);
+        int count = Move.count(move);
+        if (fromStack == toStack || fromStack >= Game.STACK_COUNT || toStack >= Game.STACK_COUNT)
+            return false;
+
+        int size = data[fromStack];
+        if (count < 1 || count > size)
+            return false;
+
+        if (fromStack >= Game.STACK_FOUNDATION_FIRST) {
+            // Only the top card of the foundations and display stock can be selected
+            if (fromStack > Game.STACK_DISPLAYSTOCK || count != 1)
+                return false;
+        }
+
+        int attempt = data[offsetOf(data, fromStack) + size - count];
+        if ((attempt & FACE_UP) == 0)
+            return false;
+
+        return canReceive(attempt & ID_MASK, count, toStack, getTopCardId(toStack));
+    }
+
+    /**
+     * Lists every legal move, in the same order as Game.getLegalMoves. Nothing is allocated
+     *
+     * @param moves The buffer to write the moves to, with room for at least Move.MAX_LEGAL_MOVES moves
+     * @return How many moves were written
+     */
+    public int getLegalMoves(int[] moves) {
+        // Every card that some main pile or foundation takes, so a card that fits nowhere costs one bit test
+        long pileTargets = 0;
+        long foundationTargets = 0;
+        int offset = Game.STACK_COUNT;
+        for (int toStack = 0; toStack < Game.STACK_DISPLAYSTOCK; toStack++) {
+            int topId = data[toStack] == 0 ? Rules.EMPTY : data[offset + data[toStack] - 1] & ID_MASK;
+            if (toStack < Game.STACK_FOUNDATION_FIRST) {
+                pileTargets |= Rules.pileMask(topId);
+            } else {
+                foundationTargets |= Rules.foundationMask(topId);
+            }
+            offset += data[toStack];
+        }
+
+        int count = 0;
+        int fromOffset = Game.STACK_COUNT;
+        for (int fromStack = 0; fromStack <= Game.STACK_DISPLAYSTOCK; fromStack++) {
+            int size = data[fromStack];
+            // Only the top card of the foundations and display stock can be selected
+            int lowest = fromStack < Game.STACK_FOUNDATION_FIRST ? 0 : size - 1;
+
+            for (int index = Math.max(lowest, 0); index < size; index++) {
+                int attempt = data[fromOffset + index];
+                if ((attempt & FACE_UP) == 0)
+                    continue;
+                // Only a card on its own can go to a foundation
+                long targets = index == size - 1 ? pileTargets | foundationTargets : pileTargets;
+                if ((targets >>> (attempt & ID_MASK) & 1) == 0)
+                    continue;
+
+                int toOffset = Game.STACK_COUNT;
+                for (int toStack = 0; toStack < Game.STACK_DISPLAYSTOCK; toStack++) {
+                    int destSize = data[toStack];
+                    int destId = destSize == 0 ? Rules.EMPTY : data[toOffset + destSize - 1] & ID_MASK;
+                    if (toStack != fromStack && canReceive(attempt & ID_MASK, size - index, toStack, destId)) {
+                        moves[count++] = Move.of(fromStack, toStack, size - index);
+                    }
+                    toOffset += destSize;
+                }
+            }
+            fromOffset += size;
+        }
+
+        if (data[Game.STACK_HIDDENSTOCK] > 0 || data[Game.STACK_HIDDENDISPLAYSTOCK] > 0) {
+            moves[count++] = Move.CYCLE_STOCK;
+        }
+        return count;
+    }
+
+    /**
+     * Same as Game.canMoveCards for a face up card
+     *
+     * @param attemptId The ID of the bottom card of the cards being moved
+     * @param count     How many cards are being moved
+     * @param toStack   The id of the stack the cards are put on
+     * @param destId    The ID of the top card of toStack, or Rules.EMPTY if it is empty
+     */
+    private static boolean canReceive(int attemptId, int count, int toStack, int destId) {
+        if (toStack < Game.STACK_FOUNDATION_FIRST)
+            return Rules.canPutOnPile(attemptId, destId);
+        if (toStack < Game.STACK_DISPLAYSTOCK)
+            return count == 1 && Rules.canPutOnFoundation(attemptId, destId);
+
+        return false;
+    }
+
+    /**
+     * Applies a move to a copy of this state, following the same rules as Game.applyMove
+     *
+     * @param move The move to apply, see Move
+     * @return The state after the move, or null if the move is not legal
+     */
+    public @Nullable PackedState apply(int move) {
+        if (move == Move.CYCLE_STOCK)
+            return cycleStock();
+        if (!canApply(move))
+            return null;
+
+        int fromStack = Move.fromStack(move);
+        int count = Move.count(move);
+        byte[] next = relocate(data, fromStack, data[fromStack] - count, count, Move.toStack(move));
+        flipTop(next, fromStack);
+
+        return new PackedState(next);
+    }
+
+    /**
+     * Same as Game.cycleStock, but on a copy of this state
+     *
+     * @return The state after cycling the stock
+     */
+    public PackedState cycleStock() {
+        return cycleStock(1);
+    }
+
+    /**
+     * Same as calling cycleStock the given number of times, but only makes one copy. Read from the bottom of the
+     * hidden display stock, through the display stock and on through the hidden stock in drawing order, the stock
+     * cards never change order when cycled. Only where that sequence is split between the three stacks changes.
+     *
+     * @param times How many times to cycle the stock
+     * @return The state after cycling the stock
+     */
+    public PackedState cycleStock(int times) {
+        int hiddenDisplay = data[Game.STACK_HIDDENDISPLAYSTOCK];
+        int display = data[Game.STACK_DISPLAYSTOCK];
+        int hidden = data[Game.STACK_HIDDENSTOCK];
+
+        int cycled = 0;
+        while (cycled < times) {
+            if (hidden > 0) {
+                hidden--;
+                display++;
+                if (display > 3) {
+                    display--;
+                    hiddenDisplay++;
+                }
+            } else if (hiddenDisplay > 0) {
+                hidden = hiddenDisplay + display;
+                hiddenDisplay = 0;
+                display = 0;
+            } else {
+                // Nothing to cycle, but it still counts as a move in Game
+                break;
+            }
+            cycled++;
+        }
+
+        if (cycled == 0)
+            return this;
+
+        int displayOffset = offsetOf(data, Game.STACK_DISPLAYSTOCK);
+        int oldHiddenDisplay = data[Game.STACK_HIDDENDISPLAYSTOCK];
+        int oldDisplay = data[Game.STACK_DISPLAYSTOCK];
+        int oldHidden = data[Game.STACK_HIDDENSTOCK];
+
+        byte[] next = data.clone();
+        next[Game.STACK_DISPLAYSTOCK] = (byte) display;
+        next[Game.STACK_HIDDENSTOCK] = (byte) hidden;
+        next[Game.STACK_HIDDENDISPLAYSTOCK] = (byte) hiddenDisplay;
+
+        // The stacks are stored as display, hidden, hidden display, so the sequence starts at the hidden display part
+        int total = hiddenDisplay + display + hidden;
+        for (int i = 0; i < total; i++) {
+            int card;
+            if (i < oldHiddenDisplay) {
+                card = data[displayOffset + oldDisplay + oldHidden + i];
+            } else if (i < oldHiddenDisplay + oldDisplay) {
+                card = data[displayOffset + i - oldHiddenDisplay];
+            } else {
+                card = data[displayOffset + oldDisplay + i - oldHiddenDisplay - oldDisplay];
+            }
+            card &= ID_MASK;
+
+            int position = i < hiddenDisplay ? display + hidden + i : i - hiddenDisplay;
+            // Only the hidden stock is face down, cards in the hidden display stock were face up in the display stock
+            next[displayOffset + position] = (byte) (i < hiddenDisplay + display ? card | FACE_UP : card);
+        }
+
+        return new PackedState(next);
+    }
+
+    /**
+     * Copies the state while moving cards from one stack onto the top of another
+     *
+     * @param data      The state to copy
+     * @param fromStack The stack to take cards from
+     * @param fromIndex The index of the lowest card to take
+     * @param count     How many cards to take
+     * @param toStack   The stack to put the cards on
+     * @return The copy with the cards moved
+     */
+    private static byte[] relocate(byte[] data, int fromStack, int fromIndex, int count, int toStack) {
+        byte[] next = new byte[SIZE];
+        System.arraycopy(data, 0, next, 0, Game.STACK_COUNT);
+        next[fromStack] -= count;
+        next[toStack] += count;
+
+        int movedOffset = offsetOf(data, fromStack) + fromIndex;
+        int in = Game.STACK_COUNT;
+        int out = Game.STACK_COUNT;
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            int size = data[stackId];
+
+            if (stackId == fromStack) {
+                System.arraycopy(data, in, next, out, fromIndex);
+                out += fromIndex;
+                System.arraycopy(data, in + fromIndex + count, next, out, size - fromIndex - count);
+                out += size - fromIndex - count;
+            } else {
+                System.arraycopy(data, in, next, out, size);
+                out += size;
+            }
+
+            if (stackId == toStack) {
+                System.arraycopy(data, movedOffset, next, out, count);
+                out += count;
+            }
+
+            in += size;
+        }
+
+        return next;
+    }
+
+    /**
+     * Turns the top card of a stack face up, like CardStack.deletePartOfStack does
+     */
+    private static void flipTop(byte[] data, int stackId) {
+        if (data[stackId] > 0) {
+            data[offsetOf(data, stackId) + data[stackId] - 1] |= FACE_UP;
+        }
+    }
+
+    /**
+     * Finds where the cards of a stack start
+     */
+    private static int offsetOf(byte[] data, int stackId) {
+        int offset = Game.STACK_COUNT;
+        for (int i = 0; i < stackId; i++) {
+            offset += data[i];
+        }
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PackedState)) return false;
+        return Arrays.equals(data, ((PackedState) o).data);
+    }
+
+    @Override
+    public int hashCode() {
+        // Cached the same way String caches its hash, a data race only causes it to be calculated again
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(data);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Makes a 64 bit hash of the state, used as the key of transposition tables where the 32 bit hashCode would
+     * collide too often. Swapping two whole main piles or two whole foundations never changes what can be done in a
+     * game, so states that only differ that way get the same hash.
+     *
+     * @return The 64 bit hash
+     */
+    public long hash64() {
+        long h = 0;
+        int offset = Game.STACK_COUNT;
+
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            // Main piles and foundations are seeded by their kind instead of their id and added up, so their order
+            // does not matter
+            long stackHash;
+            if (stackId < Game.STACK_FOUNDATION_FIRST) {
+                stackHash = 1;
+            } else if (stackId < Game.STACK_DISPLAYSTOCK) {
+                stackHash = 2;
+            } else {
+                stackHash = stackId;
+            }
+
+            for (int i = offset; i < offset + data[stackId]; i++) {
+                stackHash = (stackHash ^ (data[i] & 0xFF)) * 0x100000001B3L;
+            }
+            offset += data[stackId];
+
+            h += mix(stackHash);
+        }
+
+        return h;
+    }
+
+    /**
+     * Works out the Zobrist hash of the state, which unlike hash64 tells every position apart. It is the hash
+     * Game.getPositionHash keeps up to date, so a game and its packed state can be looked up with the same key
+     *
+     * @return The hash, see Zobrist
+     */
+    public long getPositionHash() {
+        long h = 0;
+        int offset = Game.STACK_COUNT;
+
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            long stackHash = 0;
+            int belowId = Rules.EMPTY;
+            for (int i = offset; i < offset + data[stackId]; i++) {
+                int id = data[i] & ID_MASK;
+                stackHash ^= Zobrist.chain(id, belowId) ^ ((data[i] & FACE_UP) != 0 ? Zobrist.face(id) : 0);
+                belowId = id;
+            }
+            offset += data[stackId];
+
+            h ^= Zobrist.mixStack(stackId, stackHash);
+        }
+
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int stackId = 0; stackId < Game.STACK_COUNT; stackId++) {
+            builder.append(stackId).append(':');
+            for (int i = 0; i < getCardCount(stackId); i++) {
+                builder.append(' ').append(getCardId(stackId, i)).append(isFaceUp(stackId, i) ? '^' : 'v');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+    Which card can be put on which, worked out once for every pair of cards so checking a move is one bit test. For
+    each card that can be on top of a stack there is a mask with a bit per card ID, set for the cards that can be put
+    on it: on a main pile a card of the other color one rank lower, on a foundation the next card of the same suit.
+    An empty stack has masks too, holding the kings for a main pile and the aces for a foundation.
+
+    Game, PackedState and the solver all check moves through these tables, so they always agree on the rules.
+ */
+
+package solitaire.game;
+
+public final class Rules {
+    // The ID used for the top card of an empty stack
+    public final static int EMPTY = -1;
+
+    public final static long KINGS = maskOfRank(12);
+    public final static long ACES = maskOfRank(0);
+
+    // The masks for each top card ID, shifted by one so EMPTY has index 0
+    private final static long[] PILE_ONTO = new long[PackedState.CARD_COUNT + 1];
+    private final static long[] FOUNDATION_ONTO = new long[PackedState.CARD_COUNT + 1];
+
+    static {
+        PILE_ONTO[0] = KINGS;
+        FOUNDATION_ONTO[0] = ACES;
+
+        for (int top = 0; top < PackedState.CARD_COUNT; top++) {
+            for (int card = 0; card < PackedState.CARD_COUNT; card++) {
+                if (rank(card) + 1 == rank(top) && isRed(card) != isRed(top)) {
+                    PILE_ONTO[top + 1] |= 1L << card;
+                }
+                if (card == top + 1 && suit(card) == suit(top)) {
+                    FOUNDATION_ONTO[top + 1] |= 1L << card;
+                }
+            }
+        }
+    }
+
+    private Rules() {
+    }
+
+    /**
+     * @param topId The ID of the top card of a main pile, or EMPTY if the pile is empty
+     * @return A bit per card ID, set for every card that can be put on the pile
+     */
+    public static long pileMask(int topId) {
+        return PILE_ONTO[topId + 1];
+    }
+
+    /**
+     * @param topId The ID of the top card of a foundation, or EMPTY if the foundation is empty
+     * @return A bit per card ID, set for every card that can be put on the foundation
+     */
+    public static long foundationMask(int topId) {
+        return FOUNDATION_ONTO[topId + 1];
+    }
+
+    /**
+     * @param cardId The ID of the bottom card of the cards being moved, which has to be face up
+     * @param topId  The ID of the top card of a main pile, or EMPTY if the pile is empty
+     * @return True if the cards can be put on the pile
+     */
+    public static boolean canPutOnPile(int cardId, int topId) {
+        return (PILE_ONTO[topId + 1] >>> cardId & 1) != 0;
+    }
+
+    /**
+     * @param cardId The ID of the card being moved, which has to be moved on its own
+     * @param topId  The ID of the top card of a foundation, or EMPTY if the foundation is empty
+     * @return True if the card can be put on the foundation
+     */
+    public static boolean canPutOnFoundation(int cardId, int topId) {
+        return (FOUNDATION_ONTO[topId + 1] >>> cardId & 1) != 0;
+    }
+
+    /**
+     * @return The rank of a card, 0 for an ace up to 12 for a king
+     */
+    public static int rank(int cardId) {
+        return cardId % 13;
+    }
+
+    /**
+     * @return The suit of a card, from 0 to 3 in the order of Card.SUIT_SPADE to Card.SUIT_DIAMOND
+     */
+    public static int suit(int cardId) {
+        return cardId / 13;
+    }
+
+    /**
+     * @return True for hearts and diamonds
+     */
+    public static boolean isRed(int cardId) {
+        return cardId >= 26;
+    }
+
+    private static long maskOfRank(int rank) {
+        long mask = 0;
+        for (int suit = 0; suit < 4; suit++) {
+            mask |= 1L << (suit * 13 + rank);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+    A set of the most recent position hashes, for noticing that a game, a bot or a solver came back to a position it
+    was already in, like going around the stock without playing a card. It holds at most a fixed number of hashes and
+    forgets the oldest one when a new one does not fit, so memory use never grows after it is created.
+
+    Hashes are kept in an open addressing table with linear probing next to a ring of the hashes in the order they
+    were added, which says which one to forget. Adding, looking up and forgetting are O(1) and allocate nothing.
+    Position hashes from Zobrist are already random, so their low bits are used as the slot directly.
+ */
+
+package solitaire.game;
+
+import java.util.Arrays;
+
+public class SeenPositions {
+    // Marks an empty slot. A hash that happens to be this is stored as EMPTY_STANDIN instead
+    private final static long EMPTY = 0;
+    private final static long EMPTY_STANDIN = 0x9E3779B97F4A7C15L;
+
+    private final long[] slots;
+    private final int slotMask;
+    private final long[] order; // The hashes from oldest to newest, starting at oldest
+    private int oldest;
+    private int size;
+
+    /**
+     * @param capacity How many hashes are remembered before the oldest ones are forgotten
+     */
+    public SeenPositions(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be at least 1, not " + capacity);
+
+        // At most half full, so probes stay short
+        int slotCount = Integer.highestOneBit(capacity) << 2;
+        slots = new long[slotCount];
+        slotMask = slotCount - 1;
+        order = new long[capacity];
+    }
+
+    /**
+     * Remembers a position, forgetting the oldest one if the set is full
+     *
+     * @param hash The hash of the position, see Game.getPositionHash
+     * @return True if the position is new, false if it was already remembered, in which case nothing changes
+     */
+    public boolean add(long hash) {
+        long key = hash == EMPTY ? EMPTY_STANDIN : hash;
+        int slot = find(key);
+        if (slots[slot] == key)
+            return false;
+
+        if (size == order.length) {
+            remove(order[oldest]);
+            order[oldest] = key;
+            oldest = (oldest + 1) % order.length;
+            slot = find(key);
+        } else {
+            order[(oldest + size) % order.length] = key;
+            size++;
+        }
+        slots[slot] = key;
+        return true;
+    }
+
+    /**
+     * @param hash The hash of a position
+     * @return True if the position is remembered
+     */
+    public boolean contains(long hash) {
+        long key = hash == EMPTY ? EMPTY_STANDIN : hash;
+        return slots[find(key)] == key;
+    }
+
+    /**
+     * @return How many positions are remembered
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets every position
+     */
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        oldest = 0;
+        size = 0;
+    }
+
+    /**
+     * @return The slot holding a key, or the empty slot it would go in
+     */
+    private int find(long key) {
+        int slot = (int) key & slotMask;
+        while (slots[slot] != EMPTY && slots[slot] != key) {
+            slot = (slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties the slot of a key, moving later keys of the same probe run back so every key can still be found
+     */
+    private void remove(long key) {
+        int hole = find(key);
+        slots[hole] = EMPTY;
+
+        for (int slot = (hole + 1) & slotMask; slots[slot] != EMPTY; slot = (slot + 1) & slotMask) {
+            int home = (int) slots[slot] & slotMask;
+            // The key can fill the hole unless its home slot is after the hole, up to where it is now
+            boolean homeAfterHole = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!homeAfterHole) {
+                slots[hole] = slots[slot];
+                slots[slot] = EMPTY;
+                hole = slot;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+    Zobrist hashing of whole games. Every card gets a random key for each card it can lie on, plus one for lying at
+    the bottom of a stack, and one more for being face up. The hash of a stack is the XOR of the keys of its cards.
+    Stacks keep their hash up to date as cards are added, taken and turned over, see CardStack: each card added or
+    taken costs one key, the card left at the bottom when cards are taken from under it one more, and turning a card
+    over its face key. So a move of k cards costs O(k), a stock draw O(1) and turning the stock over O(n) in the
+    cards of the stock. The hash of a game combines the hashes of its 14 stacks, each mixed with a key of its own so
+    equal stacks in different places differ.
+
+    The keys come from a fixed seed, so a position has the same hash in every run of the program and hashes can be
+    stored. Game.getPositionHash and PackedState.getPositionHash give the same hash for the same position.
+ */
+
+package solitaire.game;
+
+import java.util.Random;
+
+public final class Zobrist {
+    private final static long SEED = 0x5EEDC0FFEEL;
+
+    // The index of lying at the bottom of a stack, next to the card IDs
+    private final static int BOTTOM = PackedState.CARD_COUNT;
+
+    private final static long[] CHAIN_KEYS = new long[PackedState.CARD_COUNT * (PackedState.CARD_COUNT + 1)];
+    private final static long[] FACE_KEYS = new long[PackedState.CARD_COUNT];
+    private final static long[] STACK_KEYS = new long[Game.STACK_COUNT];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < CHAIN_KEYS.length; i++) {
+            CHAIN_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < FACE_KEYS.length; i++) {
+            FACE_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < STACK_KEYS.length; i++) {
+            // Odd, so mixing a stack hash with it never loses information
+            STACK_KEYS[i] = random.nextLong() | 1;
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param cardId  The ID of a card
+     * @param belowId The ID of the card it lies on, or Rules.EMPTY if it is at the bottom of its stack
+     * @return The key of the card lying there
+     */
+    public static long chain(int cardId, int belowId) {
+        return CHAIN_KEYS[cardId * (PackedState.CARD_COUNT + 1) + (belowId == Rules.EMPTY ? BOTTOM : belowId)];
+    }
+
+    /**
+     * @param cardId The ID of a card
+     * @return The key added to a stack hash while the card is face up
+     */
+    public static long face(int cardId) {
+        return FACE_KEYS[cardId];
+    }
+
+    /**
+     * @param stackId   The id of a stack, see Game.getStack
+     * @param stackHash The hash of the cards of the stack
+     * @return What the stack adds to the hash of the game, which is 0 for an empty stack
+     */
+    public static long mixStack(int stackId, long stackHash) {
+        return stackHash * STACK_KEYS[stackId];
+    }
+}
@@ -0,0 +1,209 @@
+/*
+    Draws games, on the screen for GameDisplay and into images at any scale. Images are used for save thumbnails, for
+    comparing how a board is drawn against a stored image, and for measuring how fast whole boards are drawn. Only
+    the card images are needed, not a screen, so it works with java.awt.headless=true.
+
+    Drawing a game does not change it, see drawBoard, but the game must not be changed by another thread while it is
+    drawn. Draw a Game.snapshot of a game that is being played.
+ */
+
+package solitaire.graphics;
+
+import solitaire.game.CardStack;
+import solitaire.game.Game;
+import solitaire.game.Layout;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+public class BoardRenderer {
+    public final static Color BOARD_COLOR = new Color(0, 102, 0);
+
+    private final double scale;
+    private final BufferedImage image;
+
+    /**
+     * Makes a renderer that draws every game into the same image, so drawing allocates nothing
+     *
+     * @param scale The size of the image compared to the board on the screen, 1 for the same size
+     */
+    public BoardRenderer(double scale) {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("The scale must be more than 0, not " + scale);
+
+        this.scale = scale;
+        image = new BufferedImage(scaled(Game.BOARD_WIDTH), scaled(Game.BOARD_HEIGHT), BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Draws a game into a new image
+     *
+     * @param game  The game to draw
+     * @param scale The size of the image compared to the board on the screen, 1 for the same size
+     * @return The image
+     * @throws IllegalStateException If the card images have not been loaded, see ImageLoader.init
+     */
+    public static BufferedImage render(Game game, double scale) {
+        return new BoardRenderer(scale).render(game);
+    }
+
+    /**
+     * Draws a game over the previous one
+     *
+     * @param game The game to draw
+     * @return The image of this renderer, which the next call draws over
+     * @throws IllegalStateException If the card images have not been loaded, see ImageLoader.init
+     */
+    public BufferedImage render(Game game) {
+        if (!ImageLoader.isLoaded())
+            throw new IllegalStateException("The card images have to be loaded with ImageLoader.init first");
+
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(BOARD_COLOR);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            if (scale != 1) {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.scale(scale, scale);
+            }
+            drawBoard(g, game, 0, 0);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Draws a game on the screen, and tells it where it was drawn so clicks on it and its dirty region are worked out
+     * relative to that, see Game.setBoardPosition
+     *
+     * @param g    The graphics instance to draw the game on to
+     * @param game The game to draw
+     * @param x    The x coordinate of the top left corner to start drawing from
+     * @param y    The y coordinate of the top left corner to start drawing from
+     */
+    public static void draw(Graphics g, Game game, int x, int y) {
+        game.setBoardPosition(x, y);
+        drawBoard(g, game, x, y);
+    }
+
+    /**
+     * Draws the stacks of a game and the highlight over the selected cards without changing anything, so it can also
+     * be drawn somewhere other than the screen
+     *
+     * @param g    The graphics instance to draw the game on to
+     * @param game The game to draw
+     * @param x    The x coordinate of the top left corner to start drawing from
+     * @param y    The y coordinate of the top left corner to start drawing from
+     */
+    public static void drawBoard(Graphics g, Game game, int x, int y) {
+        // The hidden display stock is never drawn
+        drawStack(g, game, Game.STACK_HIDDENSTOCK, x, y);
+        drawStack(g, game, Game.STACK_DISPLAYSTOCK, x, y);
+        for (int i = 0; i < Game.MAIN_PILE_COUNT; i++) {
+            drawStack(g, game, i, x, y);
+        }
+        for (int i = 0; i < Game.FOUNDATION_COUNT; i++) {
+            drawStack(g, game, Game.STACK_FOUNDATION_FIRST + i, x, y);
+        }
+
+        int stackId = game.getSelectedStackId();
+        if (stackId != Layout.NONE) {
+            int selected = game.getSelectedCardCount();
+            int index = game.getStack(stackId).getCardCount() - selected;
+            int height = Layout.CARD_HEIGHT + game.getStack(0).tieredYOffset * (selected - 1);
+
+            ImageLoader.drawSprite(g, ImageLoader.SPRITE_HIGHLIGHT, x + Layout.cardX(game, stackId, index),
+                    y + Layout.cardY(game, stackId, index), Layout.CARD_WIDTH, height);
+        }
+    }
+
+    /**
+     * Draws the cards of a stack from the bottom up, each moved by the offsets of the stack from the one below, or
+     * the empty spot if it has none
+     */
+    private static void drawStack(Graphics g, Game game, int stackId, int x, int y) {
+        CardStack stack = game.getStack(stackId);
+        x += Layout.stackX(stackId);
+        y += Layout.stackY(stackId);
+
+        int count = stack.getCardCount();
+        if (count == 0) {
+            ImageLoader.drawSprite(g, ImageLoader.SPRITE_EMPTY_SPOT, x, y);
+            if (stackId == Game.STACK_HIDDENSTOCK) {
+                ImageLoader.drawSprite(g, ImageLoader.SPRITE_REDO, x + 15, y + 37);
+            }
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int cardX = x + stack.tieredXOffset * i;
+            int cardY = y + stack.tieredYOffset * i;
+
+            // Only the cards in the area being repainted are drawn
+            if (g.hitClip(cardX, cardY, Layout.CARD_WIDTH, Layout.CARD_HEIGHT)) {
+                drawCard(g, stack.getCardId(i), stack.isFaceUp(i), cardX, cardY);
+            }
+        }
+    }
+
+    /**
+     * Draws the face of a card or its back. The images are looked up by card id every time instead of being kept
+     * with the cards, since cards are made before the images are loaded and are saved with games
+     */
+    private static void drawCard(Graphics g, int cardId, boolean faceUp, int x, int y) {
+        ImageLoader.drawSprite(g, faceUp ? cardId : ImageLoader.SPRITE_BACK, x, y);
+    }
+
+    /**
+     * Compares two images pixel by pixel, like a board drawn now with one stored from an earlier version
+     *
+     * @param expected  The image the other should look like
+     * @param actual    The image to check
+     * @param tolerance How much each color channel of a pixel may differ before the pixel counts as different, 0 for
+     *                  an exact match
+     * @return How many pixels differ, 0 if the images match
+     * @throws IllegalArgumentException If the images are not the same size
+     */
+    public static int countDifferentPixels(BufferedImage expected, BufferedImage actual, int tolerance) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        if (actual.getWidth() != width || actual.getHeight() != height)
+            throw new IllegalArgumentException("Cannot compare a " + width + "x" + height + " image with a "
+                    + actual.getWidth() + "x" + actual.getHeight() + " image");
+
+        int[] expectedRow = new int[width];
+        int[] actualRow = new int[width];
+        int different = 0;
+        for (int y = 0; y < height; y++) {
+            expected.getRGB(0, y, width, 1, expectedRow, 0, width);
+            actual.getRGB(0, y, width, 1, actualRow, 0, width);
+
+            for (int x = 0; x < width; x++) {
+                if (channelDifference(expectedRow[x], actualRow[x]) > tolerance) {
+                    different++;
+                }
+            }
+        }
+        return different;
+    }
+
+    /**
+     * @return The largest difference between the alpha, red, green or blue values of two ARGB pixels
+     */
+    private static int channelDifference(int a, int b) {
+        int largest = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            largest = Math.max(largest, Math.abs((a >>> shift & 0xFF) - (b >>> shift & 0xFF)));
+        }
+        return largest;
+    }
+
+    private int scaled(int size) {
+        return Math.max(1, (int) Math.ceil(size * scale));
+    }
+}
@@ -3,29 +3,36 @@
  */
 package solitaire.graphics;
 
-import com.google.gson.Gson;
 import solitaire.game.Game;
+import solitaire.save.AsyncSaver;
+import solitaire.save.SaveListener;
+import solitaire.solver.HintEngine;
 
+import javax.swing.AbstractAction;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
 
 public class GameDisplay extends JPanel {
+    // Shared by every game so saves of the same file coalesce even after a new game is started
+    private final static AsyncSaver saver = new AsyncSaver(SwingUtilities::invokeLater);
+    private final static HintEngine hints = new HintEngine(SwingUtilities::invokeLater);
+
     /**
      * Initializer method draws the game (and cards) based from the Game object passed in. Additionally, manages the fileIO for resuming a saved game and adds the mouse listener.
      * @param game
@@ -37,6 +44,24 @@ public class GameDisplay extends JPanel {
         JPanel toolbarContainer = new JPanel();
         add(toolbarContainer, BorderLayout.WEST);
 
+        // Only the part of the board that changed is repainted, see Game.takeDirtyRegion. Swing clips painting to it,
+        // and the stacks only draw the cards inside the clip
+        JPanel gameDisplay = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                g.setColor(BoardRenderer.BOARD_COLOR);
+                g.fillRect(0, 0, Game.BOARD_WIDTH, Game.BOARD_HEIGHT);
+
+                BoardRenderer.draw(g, game, 0, 0);
+            }
+        };
+        int[] dirtyRegion = new int[4];
+        Runnable repaintChanges = () -> {
+            game.takeDirtyRegion(dirtyRegion);
+            gameDisplay.repaint(dirtyRegion[0], dirtyRegion[1], dirtyRegion[2], dirtyRegion[3]);
+        };
+        gameDisplay.setPreferredSize(new Dimension(Game.BOARD_WIDTH, Game.BOARD_HEIGHT));
+
         JButton newGame = new JButton("New Game");
         newGame.addActionListener((ActionEvent e) -> {
             int response = JOptionPane.showConfirmDialog(null,
@@ -49,6 +74,23 @@ public class GameDisplay extends JPanel {
         });
         toolbarContainer.add(newGame);
 
+        JButton playDeal = new JButton("Play Deal...");
+        playDeal.addActionListener((ActionEvent e) -> {
+            // Starts with the current deal number so the game can be restarted from its first move
+            Object input = JOptionPane.showInputDialog(null, "Which deal number would you like to play?",
+                    "Play deal", JOptionPane.QUESTION_MESSAGE, null, null, game.getDealNumber());
+            if (input == null)
+                return;
+
+            try {
+                game.startNewGame(Long.parseLong(input.toString().trim()));
+            } catch (NumberFormatException error) {
+                JOptionPane.showMessageDialog(null, "Deal numbers can only contain digits.",
+                        "Invalid deal number", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        toolbarContainer.add(playDeal);
+
         JButton saveGameButton = new JButton("Save Game");
         saveGameButton.addActionListener((ActionEvent e) -> {
             JFileChooser fileChooser = new JFileChooser();
@@ -67,30 +109,21 @@ public class GameDisplay extends JPanel {
                     if (overwriteResponse != JOptionPane.YES_OPTION)
                         return;
                 }
-                Gson gson = new Gson();
-                String gameString = gson.toJson(game);
-                String gameHash = "";
-                try {
-                    MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-                    gameHash = new String(messageDigest.digest(gameString.getBytes(StandardCharsets.UTF_8)));
-                } catch (NoSuchAlgorithmException e1) {
-                    System.err.println("SHA-256 MessageDigest is not supported :(");
-                }
 
-                try {
-                    PrintWriter writer = new PrintWriter(fileChooser.getSelectedFile());
-                    writer.println(gameString);
-                    writer.print(gameHash);
-                    writer.close();
-
-                    if (writer.checkError())
-                        throw new IOException("The save PrintWriter ate some IO error :(");
-                } catch (IOException error) {
-                    error.printStackTrace();
-                    JOptionPane.showMessageDialog(null,
-                            "An error occurred while saving the game. Please try again.",
-                            "An error occurred", JOptionPane.ERROR_MESSAGE);
-                }
+                // Only the snapshot is taken here, the save is written in the background
+                saver.save(game, fileChooser.getSelectedFile().toPath(), new SaveListener() {
+                    @Override
+                    public void onSaved(Path file) {
+                    }
+
+                    @Override
+                    public void onSaveFailed(Path file, IOException error) {
+                        error.printStackTrace();
+                        JOptionPane.showMessageDialog(null,
+                                "An error occurred while saving the game. Please try again.",
+                                "An error occurred", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             }
         });
         toolbarContainer.add(saveGameButton);
@@ -100,26 +133,67 @@ public class GameDisplay extends JPanel {
         JLabel moveCounterLabel = new JLabel("    Moves: " + game.moves);
         toolbarContainer.add(moveCounterLabel);
 
-        JPanel gameDisplay = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                g.setColor(new Color(0, 102, 0));
-                g.fillRect(0, 0, 1200, 800);
+        JLabel hintLabel = new JLabel();
 
-                game.draw(g, 0, 0);
+        JButton undo = new JButton("Undo");
+        undo.addActionListener((ActionEvent e) -> {
+            hints.cancel();
+            hintLabel.setText("");
+            if (game.undo()) {
+                moveCounterLabel.setText("    Moves: " + game.moves);
+                repaintChanges.run();
             }
-        };
-        gameDisplay.setPreferredSize(new Dimension(1200, 800));
+        });
+        toolbarContainer.add(undo);
+
+        JButton redo = new JButton("Redo");
+        redo.addActionListener((ActionEvent e) -> {
+            hints.cancel();
+            hintLabel.setText("");
+            if (game.redo()) {
+                moveCounterLabel.setText("    Moves: " + game.moves);
+                repaintChanges.run();
+            }
+        });
+        toolbarContainer.add(redo);
+
+        // The hint is searched for in the background, and only shown if the game has not changed since
+        JButton hint = new JButton("Hint");
+        hint.addActionListener((ActionEvent e) -> {
+            hintLabel.setText("    Thinking...");
+            hints.requestHint(game, (found) -> hintLabel.setText("    " + found));
+        });
+        toolbarContainer.add(hint);
+        toolbarContainer.add(hintLabel);
+
+        // Ctrl+Z and Ctrl+Y work wherever the focus is in the window
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo.doClick();
+            }
+        });
+        getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo.doClick();
+            }
+        });
+
         gameDisplay.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
                 int x = e.getX();
                 int y = e.getY();
 
+                hints.cancel();
+                hintLabel.setText("");
                 game.onClick(x, y);
 
                 moveCounterLabel.setText("    Moves: " + game.moves);
-                repaint();
+                repaintChanges.run();
 
                 // This is used instead of the mouseClicked method due to mouseClicked not being
                 // triggered if the mouse is moved between a press and release.
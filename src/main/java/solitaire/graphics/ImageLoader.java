@@ -1,56 +1,241 @@
 /*  This class is responsible for loading in and storing all of the images used
     throughout the game.
+
+    Every image is packed into one atlas image after loading, and everything is drawn by copying a part of the atlas.
+    The atlas is created in the pixel format of the screen, so drawing it needs no conversion, and since it is never
+    changed after it is packed Java2D can keep it in video memory. A VolatileImage would have to be checked and
+    repacked whenever its contents are lost, which a compatible image never needs.
+
+    The build packs the images used here into one sprite archive (the packSprites task in build.gradle), so every
+    image is read with a single resource lookup. The PNGs in it are then decoded in parallel. When the archive is
+    missing, as when running from the sources without the build, each image is looked up on its own instead.
+
+    Sprite archive: magic "SPRT", version, image count (int), then the name (modified UTF-8) and byte length (int) of
+                    every image, then the PNG bytes of every image in the same order
  */
 package solitaire.graphics;
 
 import org.jetbrains.annotations.Nullable;
+import solitaire.game.Layout;
 
 import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 public class ImageLoader {
 
-    public static BufferedImage[] cardTextures;
-    public static BufferedImage backTexture; //This is the texture of the back of a card
-    public static BufferedImage emptySpotTexture; //This is the texture of a stack when it's empty
-    public static BufferedImage highlightTexture; //This is the texture of the highlight overlay on selected CardStacks
-    public static BufferedImage redoSymbol;
+    // The images in the atlas. The faces of the cards use their card ids, 0 to 51
+    public static final int SPRITE_BACK = 52; //This is the texture of the back of a card
+    public static final int SPRITE_EMPTY_SPOT = 53; //This is the texture of a stack when it's empty
+    public static final int SPRITE_REDO = 54;
+    public static final int SPRITE_HIGHLIGHT = 55; //This is the texture of the highlight overlay on selected CardStacks
+    public static final int SPRITE_COUNT = 56;
+
+    // Card sized images are packed in a grid of this many columns, the smaller images go in a row below them
+    private static final int ATLAS_COLUMNS = 9;
+    // Empty pixels between images, so scaled images never pick up the edge of their neighbours
+    private static final int ATLAS_GAP = 1;
+
+    public static final String SPRITE_ARCHIVE_SUFFIX = ".sprites";
+    private static final int ARCHIVE_MAGIC = 0x53505254; // "SPRT"
+    private static final int ARCHIVE_VERSION = 1;
 
-    public static final int cardTexWidth = 100;
-    public static final int cardTexHeight = 145;
+    private static BufferedImage atlas;
+    // Set once the atlas is packed, so other threads see the whole atlas once they see this
+    private static volatile boolean loaded;
+    private static final int[] spriteX = new int[SPRITE_COUNT];
+    private static final int[] spriteY = new int[SPRITE_COUNT];
+    private static final int[] spriteWidth = new int[SPRITE_COUNT];
+    private static final int[] spriteHeight = new int[SPRITE_COUNT];
 
    /**
      * Loads in all used images from specified file paths.
      * @param resFolderPath The file path of the resource folder where all images are located.
      */
     public static void init(String resFolderPath) {
-        cardTextures = new BufferedImage[52];
-
         ClassLoader cl = ClassLoader.getSystemClassLoader();
 
-        String filepath = resFolderPath + "/empty.png";
-        emptySpotTexture = readImage(filepath, cl);
-
-        filepath = resFolderPath + "/back.png";
-        backTexture = readImage(filepath, cl);
-
-        filepath = resFolderPath + "/highlight.png";
-        highlightTexture = readImage(filepath, cl);
-
-        filepath = resFolderPath + "/redo.png";
-        redoSymbol = readImage(filepath, cl);
+        String[] names = new String[SPRITE_COUNT];
+        names[SPRITE_EMPTY_SPOT] = "empty.png";
+        names[SPRITE_BACK] = "back.png";
+        names[SPRITE_HIGHLIGHT] = "highlight.png";
+        names[SPRITE_REDO] = "redo.png";
 
         String extension = ".png";
         String bridging = "_of_";
         String[] suitNames = {"spades", "clubs", "hearts", "diamonds"};
         String[] numberNames = {"ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "jack", "queen", "king"};
 
-        for (int i = 0; i < cardTextures.length; i++) {
-            filepath = resFolderPath + "/" + numberNames[i % 13] + bridging + suitNames[i / 13] + extension;
-            cardTextures[i] = readImage(filepath, cl);
+        for (int i = 0; i < 52; i++) {
+            names[i] = numberNames[i % 13] + bridging + suitNames[i / 13] + extension;
+        }
+
+        String archivePath = resFolderPath + SPRITE_ARCHIVE_SUFFIX;
+        byte[][] files = readArchive(archivePath, names, cl);
+        if (files == null) {
+            files = new byte[SPRITE_COUNT][];
+        }
+
+        // Decoding is most of the work and every image is independent, so they are decoded on every core. The bytes are
+        // already in memory, so ImageIO is kept from copying them to a temporary file first
+        ImageIO.setUseCache(false);
+        byte[][] encoded = files;
+        BufferedImage[] images = new BufferedImage[SPRITE_COUNT];
+        Arrays.parallelSetAll(images, sprite -> {
+            String filepath = resFolderPath + "/" + names[sprite];
+            return encoded[sprite] != null ? decodeImage(encoded[sprite], filepath) : readImage(filepath, cl);
+        });
+
+        packAtlas(images);
+        loaded = true;
+    }
+
+    /**
+     * @return True once init has finished, so the images can be drawn.
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the bytes of images from a sprite archive.
+     * @param archivePath The resource path of the archive.
+     * @param names The file names of the images to read.
+     * @param cl Used to get an InputStream to the archive.
+     * @return The bytes of each image, null for images not in the archive, or null if there is no readable archive.
+     */
+    private static @Nullable byte[][] readArchive(String archivePath, String[] names, ClassLoader cl) {
+        InputStream inputStream = cl.getResourceAsStream(archivePath);
+        if (inputStream == null)
+            return null;
+
+        try (DataInputStream in = new DataInputStream(inputStream)) {
+            if (in.readInt() != ARCHIVE_MAGIC || in.readInt() != ARCHIVE_VERSION) {
+                System.err.println("'" + archivePath + "' is not a sprite archive of version " + ARCHIVE_VERSION);
+                return null;
+            }
+
+            int count = in.readInt();
+            String[] archived = new String[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                archived[i] = in.readUTF();
+                lengths[i] = in.readInt();
+            }
+
+            List<String> wanted = Arrays.asList(names);
+            byte[][] files = new byte[names.length][];
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[lengths[i]];
+                in.readFully(bytes);
+
+                int sprite = wanted.indexOf(archived[i]);
+                if (sprite >= 0) {
+                    files[sprite] = bytes;
+                }
+            }
+            return files;
+        } catch (IOException e) {
+            System.err.println("Failed to read '" + archivePath + "':");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Copies every image into one atlas in the pixel format of the screen. Images that failed to load are left empty.
+     * @param images The images, indexed by sprite id.
+     */
+    private static void packAtlas(BufferedImage[] images) {
+        int cellWidth = Layout.CARD_WIDTH + ATLAS_GAP;
+        int cellHeight = Layout.CARD_HEIGHT + ATLAS_GAP;
+        int cardSprites = SPRITE_EMPTY_SPOT + 1;
+        int rows = (cardSprites + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS;
+
+        for (int sprite = 0; sprite < SPRITE_COUNT; sprite++) {
+            spriteWidth[sprite] = images[sprite] == null ? 0 : images[sprite].getWidth();
+            spriteHeight[sprite] = images[sprite] == null ? 0 : images[sprite].getHeight();
         }
+
+        // Card sized images in a grid, the rest side by side in the row below
+        int smallX = 0;
+        int smallHeight = 0;
+        for (int sprite = 0; sprite < SPRITE_COUNT; sprite++) {
+            if (sprite < cardSprites) {
+                spriteX[sprite] = sprite % ATLAS_COLUMNS * cellWidth;
+                spriteY[sprite] = sprite / ATLAS_COLUMNS * cellHeight;
+            } else {
+                spriteX[sprite] = smallX;
+                spriteY[sprite] = rows * cellHeight;
+                smallX += spriteWidth[sprite] + ATLAS_GAP;
+                smallHeight = Math.max(smallHeight, spriteHeight[sprite]);
+            }
+        }
+
+        atlas = createCompatibleImage(Math.max(ATLAS_COLUMNS * cellWidth, smallX), rows * cellHeight + smallHeight);
+        Graphics2D g = atlas.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        for (int sprite = 0; sprite < SPRITE_COUNT; sprite++) {
+            if (images[sprite] != null) {
+                g.drawImage(images[sprite], spriteX[sprite], spriteY[sprite], null);
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * Creates a translucent image in the pixel format of the screen, or a premultiplied ARGB image when there is no
+     * screen, which is the format Java2D blends fastest in software.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The empty image.
+     */
+    public static BufferedImage createCompatibleImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    /**
+     * Draws an image from the atlas at its own size.
+     * @param g The Graphics object to draw with.
+     * @param sprite The image, a card id or one of the SPRITE_ constants.
+     * @param x The x-coordinate of the top left corner.
+     * @param y The y-coordinate of the top left corner.
+     */
+    public static void drawSprite(Graphics g, int sprite, int x, int y) {
+        drawSprite(g, sprite, x, y, spriteWidth[sprite], spriteHeight[sprite]);
+    }
+
+    /**
+     * Draws an image from the atlas scaled to a size.
+     * @param g The Graphics object to draw with.
+     * @param sprite The image, a card id or one of the SPRITE_ constants.
+     * @param x The x-coordinate of the top left corner.
+     * @param y The y-coordinate of the top left corner.
+     * @param width The width to draw the image at.
+     * @param height The height to draw the image at.
+     */
+    public static void drawSprite(Graphics g, int sprite, int x, int y, int width, int height) {
+        int sourceX = spriteX[sprite];
+        int sourceY = spriteY[sprite];
+        g.drawImage(atlas, x, y, x + width, y + height,
+                sourceX, sourceY, sourceX + spriteWidth[sprite], sourceY + spriteHeight[sprite], null);
     }
 
     /**
@@ -64,7 +249,9 @@ public class ImageLoader {
             // Works properly when the files are in a jar or not in a jar
             InputStream inputStream = cl.getResourceAsStream(filepath);
             if (inputStream != null) {
-                return ImageIO.read(inputStream);
+                try (InputStream in = inputStream) {
+                    return ImageIO.read(in);
+                }
             } else {
                 // null indicates it could not read the file
                 System.err.println("Failed to load file '" + filepath + "'");
@@ -77,4 +264,23 @@ public class ImageLoader {
         // Something went wrong
         return null;
     }
+
+    /**
+     * Decodes an image read from a sprite archive.
+     * @param bytes The PNG bytes of the image.
+     * @param filepath The file path the image was packed from, used in error messages.
+     * @return The image, or null if it could not be decoded.
+     */
+    private static @Nullable BufferedImage decodeImage(byte[] bytes, String filepath) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null)
+                System.err.println("Failed to decode file '" + filepath + "'");
+            return image;
+        } catch (IOException e) {
+            System.err.println("Failed to decode file '" + filepath + "':");
+            e.printStackTrace();
+            return null;
+        }
+    }
 }
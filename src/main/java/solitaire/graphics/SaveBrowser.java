@@ -0,0 +1,288 @@
+/*
+    Lists the saves in a folder with a thumbnail, the move counter, the time played and how many cards are on the
+    foundations of each, the most recently saved first. Everything shown comes from the index of a SaveLibrary, so
+    the list appears at once however many saves the folder holds, and it follows the folder as saves are added,
+    changed and deleted.
+
+    Like a JFileChooser, it tells its action listeners when a save was chosen or the choice was cancelled, and
+    getSelectedFile gives the chosen save.
+ */
+
+package solitaire.graphics;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.save.SaveLibrary;
+import solitaire.save.SaveLibraryListener;
+import solitaire.save.SaveSummary;
+
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileSystemView;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SaveBrowser extends JPanel implements SaveLibraryListener {
+    // The action commands sent to the action listeners
+    public final static String LOAD_SELECTION = "LoadSelection";
+    public final static String CANCEL_SELECTION = "CancelSelection";
+
+    private final static int CELL_WIDTH = 460;
+    private final static int CELL_HEIGHT = SaveThumbnail.HEIGHT + 8;
+
+    private final SaveListModel model = new SaveListModel();
+    private final JList<SaveSummary> list = new JList<>(model);
+    private final JLabel folderLabel = new JLabel();
+    private final JLabel statusLabel = new JLabel("Looking for saves...");
+    private final JButton load = new JButton("Load");
+    private final List<ActionListener> actionListeners = new ArrayList<>();
+
+    // Thumbnails are drawn when first shown and kept while their save is unchanged
+    private Map<SaveSummary, SaveThumbnail> thumbnails = new IdentityHashMap<>();
+
+    @Nullable
+    private SaveLibrary library;
+
+    /**
+     * Makes a browser of the folder saves are put in by default
+     */
+    public SaveBrowser() {
+        super(new BorderLayout());
+
+        JPanel folderBox = new JPanel();
+        folderBox.setLayout(new BoxLayout(folderBox, BoxLayout.X_AXIS));
+        folderBox.add(folderLabel);
+        JButton changeFolder = new JButton("Change Folder...");
+        changeFolder.addActionListener((ActionEvent e) -> chooseFolder());
+        folderBox.add(changeFolder);
+        add(folderBox, BorderLayout.NORTH);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Fixed cells, so the list never measures thousands of cells to lay itself out
+        list.setFixedCellWidth(CELL_WIDTH);
+        list.setFixedCellHeight(CELL_HEIGHT);
+        list.setCellRenderer(new SaveRenderer());
+        list.addListSelectionListener(e -> updateLoadButton());
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && getSelectedFile() != null) {
+                    fireAction(LOAD_SELECTION);
+                }
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setPreferredSize(new Dimension(CELL_WIDTH + 30, CELL_HEIGHT * 5));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel buttonBox = new JPanel();
+        buttonBox.setLayout(new BoxLayout(buttonBox, BoxLayout.X_AXIS));
+        buttonBox.add(statusLabel);
+        load.addActionListener((ActionEvent e) -> fireAction(LOAD_SELECTION));
+        buttonBox.add(load);
+        JButton cancel = new JButton("Cancel");
+        cancel.addActionListener((ActionEvent e) -> fireAction(CANCEL_SELECTION));
+        buttonBox.add(cancel);
+        add(buttonBox, BorderLayout.SOUTH);
+
+        updateLoadButton();
+        openFolder(FileSystemView.getFileSystemView().getDefaultDirectory());
+    }
+
+    /**
+     * @param listener Told when a save is chosen, with the command LOAD_SELECTION, or the choice is cancelled, with
+     *                 CANCEL_SELECTION
+     */
+    public void addActionListener(ActionListener listener) {
+        actionListeners.add(listener);
+    }
+
+    /**
+     * @return The selected save, or null if no save that can be loaded is selected
+     */
+    public @Nullable File getSelectedFile() {
+        SaveSummary summary = list.getSelectedValue();
+        if (summary == null || !summary.isLoadable())
+            return null;
+        return summary.getFile().toFile();
+    }
+
+    /**
+     * Stops following the folder. Call this once the browser is not shown anymore
+     */
+    public void close() {
+        if (library != null) {
+            try {
+                library.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            library = null;
+        }
+    }
+
+    private void fireAction(String command) {
+        ActionEvent event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, command);
+        for (ActionListener listener : actionListeners) {
+            listener.actionPerformed(event);
+        }
+    }
+
+    private void chooseFolder() {
+        JFileChooser folderChooser = new JFileChooser(library == null ? null : library.getDirectory().toFile());
+        folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (folderChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            openFolder(folderChooser.getSelectedFile());
+        }
+    }
+
+    /**
+     * Replaces the shown saves with the saves of another folder
+     */
+    private void openFolder(File folder) {
+        SaveLibrary opened;
+        try {
+            opened = SaveLibrary.open(folder.toPath(), this, SwingUtilities::invokeLater);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "The folder " + folder + " could not be opened.",
+                    "An error occurred", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        close();
+        library = opened;
+        folderLabel.setText("Saves in " + opened.getDirectory() + "  ");
+        statusLabel.setText("Looking for saves...  ");
+        model.setSaves(Collections.emptyList());
+        thumbnails = new IdentityHashMap<>();
+    }
+
+    /**
+     * Shows the saves of the library as they are now, keeping the selected save selected
+     */
+    @Override
+    public void onLibraryChanged(SaveLibrary library) {
+        if (library != this.library)
+            return;
+
+        SaveSummary selected = list.getSelectedValue();
+        List<SaveSummary> saves = library.getSaves();
+
+        Map<SaveSummary, SaveThumbnail> kept = new IdentityHashMap<>();
+        int selectedIndex = -1;
+        for (int i = 0; i < saves.size(); i++) {
+            SaveSummary summary = saves.get(i);
+            SaveThumbnail thumbnail = thumbnails.get(summary);
+            if (thumbnail != null) {
+                kept.put(summary, thumbnail);
+            }
+            if (selected != null && summary.getFile().equals(selected.getFile())) {
+                selectedIndex = i;
+            }
+        }
+        thumbnails = kept;
+
+        model.setSaves(saves);
+        if (selectedIndex >= 0) {
+            list.setSelectedIndex(selectedIndex);
+        }
+        statusLabel.setText(saves.size() + (saves.size() == 1 ? " save  " : " saves  "));
+        updateLoadButton();
+    }
+
+    private void updateLoadButton() {
+        load.setEnabled(getSelectedFile() != null);
+    }
+
+    /**
+     * The saves shown in the list. Replacing them tells the list once instead of once per save
+     */
+    private static class SaveListModel extends AbstractListModel<SaveSummary> {
+        private List<SaveSummary> saves = Collections.emptyList();
+
+        void setSaves(List<SaveSummary> saves) {
+            int oldSize = this.saves.size();
+            this.saves = saves;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (!saves.isEmpty()) {
+                fireIntervalAdded(this, 0, saves.size() - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return saves.size();
+        }
+
+        @Override
+        public SaveSummary getElementAt(int index) {
+            return saves.get(index);
+        }
+    }
+
+    /**
+     * Shows a save as its thumbnail with what is known about it next to it
+     */
+    private class SaveRenderer extends DefaultListCellRenderer {
+        private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+
+        SaveRenderer() {
+            setIconTextGap(10);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                      boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            SaveSummary summary = (SaveSummary) value;
+            // Replaces the focus border, the selection color already shows which save is selected
+            setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+            setIcon(thumbnails.computeIfAbsent(summary, s -> new SaveThumbnail(s.getCards())));
+
+            String name = summary.getFile().getFileName().toString();
+            String saved = dateFormat.format(new Date(summary.getLastModified()));
+            if (summary.isLoadable()) {
+                int minutes = summary.getElapsedSeconds() / 60;
+                int seconds = summary.getElapsedSeconds() % 60;
+                setText("<html><b>" + escape(name) + "</b><br>Moves: " + summary.getMoves() + "&nbsp;&nbsp; Time: "
+                        + minutes + ":" + (seconds < 10 ? "0" + seconds : seconds) + "<br>Cards on foundations: "
+                        + summary.getFoundationCardCount() + " of 52<br>Saved " + saved + "</html>");
+            } else {
+                setText("<html><b>" + escape(name) + "</b><br>This file could not be loaded<br>Saved " + saved
+                        + "</html>");
+            }
+            return this;
+        }
+
+        private String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+    A small picture of the board of a save. Once the card images are loaded it is the board drawn by BoardRenderer.
+    Before that it is drawn from where the cards are without their images, so thumbnails can be shown while the
+    images load: face down cards are blue and face up cards white with a red or black band. The picture is drawn the
+    first time it is shown, and again once if it was shown before the images were loaded.
+ */
+
+package solitaire.graphics;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.Layout;
+import solitaire.game.PackedState;
+import solitaire.game.Rules;
+
+import javax.swing.Icon;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+public class SaveThumbnail implements Icon {
+    public final static int WIDTH = Game.BOARD_WIDTH / 10;
+    public final static int HEIGHT = Game.BOARD_HEIGHT / 10;
+
+    private final static Color EMPTY_SPOT = new Color(0, 80, 0);
+    private final static Color BACK = new Color(40, 60, 160);
+    private final static Color FACE = Color.WHITE;
+    private final static Color EDGE = Color.DARK_GRAY;
+
+    @Nullable
+    private final PackedState cards;
+    @Nullable
+    private BufferedImage image;
+    private boolean drawnWithImages;
+
+    /**
+     * @param cards Where the cards of the save are, or null to draw an empty board for a save that cannot be loaded
+     */
+    public SaveThumbnail(@Nullable PackedState cards) {
+        this.cards = cards;
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        if (image == null || (!drawnWithImages && cards != null && ImageLoader.isLoaded())) {
+            if (cards != null && ImageLoader.isLoaded()) {
+                image = BoardRenderer.render(cards.toGame(0), (double) WIDTH / Game.BOARD_WIDTH);
+                drawnWithImages = true;
+            } else {
+                image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = image.createGraphics();
+                drawBoard(graphics);
+                graphics.dispose();
+            }
+        }
+
+        g.drawImage(image, x, y, null);
+    }
+
+    /**
+     * Draws the board from the card IDs alone
+     */
+    private void drawBoard(Graphics2D g) {
+        g.setColor(BoardRenderer.BOARD_COLOR);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.scale((double) WIDTH / Game.BOARD_WIDTH, (double) HEIGHT / Game.BOARD_HEIGHT);
+
+        // Layout needs the offsets of the stacks, which a game made from the cards has
+        Game game = cards == null ? null : cards.toGame(0);
+        for (int stackId = 0; stackId < Game.STACK_HIDDENDISPLAYSTOCK; stackId++) {
+            int count = game == null ? 0 : cards.getCardCount(stackId);
+            if (count == 0) {
+                g.setColor(EMPTY_SPOT);
+                g.fillRect(Layout.stackX(stackId), Layout.stackY(stackId), Layout.CARD_WIDTH,
+                        Layout.CARD_HEIGHT);
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int cardX = Layout.cardX(game, stackId, i);
+                int cardY = Layout.cardY(game, stackId, i);
+
+                if (cards.isFaceUp(stackId, i)) {
+                    g.setColor(FACE);
+                    g.fillRect(cardX, cardY, Layout.CARD_WIDTH, Layout.CARD_HEIGHT);
+                    g.setColor(Rules.isRed(cards.getCardId(stackId, i)) ? Color.RED : Color.BLACK);
+                    g.fillRect(cardX, cardY, Layout.CARD_WIDTH, 30);
+                } else {
+                    g.setColor(BACK);
+                    g.fillRect(cardX, cardY, Layout.CARD_WIDTH, Layout.CARD_HEIGHT);
+                }
+                g.setColor(EDGE);
+                g.drawRect(cardX, cardY, Layout.CARD_WIDTH, Layout.CARD_HEIGHT);
+            }
+        }
+    }
+
+    @Override
+    public int getIconWidth() {
+        return WIDTH;
+    }
+
+    @Override
+    public int getIconHeight() {
+        return HEIGHT;
+    }
+}
@@ -1,5 +1,6 @@
-/*  This class creates a window to ask the user if they would like to load a saved game or not.
-    It also stops the program from continuing until the user makes a decision on this window.
+/*  This class creates a window to ask the user if they would like to load a saved game or not, and lets them pick
+    the save from a SaveBrowser. It also stops the program from continuing until the user makes a decision on this
+    window.
  */
 
 package solitaire.graphics;
@@ -9,7 +10,6 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JDialog;
-import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import java.awt.Dialog;
@@ -28,17 +28,8 @@ public abstract class Setup {
         JPanel content = new JPanel();
         content.setLayout(new BoxLayout(content, BoxLayout.Y_AXIS));
 
-        JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-        // Only gets called if a file is selected or cancel is hit
-        fileChooser.addActionListener((ActionEvent e) -> {
-            if (e.getActionCommand().equals(JFileChooser.CANCEL_SELECTION)) {
-                fileChooser.setSelectedFile(null);
-            }
-
-            dialog.dispose();
-        });
-        fileChooser.setVisible(false);
+        // Made when the user wants to continue a saved game, so a new game never waits for the saves to be listed
+        SaveBrowser[] browser = new SaveBrowser[1];
 
         JPanel questionBox = new JPanel();
         questionBox.setLayout(new BoxLayout(questionBox, BoxLayout.X_AXIS));
@@ -47,21 +38,37 @@ public abstract class Setup {
 
         JButton yes = new JButton("Yes");
         yes.addActionListener((ActionEvent e) -> {
-            fileChooser.setVisible(true);
+            if (browser[0] != null)
+                return;
+
+            browser[0] = new SaveBrowser();
+            // Only gets called if a save is chosen or cancel is hit
+            browser[0].addActionListener((ActionEvent event) -> {
+                if (event.getActionCommand().equals(SaveBrowser.CANCEL_SELECTION)) {
+                    browser[0].close();
+                    browser[0] = null;
+                }
+
+                dialog.dispose();
+            });
+            content.add(browser[0]);
             dialog.pack();
+            dialog.setLocationRelativeTo(null);
         });
         questionBox.add(yes);
 
         JButton no = new JButton("No");
         no.addActionListener((ActionEvent e) -> {
             // in case they hit yes, selected a file, and changed their mind
-            fileChooser.setSelectedFile(null);
+            if (browser[0] != null) {
+                browser[0].close();
+                browser[0] = null;
+            }
             dialog.dispose();
         });
         questionBox.add(no);
 
         content.add(questionBox);
-        content.add(fileChooser);
 
         dialog.add(content);
         dialog.pack();
@@ -72,6 +79,11 @@ public abstract class Setup {
 
         dialog.setVisible(true);
 
-        return fileChooser.getSelectedFile();
+        if (browser[0] == null)
+            return null;
+
+        File selected = browser[0].getSelectedFile();
+        browser[0].close();
+        return selected;
     }
 }
@@ -0,0 +1,284 @@
+/*
+    A file of solver results for the deals 0, 1, 2... in order, used to serve only deals that can be won.
+
+    Every deal has a fixed size record, so the record of any deal is found by its position in the file. Each record
+    also counts the winnable deals before it. A second index file lists the winnable deal numbers in order, so the
+    next winnable deal from any deal number is found with two reads and no search.
+
+    Records are only ever appended. When a pool is opened after a crash, a partly written record at the end of the
+    file is cut off and the index is brought up to date from the records, so generation continues where it stopped.
+
+    Pool file:  magic "SPOL", version, the solver node limit (long), then one record per deal:
+                status (byte), unused (byte), solution length (unsigned short), nodes (int), winnable deals before (int)
+    Index file: magic "SPIX", version, then the number of every winnable deal (int)
+ */
+
+package solitaire.pool;
+
+import solitaire.solver.SolveResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class DealPool implements Closeable {
+    public final static int RECORD_SIZE = 12;
+    public final static String INDEX_SUFFIX = ".idx";
+
+    private final static int POOL_MAGIC = 0x53504F4C; // "SPOL"
+    private final static int INDEX_MAGIC = 0x53504958; // "SPIX"
+    private final static int VERSION = 1;
+    private final static int POOL_HEADER_SIZE = 16;
+    private final static int INDEX_HEADER_SIZE = 8;
+    private final static int INDEX_ENTRY_SIZE = 4;
+
+    private final FileChannel pool;
+    private final FileChannel index;
+    private final long maxNodes;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    private int dealCount;
+    private int winnableCount;
+
+    /**
+     * Opens a pool, creating it if it does not exist and repairing it if a previous run crashed while writing it
+     *
+     * @param file     The pool file. The index is kept next to it with INDEX_SUFFIX added to the name
+     * @param maxNodes The node limit of the solver filling the pool, stored in new pools. An existing pool keeps its own
+     * @throws IOException If the files cannot be read or written, or are not deal pools
+     */
+    public DealPool(Path file, long maxNodes) throws IOException {
+        pool = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(file.resolveSibling(file.getFileName() + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            this.maxNodes = openPool(maxNodes);
+            openIndex();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads or writes the pool header and cuts off a partly written last record
+     *
+     * @return The node limit stored in the pool
+     */
+    private long openPool(long maxNodes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(POOL_HEADER_SIZE);
+        if (pool.size() < POOL_HEADER_SIZE) {
+            header.putInt(POOL_MAGIC).putInt(VERSION).putLong(maxNodes).flip();
+            pool.truncate(0);
+            writeFully(pool, header, 0);
+            pool.force(false);
+        } else {
+            readFully(pool, header, 0);
+            if (header.getInt() != POOL_MAGIC || header.getInt() != VERSION)
+                throw new IOException("Not a deal pool of version " + VERSION);
+            maxNodes = header.getLong();
+        }
+
+        long records = (pool.size() - POOL_HEADER_SIZE) / RECORD_SIZE;
+        if (records > Integer.MAX_VALUE)
+            throw new IOException("The deal pool has too many records");
+
+        dealCount = (int) records;
+        pool.truncate(POOL_HEADER_SIZE + records * RECORD_SIZE);
+        winnableCount = dealCount == 0 ? 0 : readRecord(dealCount - 1).getInt(8)
+                + (getStatus(dealCount - 1) == SolveResult.SOLVABLE ? 1 : 0);
+        return maxNodes;
+    }
+
+    /**
+     * Reads or writes the index header, then drops index entries that are ahead of the records and adds the ones
+     * that are missing. Only the records written after the last complete index entry are read
+     */
+    private void openIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        if (index.size() < INDEX_HEADER_SIZE) {
+            header.putInt(INDEX_MAGIC).putInt(VERSION).flip();
+            index.truncate(0);
+            writeFully(index, header, 0);
+        } else {
+            readFully(index, header, 0);
+            if (header.getInt() != INDEX_MAGIC || header.getInt() != VERSION)
+                throw new IOException("Not a deal pool index of version " + VERSION);
+        }
+
+        long entries = Math.min((index.size() - INDEX_HEADER_SIZE) / INDEX_ENTRY_SIZE, winnableCount);
+        int rebuildFrom = 0;
+        while (entries > 0) {
+            int deal = readIndexEntry(entries - 1);
+            if (deal < dealCount && getStatus(deal) == SolveResult.SOLVABLE
+                    && readRecord(deal).getInt(8) == entries - 1) {
+                rebuildFrom = deal + 1;
+                break;
+            }
+            entries--;
+        }
+        index.truncate(INDEX_HEADER_SIZE + entries * INDEX_ENTRY_SIZE);
+
+        int recordedWinnable = winnableCount;
+        winnableCount = (int) entries;
+        for (int deal = rebuildFrom; deal < dealCount; deal++) {
+            if (getStatus(deal) == SolveResult.SOLVABLE) {
+                writeIndexEntry(deal);
+            }
+        }
+        index.force(false);
+
+        if (winnableCount != recordedWinnable)
+            throw new IOException("The deal pool records do not agree on how many deals can be won");
+    }
+
+    /**
+     * @return How many deals have results, which are the deals 0 to getDealCount() - 1
+     */
+    public int getDealCount() {
+        return dealCount;
+    }
+
+    /**
+     * @return How many of the deals with results can be won
+     */
+    public int getWinnableCount() {
+        return winnableCount;
+    }
+
+    /**
+     * @return The node limit of the solver that filled the pool
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @param deal A deal number below getDealCount()
+     * @return One of SolveResult.SOLVABLE, UNSOLVABLE or UNKNOWN
+     */
+    public synchronized int getStatus(int deal) throws IOException {
+        return readRecord(deal).get(0);
+    }
+
+    /**
+     * @param deal A deal number below getDealCount()
+     * @return How many moves the solution found for the deal has, or 0 if none was found
+     */
+    public synchronized int getSolutionLength(int deal) throws IOException {
+        return readRecord(deal).getShort(2) & 0xFFFF;
+    }
+
+    /**
+     * @param deal A deal number below getDealCount()
+     * @return How many positions the solver searched for the deal
+     */
+    public synchronized int getNodes(int deal) throws IOException {
+        return readRecord(deal).getInt(4);
+    }
+
+    /**
+     * @param i A position below getWinnableCount()
+     * @return The number of the i-th winnable deal
+     */
+    public synchronized int getWinnable(int i) throws IOException {
+        if (i < 0 || i >= winnableCount)
+            throw new IndexOutOfBoundsException("Winnable deal " + i + " of " + winnableCount);
+        return readIndexEntry(i);
+    }
+
+    /**
+     * Finds the first winnable deal at or after a deal number
+     *
+     * @param deal The deal number to start from
+     * @return The number of the deal, or -1 if none of the deals with results from there on can be won
+     */
+    public synchronized int nextWinnable(int deal) throws IOException {
+        if (deal >= dealCount)
+            return -1;
+
+        int before = readRecord(Math.max(deal, 0)).getInt(8);
+        return before < winnableCount ? readIndexEntry(before) : -1;
+    }
+
+    /**
+     * Adds the result of the next deal, deal number getDealCount(). The record is written before the index so a
+     * crash can only leave the index behind, which opening the pool repairs
+     *
+     * @param result The result of solving the deal
+     */
+    synchronized void append(SolveResult result) throws IOException {
+        record.clear();
+        record.put((byte) result.status)
+                .put((byte) 0)
+                .putShort((short) Math.min(result.getMoveCount(), 0xFFFF))
+                .putInt((int) Math.min(result.nodes, Integer.MAX_VALUE))
+                .putInt(winnableCount)
+                .flip();
+        writeFully(pool, record, POOL_HEADER_SIZE + (long) dealCount * RECORD_SIZE);
+
+        if (result.isSolvable()) {
+            writeIndexEntry(dealCount);
+        }
+        dealCount++;
+    }
+
+    /**
+     * Makes sure every appended result is on the disk
+     */
+    synchronized void flush() throws IOException {
+        pool.force(false);
+        index.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            pool.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private ByteBuffer readRecord(int deal) throws IOException {
+        if (deal < 0 || deal >= dealCount)
+            throw new IndexOutOfBoundsException("Deal " + deal + " of " + dealCount);
+
+        record.clear();
+        readFully(pool, record, POOL_HEADER_SIZE + (long) deal * RECORD_SIZE);
+        return record;
+    }
+
+    private int readIndexEntry(long i) throws IOException {
+        indexEntry.clear();
+        readFully(index, indexEntry, INDEX_HEADER_SIZE + i * INDEX_ENTRY_SIZE);
+        return indexEntry.getInt(0);
+    }
+
+    private void writeIndexEntry(int deal) throws IOException {
+        indexEntry.clear();
+        indexEntry.putInt(deal).flip();
+        writeFully(index, indexEntry, INDEX_HEADER_SIZE + (long) winnableCount * INDEX_ENTRY_SIZE);
+        winnableCount++;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of the deal pool");
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
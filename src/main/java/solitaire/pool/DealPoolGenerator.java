@@ -0,0 +1,140 @@
+/*
+    Fills a DealPool by dealing every deal number with the same code as Game.initNewGame and solving it, using one
+    Solver per core. Deals are handed out in batches and the results are written in deal order as soon as every
+    earlier batch is done, so the pool on the disk is always a complete prefix and a stopped or crashed run continues
+    from the first deal without a result.
+
+    Usage: DealPoolGenerator <pool file> <deals> [threads] [max nodes per deal]
+ */
+
+package solitaire.pool;
+
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+import solitaire.solver.SolveResult;
+import solitaire.solver.Solver;
+import solitaire.solver.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DealPoolGenerator {
+    public final static int BATCH_SIZE = 64;
+
+    // Batches waiting to be written per thread, which keeps every thread busy while a slow batch holds up writing
+    private final static int BATCHES_PER_THREAD = 4;
+
+    private final DealPool pool;
+    private final int threads;
+    private final ThreadLocal<Solver> solvers;
+
+    /**
+     * @param pool    The pool to add results to
+     * @param threads How many deals to solve at once
+     */
+    public DealPoolGenerator(DealPool pool, int threads) {
+        this.pool = pool;
+        this.threads = threads;
+        this.solvers = ThreadLocal.withInitial(() ->
+                new Solver(new TranspositionTable(), pool.getMaxNodes(), Solver.DEFAULT_MAX_DEPTH));
+    }
+
+    /**
+     * Solves deals and adds their results until the pool has results for a number of deals. Results are forced to
+     * the disk after every batch
+     *
+     * @param dealCount How many deals the pool should have results for
+     * @throws IOException If the results cannot be written
+     */
+    public void generate(int dealCount) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<SolveResult[]>> pending = new ArrayDeque<>();
+        int nextDeal = pool.getDealCount();
+
+        try {
+            while (nextDeal < dealCount || !pending.isEmpty()) {
+                while (nextDeal < dealCount && pending.size() < threads * BATCHES_PER_THREAD) {
+                    int first = nextDeal;
+                    int last = Math.min(dealCount, first + BATCH_SIZE);
+                    pending.add(executor.submit(() -> solveBatch(first, last)));
+                    nextDeal = last;
+                }
+
+                for (SolveResult result : pending.remove().get()) {
+                    pool.append(result);
+                }
+                pool.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("A deal could not be solved", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            pool.flush();
+        }
+    }
+
+    private SolveResult[] solveBatch(int first, int last) {
+        Solver solver = solvers.get();
+        SolveResult[] results = new SolveResult[last - first];
+        for (int deal = first; deal < last; deal++) {
+            results[deal - first] = solver.solve(PackedState.of(new Game(null, deal)));
+        }
+        return results;
+    }
+
+    /**
+     * Prints how many deals of a pool can be won and how hard they were to solve
+     *
+     * @param pool The pool to summarize
+     */
+    public static void printStatistics(DealPool pool) throws IOException {
+        int[] statusCounts = new int[3];
+        long solutionMoves = 0;
+        long nodes = 0;
+        for (int deal = 0; deal < pool.getDealCount(); deal++) {
+            int status = pool.getStatus(deal);
+            statusCounts[status]++;
+            solutionMoves += pool.getSolutionLength(deal);
+            nodes += pool.getNodes(deal);
+        }
+
+        int deals = Math.max(pool.getDealCount(), 1);
+        System.out.printf("%d deals: %d winnable (%.1f%%), %d unwinnable, %d undecided after %d nodes%n",
+                pool.getDealCount(), statusCounts[SolveResult.SOLVABLE], 100.0 * statusCounts[SolveResult.SOLVABLE] / deals,
+                statusCounts[SolveResult.UNSOLVABLE], statusCounts[SolveResult.UNKNOWN], pool.getMaxNodes());
+        System.out.printf("Average solution: %.1f moves, average search: %d nodes%n",
+                (double) solutionMoves / Math.max(statusCounts[SolveResult.SOLVABLE], 1), nodes / deals);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: DealPoolGenerator <pool file> <deals> [threads] [max nodes per deal]");
+            return;
+        }
+
+        int dealCount = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long maxNodes = args.length > 3 ? Long.parseLong(args[3]) : Solver.DEFAULT_MAX_NODES;
+
+        try (DealPool pool = new DealPool(Paths.get(args[0]), maxNodes)) {
+            int resumeFrom = pool.getDealCount();
+            if (resumeFrom > 0 && resumeFrom < dealCount) {
+                System.out.println("Continuing from deal " + resumeFrom);
+            }
+
+            long start = System.nanoTime();
+            new DealPoolGenerator(pool, threads).generate(dealCount);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Solved %d deals in %.1f s%n", pool.getDealCount() - resumeFrom, seconds);
+            printStatistics(pool);
+        }
+    }
+}
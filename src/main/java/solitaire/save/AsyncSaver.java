@@ -0,0 +1,114 @@
+/*
+    Saves games on a background thread so the UI never waits for serialization, hashing or the disk. The caller only
+    takes a snapshot of the game, which is cheap, and hands it over.
+
+    Saves to the same file coalesce: if a file is saved again before the previous save of it has started, only the
+    newest snapshot is written and every listener of the replaced saves is told about that write.
+ */
+
+package solitaire.save;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncSaver {
+    private final ExecutorService executor;
+    private final Executor listenerExecutor;
+
+    // Saves that have been asked for but not started, by file
+    private final Map<Path, PendingSave> pending = new HashMap<>();
+
+    /**
+     * @param listenerExecutor Runs the listener calls, for example SwingUtilities::invokeLater to call them on the
+     *                         Event Dispatch Thread
+     */
+    public AsyncSaver(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Game saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Saves a game in the background. Only the snapshot is taken on the calling thread
+     *
+     * @param game     The game to save. It can keep being played while the save is written
+     * @param file     The file to save to
+     * @param listener Told when the save is on the disk or has failed, or null
+     */
+    public void save(Game game, Path file, @Nullable SaveListener listener) {
+        Game snapshot = game.snapshot();
+        file = file.toAbsolutePath().normalize();
+
+        synchronized (pending) {
+            PendingSave save = pending.get(file);
+            if (save == null) {
+                save = new PendingSave();
+                pending.put(file, save);
+                Path target = file;
+                executor.execute(() -> write(target));
+            }
+
+            save.snapshot = snapshot;
+            if (listener != null) {
+                save.listeners.add(listener);
+            }
+        }
+    }
+
+    /**
+     * Writes the newest snapshot asked for a file and tells its listeners
+     */
+    private void write(Path file) {
+        PendingSave save;
+        synchronized (pending) {
+            save = pending.remove(file);
+        }
+
+        IOException error = null;
+        try {
+            SaveFile.write(save.snapshot, file);
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException("The game could not be saved", e);
+        }
+
+        IOException result = error;
+        for (SaveListener listener : save.listeners) {
+            listenerExecutor.execute(() -> {
+                if (result == null) {
+                    listener.onSaved(file);
+                } else {
+                    listener.onSaveFailed(file, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops taking saves and waits for the saves already asked for to be written
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private static class PendingSave {
+        private Game snapshot;
+        private final List<SaveListener> listeners = new ArrayList<>();
+    }
+}
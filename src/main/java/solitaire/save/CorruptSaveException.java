@@ -0,0 +1,25 @@
+/*
+    Thrown when the checksum or hash stored in a save file does not match its contents, or the contents hold a game
+    that cannot have been saved, so the save was damaged or edited after it was written.
+ */
+
+package solitaire.save;
+
+import java.io.IOException;
+
+public class CorruptSaveException extends IOException {
+    /**
+     * @param message What did not match
+     */
+    public CorruptSaveException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message What was wrong with the contents
+     * @param cause   The exception the contents caused
+     */
+    public CorruptSaveException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,438 @@
+/*
+    Keeps an append-only journal of every move made in a game so the game can be recovered after a crash, even if it
+    was never saved.
+
+    The journal starts with the game it was started from: either just a deal number, in which case recovery deals
+    it again, or the cards of a loaded game. Either way the header also holds the undo history of that game, so undos
+    past the start of the journal replay too. Every move after that is one fixed size record. Making a move only adds
+    its record to a queue, so the Event Dispatch Thread never waits for the disk. A background thread writes the
+    queued records to the file as soon as they arrive, and forces them to the disk in batches, so a power cut loses
+    at most the last FORCE_INTERVAL_MS of play. Starting, closing and discarding a journal also happen on that thread,
+    which every journal shares, so a journal discarded for a new game is gone before the new one is written.
+
+    The background thread also replays every record it writes on its own copy of the game. Once the journal has
+    COMPACT_MIN_RECORDS records it is compacted by writing that copy as the new header, cards, counters and undo
+    history, with no records after it. Replaying that gives the same game with the same undo and redo. Moves made
+    meanwhile wait in the queue and are written after it.
+
+    Header: magic "SJNL", version, deal number (long), base (byte), the cards of the base game (PackedState.SIZE bytes,
+            zero for BASE_DEAL), the move counter and elapsed seconds of the base game (int each), the undo history
+            of the base game: entry count (int), how many of them can be undone (int), entries (int each), see
+            Game.getHistory
+    Record: move (int), the move counter after the move (int), elapsed seconds (int)
+ */
+
+package solitaire.save;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.MoveListener;
+import solitaire.game.PackedState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MoveJournal implements MoveListener {
+    public final static int RECORD_SIZE = 12;
+    public final static long FORCE_INTERVAL_MS = 1000;
+
+    // The journal is compacted once it has this many records
+    public final static int COMPACT_MIN_RECORDS = 1024;
+
+    private final static int MAGIC = 0x534A4E4C; // "SJNL"
+    private final static int VERSION = 2;
+    private final static int BASE_DEAL = 0; // The journal starts from a new deal of its deal number
+    private final static int BASE_STATE = 1; // The journal starts from the cards stored in the header
+    // The header without its undo history entries
+    private final static int HEADER_FIXED_SIZE = 4 + 4 + 8 + 1 + PackedState.SIZE + 4 + 4 + 4 + 4;
+    private final static int RECORD_INTS = RECORD_SIZE / 4;
+    // Writes, forces, compacts and closes the journals in the order they were asked for
+    private final static ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Move journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final Game game;
+    private ScheduledFuture<?> forcing;
+
+    // The records of moves that are not written yet, three ints each. Only guards the queue, never the file
+    private final Object queueLock = new Object();
+    private int[] queue = new int[64 * RECORD_INTS];
+    private int queuedRecords;
+    // The queue being written, swapped with queue so neither is allocated again
+    private int[] draining = new int[64 * RECORD_INTS];
+
+    // Everything below is only used by the background thread once journaling began
+    @Nullable
+    private FileChannel channel; // Null once the journal is closed or if it could not be started
+    private int headerSize;
+    private int recordCount;
+    private boolean dirty;
+    // The game as replaying the records written so far leaves it, which is what a compacted journal starts from
+    private Game replica;
+    // How many records the journal needs before it is compacted, raised after a compaction failed
+    private int compactAt = COMPACT_MIN_RECORDS;
+
+    private MoveJournal(Path file, Game game, int headerSize, @Nullable FileChannel channel) {
+        this.file = file;
+        this.game = game;
+        this.headerSize = headerSize;
+        this.channel = channel;
+        replica = game.snapshot();
+    }
+
+    /**
+     * Starts journaling the moves of the game and forcing them to the disk
+     */
+    private void begin() {
+        game.setMoveListener(this);
+        forcing = writer.scheduleWithFixedDelay(this::forceAndCompact, FORCE_INTERVAL_MS, FORCE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a new journal for a game, replacing any journal in the file. The file is written by the background
+     * thread, if it cannot be written the game is played without a journal
+     *
+     * @param file The journal file
+     * @param game The game to journal. Its moves are journaled until the journal is closed
+     * @return The journal
+     */
+    public static MoveJournal start(Path file, Game game) {
+        ByteBuffer header = header(game);
+        MoveJournal journal = new MoveJournal(file, game, header.capacity(), null);
+        writer.execute(() -> journal.create(header));
+        journal.begin();
+        return journal;
+    }
+
+    /**
+     * Runs on the background thread. Writes the header of a new journal, replacing any journal in the file
+     */
+    private void create(ByteBuffer header) {
+        FileChannel created = null;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            created = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeFully(created, header, 0);
+            created.force(false);
+            channel = created;
+        } catch (IOException e) {
+            System.err.println("The move journal could not be started, the game will not be recoverable:");
+            e.printStackTrace();
+            if (created != null) {
+                try {
+                    created.close();
+                } catch (IOException ignored) {
+                    // It was not written anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the header a journal of a game starts with
+     *
+     * @return The header, ready to be written
+     */
+    private static ByteBuffer header(Game game) {
+        PackedState state = PackedState.of(game);
+        int[] history = game.getHistory();
+        boolean newDeal = game.moves == 0 && history.length == 0
+                && state.equals(PackedState.of(new Game(null, game.getDealNumber())));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED_SIZE + history.length * 4);
+        header.putInt(MAGIC).putInt(VERSION).putLong(game.getDealNumber()).put((byte) (newDeal ? BASE_DEAL : BASE_STATE))
+                .put(newDeal ? new byte[PackedState.SIZE] : state.toBytes())
+                .putInt(game.moves).putInt(game.minutes * 60 + game.seconds)
+                .putInt(history.length).putInt(game.getUndoCount());
+        for (int entry : history) {
+            header.putInt(entry);
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Rebuilds the game of a journal by replaying its moves, and continues journaling it. A partly written record at
+     * the end of the journal is dropped, and a record that cannot be replayed is skipped
+     *
+     * @param file The journal file
+     * @return The journal, see getGame for the recovered game
+     * @throws IOException If the file cannot be read or is not a journal
+     */
+    public static MoveJournal recover(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < HEADER_FIXED_SIZE)
+            throw new IOException("The journal is too short");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Not a move journal of version " + VERSION);
+
+        long dealNumber = buffer.getLong();
+        int base = buffer.get();
+        byte[] state = new byte[PackedState.SIZE];
+        buffer.get(state);
+        int moves = buffer.getInt();
+        int seconds = buffer.getInt();
+        int historyCount = buffer.getInt();
+        int undoCount = buffer.getInt();
+        if (historyCount < 0 || historyCount > buffer.remaining() / 4 || undoCount < 0 || undoCount > historyCount)
+            throw new IOException("The undo history of the journal is cut off");
+
+        int[] history = new int[historyCount];
+        for (int i = 0; i < historyCount; i++) {
+            history[i] = buffer.getInt();
+        }
+
+        Game game = new Game(null, dealNumber);
+        try {
+            if (base == BASE_STATE) {
+                game.restore(PackedState.fromBytes(state));
+            }
+            game.restoreHistory(history, undoCount);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The journal does not start from a valid game", e);
+        }
+        setCounters(game, moves, seconds);
+
+        int headerSize = buffer.position();
+        int recordCount = buffer.remaining() / RECORD_SIZE;
+        int skipped = 0;
+        for (int i = 0; i < recordCount; i++) {
+            int move = buffer.getInt();
+            moves = buffer.getInt();
+            seconds = buffer.getInt();
+            // One bad record must not lose every move after it
+            if (game.applyMove(move)) {
+                setCounters(game, moves, seconds);
+            } else {
+                skipped++;
+            }
+        }
+        if (skipped > 0) {
+            System.err.println(skipped + " moves of the journal could not be replayed and were skipped");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(headerSize + (long) recordCount * RECORD_SIZE);
+        MoveJournal journal = new MoveJournal(file, game, headerSize, channel);
+        journal.recordCount = recordCount;
+        journal.begin();
+        return journal;
+    }
+
+    /**
+     * @return The game being journaled
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Queues a move to be appended to the journal by the background thread
+     */
+    @Override
+    public void onMove(Game game, int move) {
+        boolean wasEmpty;
+        synchronized (queueLock) {
+            int index = queuedRecords * RECORD_INTS;
+            if (index == queue.length) {
+                queue = Arrays.copyOf(queue, queue.length * 2);
+            }
+
+            queue[index] = move;
+            queue[index + 1] = game.moves;
+            queue[index + 2] = game.minutes * 60 + game.seconds;
+            wasEmpty = queuedRecords++ == 0;
+        }
+
+        if (wasEmpty) {
+            writer.execute(this::writeQueued);
+        }
+    }
+
+    /**
+     * Runs on the background thread. Appends the queued records to the file
+     */
+    private void writeQueued() {
+        int[] records;
+        int count;
+        synchronized (queueLock) {
+            count = queuedRecords;
+            if (count == 0)
+                return;
+
+            records = queue;
+            queue = draining.length >= records.length ? draining : new int[records.length];
+            draining = records;
+            queuedRecords = 0;
+        }
+        if (channel == null)
+            return;
+
+        ByteBuffer out = ByteBuffer.allocate(count * RECORD_SIZE);
+        for (int i = 0; i < count * RECORD_INTS; i++) {
+            out.putInt(records[i]);
+        }
+        out.flip();
+
+        try {
+            writeFully(channel, out, headerSize + (long) recordCount * RECORD_SIZE);
+            for (int i = 0; i < count * RECORD_INTS; i += RECORD_INTS) {
+                if (replica.applyMove(records[i])) {
+                    setCounters(replica, records[i + 1], records[i + 2]);
+                }
+            }
+            recordCount += count;
+            dirty = true;
+        } catch (IOException e) {
+            // Losing the journal must not stop the game
+            System.err.println("The move journal could not be written:");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs on the background thread. Writes the queued records, compacts the journal if it is long enough and forces
+     * it to the disk
+     */
+    private void forceAndCompact() {
+        writeQueued();
+        if (channel == null)
+            return;
+
+        if (recordCount >= compactAt) {
+            try {
+                compact();
+                compactAt = COMPACT_MIN_RECORDS;
+            } catch (IOException | RuntimeException e) {
+                // The journal stays as it is and is tried again once it grew as much again
+                compactAt = recordCount + COMPACT_MIN_RECORDS;
+                System.err.println("The move journal could not be compacted:");
+                e.printStackTrace();
+            }
+        }
+
+        if (dirty) {
+            try {
+                channel.force(false);
+                dirty = false;
+            } catch (IOException | RuntimeException e) {
+                // An exception would stop the background thread for good
+                System.err.println("The move journal could not be written:");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal as a header holding the game the records lead to, with no records. The new journal is
+     * written next to the old one and renamed over it, so a crash during compaction leaves one of the two. Moves made
+     * meanwhile stay queued
+     */
+    private void compact() throws IOException {
+        ByteBuffer out = header(replica);
+        int size = out.capacity();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(tempChannel, out, 0);
+            tempChannel.force(false);
+        }
+
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        headerSize = size;
+        recordCount = 0;
+        dirty = false;
+    }
+
+    /**
+     * Stops journaling. The background thread then writes every queued record and forces them to the disk, nothing
+     * here waits for it. The journal is kept so the game can still be recovered
+     *
+     * @return Completes once the journal is on the disk and closed
+     */
+    public CompletableFuture<Void> close() {
+        return stop(false);
+    }
+
+    /**
+     * Stops journaling and has the background thread delete the journal, for when the game ended normally and needs
+     * no recovery. Nothing here waits for it
+     *
+     * @return Completes once the journal is deleted
+     */
+    public CompletableFuture<Void> discard() {
+        return stop(true);
+    }
+
+    private CompletableFuture<Void> stop(boolean delete) {
+        game.setMoveListener(null);
+        forcing.cancel(false);
+
+        CompletableFuture<Void> stopped = new CompletableFuture<>();
+        writer.execute(() -> {
+            try {
+                if (channel != null) {
+                    try {
+                        if (!delete) {
+                            writeQueued();
+                            channel.force(false);
+                        }
+                    } finally {
+                        channel.close();
+                        channel = null;
+                    }
+                }
+                if (delete) {
+                    Files.deleteIfExists(file);
+                }
+                stopped.complete(null);
+            } catch (IOException | RuntimeException e) {
+                stopped.completeExceptionally(e);
+            }
+        });
+        return stopped;
+    }
+
+    private static void setCounters(Game game, int moves, int elapsedSeconds) {
+        game.moves = moves;
+        game.minutes = elapsedSeconds / 60;
+        game.seconds = elapsedSeconds % 60;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+    Reads and writes save files. Games are saved in a small binary format that is checked with a CRC32 and read back
+    without parsing any text. Saves from older versions, which hold the game as Gson JSON on the first line and the
+    SHA-256 hash of that line on the second, are recognised by their missing magic number and still load, and are
+    written in the binary format the next time they are saved.
+
+    Header:   magic "SSAV", version, flags (byte), deal number (long), move counter (int), elapsed seconds (int),
+              the cards (PackedState.SIZE bytes)
+    History:  only if FLAG_HISTORY is set. Entry count (int), how many of them can be undone (int), the undo history
+              entries (int each), see Game.getHistory
+    Checksum: the CRC32 of everything before it (int)
+
+    A save is written to a temporary file next to the target, forced to the disk and then renamed over the target, so
+    a crash while saving leaves either the old save or the new one, never a mix of both.
+ */
+
+package solitaire.save;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+public final class SaveFile {
+    // Gson is thread safe, and making one is slower than loading a game with it
+    public final static Gson GSON = new Gson();
+
+    public final static int VERSION = 2; // The JSON saves were version 1
+    public final static int FLAG_HISTORY = 1; // The save holds the undo history
+
+    private final static int MAGIC = 0x53534156; // "SSAV"
+    private final static int HEADER_SIZE = 4 + 4 + 1 + 8 + 4 + 4 + PackedState.SIZE;
+    private final static int HISTORY_HEADER_SIZE = 4 + 4;
+    private final static int CHECKSUM_SIZE = 4;
+
+    // Far more than any save needs, so a wrong file is not read into memory whole
+    private final static int MAX_SIZE = 1 << 20;
+
+    private final static String TEMP_SUFFIX = ".tmp";
+    // Temporary names are random, so taken names only come up again by chance
+    private final static int TEMP_ATTEMPTS = 10;
+
+    private SaveFile() {
+    }
+
+    /**
+     * Turns a game into the bytes of a save file
+     *
+     * @param game The game to save. It should not be changed by other threads while this runs, see Game.snapshot
+     * @return The bytes of the save
+     */
+    public static byte[] toBytes(Game game) {
+        int[] history = game.getHistory();
+        int flags = history.length > 0 ? FLAG_HISTORY : 0;
+        int size = HEADER_SIZE + CHECKSUM_SIZE;
+        if ((flags & FLAG_HISTORY) != 0) {
+            size += HISTORY_HEADER_SIZE + history.length * 4;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).put((byte) flags).putLong(game.getDealNumber()).putInt(game.moves)
+                .putInt(game.minutes * 60 + game.seconds).put(PackedState.of(game).toBytes());
+
+        if ((flags & FLAG_HISTORY) != 0) {
+            buffer.putInt(history.length).putInt(game.getUndoCount());
+            for (int entry : history) {
+                buffer.putInt(entry);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Turns the bytes of a save file back into a game. Saves in the old JSON format are loaded too
+     *
+     * @param bytes The bytes of the save
+     * @return The loaded game, which is headless until a listener is set
+     * @throws CorruptSaveException   If the checksum or hash of the save does not match, or the checksum matches but
+     *                                the cards or undo history cannot be from a game
+     * @throws IOException            If the save is not a valid binary save
+     * @throws JsonSyntaxException    If the save is in the JSON format but does not hold a valid game
+     * @throws NoSuchElementException If the save is in the JSON format but does not have a hash
+     */
+    public static Game fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length >= 4 && ByteBuffer.wrap(bytes).getInt(0) == MAGIC)
+            return readBinary(bytes);
+        return readJson(bytes);
+    }
+
+    private static Game readBinary(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE + CHECKSUM_SIZE)
+            throw new IOException("The save is too short");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.getInt();
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Saves of version " + version + " cannot be loaded");
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - CHECKSUM_SIZE);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - CHECKSUM_SIZE))
+            throw new CorruptSaveException("The checksum of the save does not match");
+
+        int flags = buffer.get();
+        long dealNumber = buffer.getLong();
+        int moves = buffer.getInt();
+        int elapsedSeconds = buffer.getInt();
+        byte[] cards = new byte[PackedState.SIZE];
+        buffer.get(cards);
+
+        try {
+            Game game = PackedState.fromBytes(cards).toGame(dealNumber);
+            game.moves = moves;
+            game.minutes = elapsedSeconds / 60;
+            game.seconds = elapsedSeconds % 60;
+
+            if ((flags & FLAG_HISTORY) != 0) {
+                if (buffer.remaining() < HISTORY_HEADER_SIZE + CHECKSUM_SIZE)
+                    throw new IOException("The undo history of the save is cut off");
+
+                int count = buffer.getInt();
+                int undoCount = buffer.getInt();
+                if (count < 0 || count > (buffer.remaining() - CHECKSUM_SIZE) / 4)
+                    throw new IOException("The undo history of the save is cut off");
+
+                int[] history = new int[count];
+                for (int i = 0; i < count; i++) {
+                    history[i] = buffer.getInt();
+                }
+                game.restoreHistory(history, undoCount);
+            }
+
+            if (buffer.remaining() != CHECKSUM_SIZE)
+                throw new IOException("The save is longer than the game it holds");
+            return game;
+        } catch (IllegalArgumentException e) {
+            // The checksum matched, so the cards or undo history were wrong when they were written or changed on purpose
+            throw new CorruptSaveException("The save does not hold a valid game", e);
+        }
+    }
+
+    /**
+     * Loads a save of the old format. The hash was turned into text with the default charset and written in it, so
+     * the bytes that are in the file are compared with what writing the expected hash that way gives. Comparing the
+     * decoded text instead fails whenever the charset cannot encode what it decoded, and the hash bytes can include
+     * line breaks, so everything after the first line is the hash
+     */
+    private static Game readJson(byte[] bytes) throws IOException {
+        int newline = 0;
+        while (newline < bytes.length && bytes[newline] != '\n') {
+            newline++;
+        }
+        if (newline == bytes.length)
+            throw new NoSuchElementException("The save does not have two lines");
+
+        int end = newline > 0 && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+        Charset charset = Charset.defaultCharset();
+        String gameString = new String(bytes, 0, end, charset);
+
+        byte[] expected;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(gameString.getBytes(StandardCharsets.UTF_8));
+            expected = new String(digest, charset).getBytes(charset);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        if (!Arrays.equals(expected, Arrays.copyOfRange(bytes, newline + 1, bytes.length)))
+            throw new CorruptSaveException("The hash of the save does not match");
+
+        Game game = GSON.fromJson(gameString, Game.class);
+        if (game == null)
+            throw new JsonSyntaxException("The save does not hold a game");
+        return game;
+    }
+
+    /**
+     * Loads a save file of either format
+     *
+     * @param file The file to load
+     * @return The loaded game, which is headless until a listener is set
+     * @throws IOException If the file could not be read or is not a valid save, see fromBytes for the other
+     *                     exceptions
+     */
+    public static Game read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_SIZE)
+                throw new IOException("The file is too large to be a save");
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0)
+                    throw new IOException("The save changed while it was read");
+            }
+            return fromBytes(buffer.array());
+        }
+    }
+
+    /**
+     * Saves a game, replacing the file atomically. A replaced save keeps its permissions, and a new save gets the
+     * permissions any new file gets
+     *
+     * @param game The game to save. It should not be changed by other threads while this runs, see Game.snapshot
+     * @param file The file to save to
+     * @throws IOException If the save could not be written. The file is left as it was
+     */
+    public static void write(Game game, Path file) throws IOException {
+        Path temp = createTemp(file);
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeFully(channel, ByteBuffer.wrap(toBytes(game)), 0);
+                channel.force(true);
+            }
+
+            if (Files.exists(file) && Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to a save. Files.createTempFile is not used since it makes the file
+     * readable by its owner only, which the rename would pass on to the save
+     *
+     * @param file The save the temporary file will replace
+     * @return The new file
+     */
+    private static Path createTemp(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        for (int attempt = 0; ; attempt++) {
+            Path temp = directory.resolve(file.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + TEMP_SUFFIX);
+            try {
+                Files.newByteChannel(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+                return temp;
+            } catch (FileAlreadyExistsException e) {
+                if (attempt >= TEMP_ATTEMPTS)
+                    throw e;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
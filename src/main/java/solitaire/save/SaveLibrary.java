@@ -0,0 +1,444 @@
+/*
+    A folder of save files and a summary of each of them, for browsing saves without loading every one. The summaries
+    are kept in an index file, so opening a library only reads that one file. Index files are kept in the indexes
+    folder of ~/.solitaire, named after a hash of the absolute path of the save folder, so nothing is written into the
+    folders that are browsed and read-only folders work the same as any other. The folder is then listed
+    in the background and only saves that are new, or whose size or modification time changed, are loaded again.
+    After that a WatchService reports every save that is created, changed or deleted, and only those are looked at.
+
+    Loading and the index file are handled on one background thread, and the listener is told whenever the saves
+    changed. The index is a cache: if it is missing or cannot be read, every save is loaded again and it is rewritten.
+    A problem with the index is reported once on stderr, since it only costs loading the saves again.
+
+    Index: magic "SIDX", version, the absolute path of the save folder (modified UTF-8), entry count (int), then for each save the file name (modified UTF-8), size (long),
+           modification time (long), if it could be loaded (boolean) and if so its deal number (long), move counter
+           (int), elapsed seconds (int) and cards (PackedState.SIZE bytes)
+ */
+
+package solitaire.save;
+
+import solitaire.game.PackedState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+public class SaveLibrary implements Closeable {
+    public final static String SAVE_SUFFIX = ".sav";
+    public final static String INDEX_SUFFIX = ".savindex";
+    public final static Path INDEX_DIRECTORY = Paths.get(System.getProperty("user.home"), ".solitaire", "indexes");
+
+    private final static int MAGIC = 0x53494458; // "SIDX"
+    private final static int VERSION = 2; // Version 1 indexes were kept in the save folder
+
+    // Bytes of the SHA-256 of the folder path used in the index file name. Index files record their folder, so two
+    // folders with the same name only load their saves again
+    private final static int NAME_HASH_BYTES = 8;
+
+    private final Path directory;
+    private final Path indexFile;
+    private final SaveLibraryListener listener;
+    private final Executor listenerExecutor;
+    private final ExecutorService executor;
+    private final WatchService watcher;
+
+    // Every save in the folder, by file
+    private final Map<Path, SaveSummary> saves = new HashMap<>();
+    private volatile boolean closed;
+    // Only used on the background thread. Set once a problem with the index was reported
+    private boolean indexProblemReported;
+
+    private SaveLibrary(Path directory, Path indexFile, SaveLibraryListener listener, Executor listenerExecutor,
+                        WatchService watcher) {
+        this.directory = directory;
+        this.indexFile = indexFile;
+        this.listener = listener;
+        this.listenerExecutor = listenerExecutor;
+        this.watcher = watcher;
+
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Save library");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the library of a folder. The index is read and the folder checked for changes in the background, and the
+     * listener is told about the saves once they are known
+     *
+     * @param directory        The folder holding the saves
+     * @param listener         Told whenever the saves changed
+     * @param listenerExecutor Runs the listener calls, for example SwingUtilities::invokeLater to call them on the
+     *                         Event Dispatch Thread
+     * @return The library, which keeps watching the folder until it is closed
+     * @throws IOException If the folder cannot be watched, for example because it does not exist
+     */
+    public static SaveLibrary open(Path directory, SaveLibraryListener listener, Executor listenerExecutor)
+            throws IOException {
+        return open(directory, INDEX_DIRECTORY, listener, listenerExecutor);
+    }
+
+    /**
+     * Opens the library of a folder, keeping its index in another folder than INDEX_DIRECTORY
+     *
+     * @param directory        The folder holding the saves
+     * @param indexDirectory   The folder to keep the index in, which is created when the index is first written
+     * @param listener         Told whenever the saves changed
+     * @param listenerExecutor Runs the listener calls, for example SwingUtilities::invokeLater to call them on the
+     *                         Event Dispatch Thread
+     * @return The library, which keeps watching the folder until it is closed
+     * @throws IOException If the folder cannot be watched, for example because it does not exist
+     */
+    public static SaveLibrary open(Path directory, Path indexDirectory, SaveLibraryListener listener,
+                                   Executor listenerExecutor) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+        WatchService watcher = directory.getFileSystem().newWatchService();
+        try {
+            // Registered before the folder is listed, so nothing that changes while it is listed is missed
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            watcher.close();
+            throw e;
+        }
+
+        SaveLibrary library = new SaveLibrary(directory, indexDirectory.resolve(indexName(directory)), listener,
+                listenerExecutor, watcher);
+        library.executor.execute(library::load);
+
+        Thread watchThread = new Thread(library::watch, "Save library watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        return library;
+    }
+
+    /**
+     * @param directory The absolute path of a save folder
+     * @return The file name of the index of the folder
+     */
+    static String indexName(Path directory) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(directory.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < NAME_HASH_BYTES; i++) {
+            name.append(String.format("%02x", digest[i]));
+        }
+        return name.append(INDEX_SUFFIX).toString();
+    }
+
+    /**
+     * @return The folder holding the saves
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Every save known so far, the most recently modified first
+     */
+    public List<SaveSummary> getSaves() {
+        List<SaveSummary> list;
+        synchronized (saves) {
+            list = new ArrayList<>(saves.values());
+        }
+
+        list.sort(Comparator.comparingLong(SaveSummary::getLastModified).reversed()
+                .thenComparing(summary -> summary.getFile().getFileName().toString()));
+        return list;
+    }
+
+    /**
+     * Runs on the background thread. Reads the index and brings it up to date with the folder
+     */
+    private void load() {
+        boolean indexed = readIndex();
+        if (indexed) {
+            changed();
+        }
+
+        if (scan() || !indexed) {
+            writeIndex();
+            changed();
+        }
+    }
+
+    /**
+     * Runs on its own thread until the library is closed. Hands the saves that changed to the background thread
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean overflowed = false;
+                Set<Path> files = new HashSet<>();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflowed = true;
+                    } else if (event.context().toString().endsWith(SAVE_SUFFIX)) {
+                        files.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                boolean valid = key.reset();
+
+                // Too many changes to report one by one, or the folder itself is gone: look at everything again
+                if (overflowed || !valid) {
+                    executor.execute(this::rescan);
+                } else if (!files.isEmpty()) {
+                    executor.execute(() -> refresh(files));
+                }
+
+                if (!valid)
+                    return;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+            // The library was closed
+        }
+    }
+
+    private void rescan() {
+        if (scan()) {
+            writeIndex();
+            changed();
+        }
+    }
+
+    private void refresh(Set<Path> files) {
+        boolean changed = false;
+        for (Path file : files) {
+            changed |= update(file);
+        }
+
+        if (changed) {
+            writeIndex();
+            changed();
+        }
+    }
+
+    /**
+     * Lists the folder, loading the saves that are new or changed and forgetting the ones that are gone
+     *
+     * @return True if any save changed
+     */
+    private boolean scan() {
+        Set<Path> found = new HashSet<>();
+        boolean changed = false;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SAVE_SUFFIX)) {
+            for (Path file : stream) {
+                found.add(file);
+                changed |= update(file);
+            }
+        } catch (IOException e) {
+            System.err.println("The save folder " + directory + " could not be listed: " + e);
+            return changed;
+        }
+
+        synchronized (saves) {
+            changed |= saves.keySet().retainAll(found);
+        }
+        return changed;
+    }
+
+    /**
+     * Loads a save again if its size or modification time changed, or forgets it if it is gone
+     *
+     * @param file The save file
+     * @return True if its summary changed
+     */
+    private boolean update(Path file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attributes = null;
+        }
+
+        if (attributes == null || !attributes.isRegularFile()) {
+            synchronized (saves) {
+                return saves.remove(file) != null;
+            }
+        }
+
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        synchronized (saves) {
+            SaveSummary known = saves.get(file);
+            if (known != null && known.isCurrent(size, lastModified))
+                return false;
+        }
+
+        SaveSummary summary;
+        try {
+            summary = SaveSummary.of(file, size, lastModified, SaveFile.read(file));
+        } catch (IOException | RuntimeException e) {
+            // Remembered too, so it is not loaded again until it changes
+            summary = SaveSummary.unloadable(file, size, lastModified);
+        }
+
+        synchronized (saves) {
+            saves.put(file, summary);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the saves in the index file to the library
+     *
+     * @return False if there is no index or it cannot be read
+     */
+    private boolean readIndex() {
+        if (!Files.exists(indexFile))
+            return false;
+
+        Map<Path, SaveSummary> read = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a save index of version " + VERSION);
+            // Another folder whose path has the same hash
+            if (!in.readUTF().equals(directory.toString()))
+                return false;
+
+            int count = in.readInt();
+            byte[] cards = new byte[PackedState.SIZE];
+            for (int i = 0; i < count; i++) {
+                Path file = directory.resolve(in.readUTF());
+                long size = in.readLong();
+                long lastModified = in.readLong();
+
+                if (in.readBoolean()) {
+                    long dealNumber = in.readLong();
+                    int moves = in.readInt();
+                    int elapsedSeconds = in.readInt();
+                    in.readFully(cards);
+                    read.put(file, new SaveSummary(file, size, lastModified, PackedState.fromBytes(cards),
+                            dealNumber, moves, elapsedSeconds));
+                } else {
+                    read.put(file, SaveSummary.unloadable(file, size, lastModified));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            reportIndexProblem("The save index " + indexFile + " could not be read, every save will be loaded again: "
+                    + e);
+            return false;
+        }
+
+        synchronized (saves) {
+            saves.putAll(read);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the index file with the saves known now. Failing to write it only means the saves are loaded again
+     * the next time the library is opened
+     */
+    private void writeIndex() {
+        List<SaveSummary> list;
+        synchronized (saves) {
+            list = new ArrayList<>(saves.values());
+        }
+
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(indexFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(directory.toString());
+                out.writeInt(list.size());
+
+                for (SaveSummary summary : list) {
+                    out.writeUTF(summary.getFile().getFileName().toString());
+                    out.writeLong(summary.getSize());
+                    out.writeLong(summary.getLastModified());
+
+                    PackedState cards = summary.getCards();
+                    out.writeBoolean(cards != null);
+                    if (cards != null) {
+                        out.writeLong(summary.getDealNumber());
+                        out.writeInt(summary.getMoves());
+                        out.writeInt(summary.getElapsedSeconds());
+                        out.write(cards.toBytes());
+                    }
+                }
+            }
+
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            reportIndexProblem("The save index " + indexFile + " could not be written: " + e);
+        }
+    }
+
+    /**
+     * Prints a problem with the index file unless one was already printed, since the index is written again after
+     * every change and would fail the same way each time
+     */
+    private void reportIndexProblem(String message) {
+        if (!indexProblemReported) {
+            indexProblemReported = true;
+            System.err.println(message);
+        }
+    }
+
+    private void changed() {
+        listenerExecutor.execute(() -> {
+            if (!closed) {
+                listener.onLibraryChanged(this);
+            }
+        });
+    }
+
+    /**
+     * Stops watching the folder and telling the listener about changes. Work that already started is finished in the
+     * background
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdown();
+        watcher.close();
+    }
+}
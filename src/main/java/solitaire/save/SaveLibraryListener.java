@@ -0,0 +1,14 @@
+/*
+    Receives updates from a SaveLibrary.
+ */
+
+package solitaire.save;
+
+public interface SaveLibraryListener {
+    /**
+     * Called when saves were added to the library, changed or removed, see SaveLibrary.getSaves
+     *
+     * @param library The library that changed
+     */
+    void onLibraryChanged(SaveLibrary library);
+}
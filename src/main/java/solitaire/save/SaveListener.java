@@ -0,0 +1,25 @@
+/*
+    Receives the outcome of a save made by an AsyncSaver.
+ */
+
+package solitaire.save;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface SaveListener {
+    /**
+     * Called once the save is completely on the disk
+     *
+     * @param file The file that was saved to
+     */
+    void onSaved(Path file);
+
+    /**
+     * Called when the save could not be written. The file is left as it was before the save
+     *
+     * @param file  The file that was saved to
+     * @param error What went wrong
+     */
+    void onSaveFailed(Path file, IOException error);
+}
@@ -0,0 +1,122 @@
+/*
+    What a save library shows about one save file without loading it again: how far the game got and where its cards
+    are, which is enough to draw a thumbnail. A summary is also kept for files that could not be loaded, so they are
+    not parsed again until they change.
+ */
+
+package solitaire.save;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+
+import java.nio.file.Path;
+
+public final class SaveSummary {
+    private final Path file;
+    private final long size;
+    private final long lastModified;
+
+    @Nullable
+    private final PackedState cards;
+    private final long dealNumber;
+    private final int moves;
+    private final int elapsedSeconds;
+
+    SaveSummary(Path file, long size, long lastModified, @Nullable PackedState cards, long dealNumber, int moves,
+                int elapsedSeconds) {
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.cards = cards;
+        this.dealNumber = dealNumber;
+        this.moves = moves;
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    /**
+     * @param file         The save file
+     * @param size         The size of the file when it was loaded
+     * @param lastModified When the file was last modified when it was loaded, in milliseconds since the epoch
+     * @param game         The game loaded from the file
+     * @return The summary of the save
+     */
+    static SaveSummary of(Path file, long size, long lastModified, Game game) {
+        return new SaveSummary(file, size, lastModified, PackedState.of(game), game.getDealNumber(), game.moves,
+                game.minutes * 60 + game.seconds);
+    }
+
+    /**
+     * @param file         The save file
+     * @param size         The size of the file when it failed to load
+     * @param lastModified When the file was last modified when it failed to load
+     * @return The summary of a file that is not a save that can be loaded
+     */
+    static SaveSummary unloadable(Path file, long size, long lastModified) {
+        return new SaveSummary(file, size, lastModified, null, 0, 0, 0);
+    }
+
+    /**
+     * @param size         The size the file has now
+     * @param lastModified When the file was last modified
+     * @return True if the file looks the same as when it was summarized, so it does not have to be loaded again
+     */
+    boolean isCurrent(long size, long lastModified) {
+        return this.size == size && this.lastModified == lastModified;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return When the file was last modified, in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return False if the file could not be loaded, in which case there is nothing else to show about it
+     */
+    public boolean isLoadable() {
+        return cards != null;
+    }
+
+    /**
+     * @return Where every card of the saved game is, or null if the file could not be loaded
+     */
+    public @Nullable PackedState getCards() {
+        return cards;
+    }
+
+    public long getDealNumber() {
+        return dealNumber;
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public int getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    /**
+     * @return How many cards are on the foundations, 52 for a won game
+     */
+    public int getFoundationCardCount() {
+        if (cards == null)
+            return 0;
+
+        int count = 0;
+        for (int stackId = Game.STACK_FOUNDATION_FIRST; stackId < Game.STACK_DISPLAYSTOCK; stackId++) {
+            count += cards.getCardCount(stackId);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+    A move suggested by a HintEngine, and how sure the engine is about it.
+ */
+
+package solitaire.solver;
+
+import solitaire.game.Move;
+
+public final class Hint {
+    /**
+     * One of SolveResult.SOLVABLE if the move is the start of a win that was found, UNKNOWN if the search ran out of
+     * time and the move is the most promising one that was not shown to lose, or UNSOLVABLE if no move can win
+     */
+    public final int status;
+    public final long nodes;
+    private final int[] moves;
+
+    /**
+     * @param status One of SolveResult.SOLVABLE, UNSOLVABLE or UNKNOWN
+     * @param moves  The moves to make, some stock cycles followed by one move. Empty if there is nothing to suggest
+     * @param nodes  How many positions were searched to find the hint
+     */
+    Hint(int status, int[] moves, long nodes) {
+        this.status = status;
+        this.moves = moves;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return A copy of the moves to make, in the order they have to be applied. See Move
+     */
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    /**
+     * @return True if there is a move to suggest
+     */
+    public boolean hasMove() {
+        return moves.length > 0;
+    }
+
+    /**
+     * @return The suggestion in words, for showing to the player
+     */
+    @Override
+    public String toString() {
+        if (moves.length == 0)
+            return status == SolveResult.SOLVABLE ? "The game is won" : "No move can win this game";
+
+        int cycles = moves.length - 1;
+        String move = Move.toString(moves[cycles]);
+        String text = cycles == 0 ? "Move " + move
+                : "Click the stock " + cycles + (cycles == 1 ? " time" : " times") + ", then move " + move;
+        return status == SolveResult.SOLVABLE ? text + " (leads to a win)" : text;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+    Finds hints on a background thread so the thread asking for them, usually the Event Dispatch Thread, never waits
+    for a search.
+
+    Every search has a hard time budget. The moves of the position are searched in rounds, each round giving every
+    move that is not decided yet twice the nodes of the round before, starting with the most promising move. The
+    first move found to lead to a win is the hint. If the time runs out first, the hint is the most promising move
+    that was not shown to lose, so there is always an answer when the budget is up.
+
+    Asking for a new hint or cancelling stops the search in progress, and a hint is only handed over if it was not
+    cancelled by then. Hints are cached by position once the search decided them, and when a win is found the hint
+    for every position along the winning line is cached too, so following hints or asking again is instant. A hint
+    found when the time ran out is not cached, so asking again searches with a new budget. The cache is keyed by the
+    position hash the game keeps up to date, so looking up a hint does not pack the position first.
+ */
+
+package solitaire.solver;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class HintEngine {
+    public final static long DEFAULT_TIME_BUDGET_MS = 50;
+    public final static int CACHE_CAPACITY = 4096;
+
+    // Uses about 3 MB, enough for the short searches made within a time budget
+    private final static int TABLE_CAPACITY = 1 << 18;
+
+    // The nodes each undecided move gets in the first round
+    private final static long FIRST_ROUND_NODES = 1000;
+
+    private final ExecutorService executor;
+    private final Executor listenerExecutor;
+    private final long timeBudgetNanos;
+
+    // Only used on the executor thread
+    private final Solver solver = new Solver(new TranspositionTable(TABLE_CAPACITY), Solver.DEFAULT_MAX_NODES,
+            Solver.DEFAULT_MAX_DEPTH);
+    private final int[] moves = new int[Solver.MAX_MOVES];
+    private final int[] statuses = new int[Solver.MAX_MOVES];
+
+    // Hints by the hash of the position they are for, see Game.getPositionHash, least recently used first
+    private final Map<Long, Hint> cache = new LinkedHashMap<Long, Hint>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Hint> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    // Stops the request in progress when stopped, null if there is none
+    @Nullable
+    private SearchBudget request;
+
+    /**
+     * Creates an engine with the default time budget
+     *
+     * @param listenerExecutor Runs the listener calls, for example SwingUtilities::invokeLater to call them on the
+     *                         Event Dispatch Thread
+     */
+    public HintEngine(Executor listenerExecutor) {
+        this(listenerExecutor, DEFAULT_TIME_BUDGET_MS);
+    }
+
+    /**
+     * @param listenerExecutor Runs the listener calls, for example SwingUtilities::invokeLater to call them on the
+     *                         Event Dispatch Thread
+     * @param timeBudgetMs     How long a search can take before the best move found so far is used
+     */
+    public HintEngine(Executor listenerExecutor, long timeBudgetMs) {
+        this.listenerExecutor = listenerExecutor;
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Hint engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Finds a hint for the current position of a game in the background, cancelling any earlier request. The
+     * listener is called on the listener executor within about the time budget, or at once if the hint is cached.
+     * Requests and cancels should come from the thread the listener executor runs on, which is then also the only
+     * thread that sees the hint
+     *
+     * @param game     The game, which is only read on the calling thread and can keep being played
+     * @param listener Told the hint unless the request is cancelled first
+     */
+    public void requestHint(Game game, HintListener listener) {
+        long key = game.getPositionHash();
+        SearchBudget cancel = new SearchBudget(Long.MAX_VALUE);
+        synchronized (this) {
+            if (request != null) {
+                request.stop();
+            }
+            request = cancel;
+        }
+
+        Hint cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            deliver(cached, cancel, listener);
+            return;
+        }
+
+        PackedState position = PackedState.of(game);
+
+        executor.execute(() -> {
+            if (cancel.isStopped())
+                return;
+
+            Hint hint = search(position, cancel);
+            if (!cancel.isStopped()) {
+                deliver(hint, cancel, listener);
+            }
+        });
+    }
+
+    /**
+     * Stops the search in progress and makes sure its hint is never handed over. Call this whenever the game changes
+     */
+    public synchronized void cancel() {
+        if (request != null) {
+            request.stop();
+            request = null;
+        }
+    }
+
+    /**
+     * Stops the background thread. No more hints are found afterwards
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void deliver(Hint hint, SearchBudget cancel, HintListener listener) {
+        listenerExecutor.execute(() -> {
+            if (!cancel.isStopped()) {
+                listener.onHint(hint);
+            }
+        });
+    }
+
+    /**
+     * Searches the moves of a position in rounds until one of them wins, every one of them is decided or the time
+     * budget runs out. A cancelled search returns early and nothing it found is cached
+     */
+    private Hint search(PackedState start, SearchBudget cancel) {
+        if (start.isWon())
+            return new Hint(SolveResult.SOLVABLE, new int[0], 0);
+
+        SearchBudget budget = SearchBudget.withDeadline(Long.MAX_VALUE, cancel, System.nanoTime() + timeBudgetNanos);
+        int count = solver.generateMoves(start, moves);
+        Arrays.fill(statuses, 0, count, SolveResult.UNKNOWN);
+        long nodes = 0;
+
+        boolean undecided = count > 0;
+        for (long roundNodes = FIRST_ROUND_NODES; undecided && !budget.isStopped() && !budget.isPastDeadline();
+             roundNodes *= 2) {
+            undecided = false;
+            for (int i = 0; i < count && !budget.isStopped() && !budget.isPastDeadline(); i++) {
+                if (statuses[i] != SolveResult.UNKNOWN)
+                    continue;
+
+                PackedState child = Solver.applySearchMove(start, moves[i]);
+                SolveResult result = child.isWon() ? new SolveResult(SolveResult.SOLVABLE, new int[0], 1)
+                        : solver.probe(child, null, new SearchBudget(roundNodes, budget));
+                nodes += result.nodes;
+                statuses[i] = result.status;
+
+                if (result.isSolvable()) {
+                    int[] line = Solver.expandSearchMove(moves[i], result.getMoves());
+                    if (!cancel.isStopped()) {
+                        cacheLine(start, line, nodes);
+                    }
+                    return new Hint(SolveResult.SOLVABLE, firstMove(line, 0), nodes);
+                }
+
+                // A move that ran out of nodes gets more in the next round, unless the search already hit its limit
+                undecided |= result.status == SolveResult.UNKNOWN && roundNodes < Solver.DEFAULT_MAX_NODES;
+            }
+        }
+
+        Hint hint = new Hint(SolveResult.UNSOLVABLE, new int[0], nodes);
+        for (int i = 0; i < count; i++) {
+            if (statuses[i] == SolveResult.UNKNOWN) {
+                hint = new Hint(SolveResult.UNKNOWN, Solver.expandSearchMove(moves[i], new int[0]), nodes);
+                break;
+            }
+        }
+
+        // A hint the budget ran out on is only a guess, so the position is searched again the next time it is asked
+        if (!cancel.isStopped() && hint.status != SolveResult.UNKNOWN) {
+            synchronized (cache) {
+                cache.put(start.getPositionHash(), hint);
+            }
+        }
+        return hint;
+    }
+
+    /**
+     * Caches the hint for every position along a winning line
+     *
+     * @param start The position the line starts from
+     * @param line  The moves that win the game from there, see SolveResult.getMoves
+     * @param nodes How many positions were searched to find the line
+     */
+    private void cacheLine(PackedState start, int[] line, long nodes) {
+        PackedState position = start;
+        int i = 0;
+        synchronized (cache) {
+            while (i < line.length) {
+                int[] move = firstMove(line, i);
+                cache.put(position.getPositionHash(), new Hint(SolveResult.SOLVABLE, move, nodes));
+
+                position = position.cycleStock(move.length - 1).apply(move[move.length - 1]);
+                if (position == null)
+                    throw new IllegalStateException("The winning line has an illegal move");
+                i += move.length;
+            }
+        }
+    }
+
+    /**
+     * @return The stock cycles at an index of a line of moves and the move after them
+     */
+    private static int[] firstMove(int[] line, int from) {
+        int end = from;
+        while (line[end] == Move.CYCLE_STOCK) {
+            end++;
+        }
+        return Arrays.copyOfRange(line, from, end + 1);
+    }
+}
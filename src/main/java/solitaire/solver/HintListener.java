@@ -0,0 +1,14 @@
+/*
+    Used to hand the hints found in the background by a HintEngine back to the caller.
+ */
+
+package solitaire.solver;
+
+public interface HintListener {
+    /**
+     * Called with the hint for the position it was asked for, unless the request was cancelled before it was found
+     *
+     * @param hint The hint
+     */
+    void onHint(Hint hint);
+}
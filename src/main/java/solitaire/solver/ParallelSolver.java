@@ -0,0 +1,252 @@
+/*
+    Solves deals using every core at once, with the same moves and rules as Solver.
+
+    First every worker makes the same short probes Solver makes, each with its own small table, and the first probe
+    that decides the deal stops the others. If no probe decides it, the positions near the start are split into
+    fork-join tasks that search their subtrees against one shared StripedTranspositionTable, with idle workers
+    stealing subtrees from busy ones. As soon as any task finds a win every other task gives up.
+ */
+
+package solitaire.solver;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelSolver {
+    public final static int PROBE_TABLE_CAPACITY = 1 << 16;
+
+    // Positions fewer moves than this from the start are split into separate tasks
+    private final static int SPLIT_DEPTH = 4;
+    // The default shared table grows with the threads, but never past this share of the heap
+    private final static int HEAP_SHARE = 4;
+    private final static int ENTRY_BYTES = 12; // See TranspositionTable
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final StripedTranspositionTable table;
+    private final long maxNodes;
+    private final ThreadLocal<Solver> probeSolvers;
+    private final ThreadLocal<Solver> sharedSolvers;
+
+    /**
+     * Creates a solver with a default sized table and node limit
+     *
+     * @param threads How many threads to search with
+     */
+    public ParallelSolver(int threads) {
+        this(threads, new StripedTranspositionTable(defaultCapacity(threads)),
+                Solver.DEFAULT_MAX_NODES, Solver.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * The default table holds TranspositionTable.DEFAULT_CAPACITY entries for every thread, capped at a quarter of the
+     * largest heap, and never fewer entries than a single threaded Solver gets
+     *
+     * @param threads How many threads will search the table
+     * @return The number of entries, a power of two
+     */
+    static int defaultCapacity(int threads) {
+        long wanted = (long) TranspositionTable.DEFAULT_CAPACITY * threads;
+        long affordable = Runtime.getRuntime().maxMemory() / HEAP_SHARE / ENTRY_BYTES;
+        long capacity = Math.max(TranspositionTable.DEFAULT_CAPACITY,
+                Math.min(Math.min(wanted, affordable), Integer.MAX_VALUE));
+        // Rounded down, since the table would round it up
+        return Integer.highestOneBit((int) capacity);
+    }
+
+    /**
+     * Creates a solver
+     *
+     * @param threads  How many threads to search with
+     * @param table    The table shared by all threads during the exhaustive search
+     * @param maxNodes How many positions can be searched by all threads together before giving up
+     * @param maxDepth How many moves deep a search can go before giving up on a line
+     */
+    public ParallelSolver(int threads, StripedTranspositionTable table, long maxNodes, int maxDepth) {
+        this.pool = new ForkJoinPool(threads);
+        this.threads = threads;
+        this.table = table;
+        this.maxNodes = maxNodes;
+        this.probeSolvers = ThreadLocal.withInitial(() ->
+                new Solver(new TranspositionTable(PROBE_TABLE_CAPACITY), maxNodes, maxDepth));
+        this.sharedSolvers = ThreadLocal.withInitial(() -> new Solver(table, maxNodes, maxDepth));
+    }
+
+    /**
+     * Decides whether a game can be won from its current position
+     *
+     * @param game The game to solve, which is not changed
+     * @return The result of the search
+     */
+    public SolveResult solve(Game game) {
+        return solve(PackedState.of(game));
+    }
+
+    /**
+     * Decides whether a game can be won from a position. Only one position is solved at a time, since each solve
+     * already uses every thread
+     *
+     * @param start The position to search from
+     * @return The result of the search
+     */
+    public synchronized SolveResult solve(PackedState start) {
+        if (start.isWon())
+            return new SolveResult(SolveResult.SOLVABLE, new int[0], 1);
+
+        SolveResult probeResult = probe(start);
+        if (probeResult.status != SolveResult.UNKNOWN)
+            return probeResult;
+
+        SolveResult result = searchSubtrees(start, maxNodes - probeResult.nodes);
+        return new SolveResult(result.status, result.getMoves(), probeResult.nodes + result.nodes);
+    }
+
+    /**
+     * Searches the subtrees of a position as fork-join tasks sharing the table, without probing first
+     *
+     * @param start    The position to search from, which is not won
+     * @param maxNodes How many positions can be searched by all threads together before giving up
+     * @return The result of the search
+     */
+    synchronized SolveResult searchSubtrees(PackedState start, long maxNodes) {
+        table.newSearch();
+        table.put(start.hash64(), TranspositionTable.PINNED);
+        SearchBudget budget = new SearchBudget(maxNodes);
+        AtomicBoolean incomplete = new AtomicBoolean();
+
+        int[] moves = pool.invoke(new SubtreeTask(start, 0, budget, incomplete));
+        long nodes = budget.used();
+
+        if (moves != null)
+            return new SolveResult(SolveResult.SOLVABLE, moves, nodes);
+        return new SolveResult(incomplete.get() ? SolveResult.UNKNOWN : SolveResult.UNSOLVABLE, new int[0], nodes);
+    }
+
+    /**
+     * Makes the probes Solver would make, on every thread at once
+     *
+     * @return The result of the first probe that decided the deal, or an unknown result with the nodes searched
+     */
+    private SolveResult probe(PackedState start) {
+        long maxProbes = maxNodes / 2 / Solver.PROBE_NODES;
+        AtomicInteger nextProbe = new AtomicInteger();
+        AtomicLong nodes = new AtomicLong();
+        AtomicReference<SolveResult> decided = new AtomicReference<>();
+        SearchBudget allProbes = new SearchBudget(Long.MAX_VALUE);
+
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                Solver solver = probeSolvers.get();
+                int probe;
+                while ((probe = nextProbe.getAndIncrement()) < maxProbes && !allProbes.isStopped()) {
+                    Random order = probe == 0 ? null : new Random(start.hash64() + probe);
+                    SolveResult result = solver.probe(start, order, new SearchBudget(Solver.PROBE_NODES, allProbes));
+                    nodes.addAndGet(result.nodes);
+
+                    if (result.status != SolveResult.UNKNOWN && decided.compareAndSet(null, result)) {
+                        allProbes.stop();
+                    }
+                }
+            }));
+        }
+        for (ForkJoinTask<?> worker : workers) {
+            worker.join();
+        }
+
+        SolveResult result = decided.get();
+        return new SolveResult(result == null ? SolveResult.UNKNOWN : result.status,
+                result == null ? new int[0] : result.getMoves(), nodes.get());
+    }
+
+    /**
+     * Stops the worker threads once the solves in progress are done
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Searches the subtree below one position. Near the start the children are split into more tasks, further down
+     * the subtree is searched by the worker's own Solver
+     */
+    private class SubtreeTask extends RecursiveTask<int[]> {
+        private final PackedState state;
+        private final int depth;
+        private final SearchBudget budget;
+        private final AtomicBoolean incomplete;
+
+        SubtreeTask(PackedState state, int depth, SearchBudget budget, AtomicBoolean incomplete) {
+            this.state = state;
+            this.depth = depth;
+            this.budget = budget;
+            this.incomplete = incomplete;
+        }
+
+        /**
+         * @return The moves that win from this task's position, or null if none were found
+         */
+        @Override
+        protected @Nullable int[] compute() {
+            if (budget.isStopped()) {
+                incomplete.set(true);
+                return null;
+            }
+
+            Solver solver = sharedSolvers.get();
+            if (depth >= SPLIT_DEPTH) {
+                SolveResult result = solver.search(state, budget);
+                if (result.isSolvable()) {
+                    budget.stop();
+                    return result.getMoves();
+                }
+                if (result.status == SolveResult.UNKNOWN) {
+                    incomplete.set(true);
+                }
+                return null;
+            }
+
+            int[] moves = new int[Solver.MAX_MOVES];
+            int count = solver.generateMoves(state, moves);
+            List<SubtreeTask> tasks = new ArrayList<>();
+            List<Integer> taskMoves = new ArrayList<>();
+
+            for (int i = 0; i < count; i++) {
+                PackedState child = Solver.applySearchMove(state, moves[i]);
+                if (child == null || !table.add(child.hash64(), TranspositionTable.PINNED))
+                    continue;
+
+                if (child.isWon()) {
+                    budget.stop();
+                    return Solver.expandSearchMove(moves[i], new int[0]);
+                }
+
+                tasks.add(new SubtreeTask(child, depth + 1, budget, incomplete));
+                taskMoves.add(moves[i]);
+            }
+
+            invokeAll(tasks);
+
+            for (int i = 0; i < tasks.size(); i++) {
+                int[] path = tasks.get(i).join();
+                if (path != null)
+                    return Solver.expandSearchMove(taskMoves.get(i), path);
+            }
+
+            table.put(state.hash64(), TranspositionTable.PINNED - 1);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+    The node limit of a search, shared between searches running at the same time so they can all be stopped at
+    once, either because one of them found a win or because together they used up the limit. Searches claim nodes
+    in small chunks so they rarely have to touch the shared counter.
+
+    A budget can also have a deadline, which is checked once per chunk so a search never runs much past it.
+ */
+
+package solitaire.solver;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+final class SearchBudget {
+    final static int CHUNK = 256;
+
+    private final long limit;
+    private final AtomicLong remaining;
+    @Nullable
+    private final SearchBudget parent;
+    private final boolean timed;
+    private final long deadline; // In System.nanoTime
+    private volatile boolean stopped;
+
+    /**
+     * @param limit How many nodes can be searched in total
+     */
+    SearchBudget(long limit) {
+        this(limit, null);
+    }
+
+    /**
+     * @param limit  How many nodes can be searched in total
+     * @param parent Another budget that stops this one when it is stopped, or null
+     */
+    SearchBudget(long limit, @Nullable SearchBudget parent) {
+        this(limit, parent, false, 0);
+    }
+
+    private SearchBudget(long limit, @Nullable SearchBudget parent, boolean timed, long deadline) {
+        this.limit = limit;
+        this.remaining = new AtomicLong(limit);
+        this.parent = parent;
+        this.timed = timed;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @param limit    How many nodes can be searched in total
+     * @param parent   Another budget that stops this one when it is stopped, or null
+     * @param deadline The System.nanoTime after which no more nodes can be claimed
+     * @return The budget
+     */
+    static SearchBudget withDeadline(long limit, @Nullable SearchBudget parent, long deadline) {
+        return new SearchBudget(limit, parent, true, deadline);
+    }
+
+    /**
+     * Claims the next CHUNK nodes
+     *
+     * @return False if the searches have been stopped, the limit has been used up or the deadline has passed
+     */
+    boolean claim() {
+        return !isStopped() && remaining.addAndGet(-CHUNK) >= 0 && !isPastDeadline();
+    }
+
+    /**
+     * @return True if this budget or its parent has a deadline that has passed
+     */
+    boolean isPastDeadline() {
+        return (timed && System.nanoTime() - deadline >= 0) || (parent != null && parent.isPastDeadline());
+    }
+
+    /**
+     * Makes every search using this budget give up the next time it claims nodes
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped || (parent != null && parent.isStopped());
+    }
+
+    /**
+     * @return Roughly how many nodes have been claimed, never more than the limit
+     */
+    long used() {
+        return Math.min(limit, limit - remaining.get());
+    }
+}
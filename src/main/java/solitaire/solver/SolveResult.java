@@ -0,0 +1,60 @@
+/*
+    The outcome of asking a Solver whether a deal can be won.
+ */
+
+package solitaire.solver;
+
+import solitaire.game.Move;
+
+public final class SolveResult {
+    public final static int SOLVABLE = 0;
+    public final static int UNSOLVABLE = 1;
+    public final static int UNKNOWN = 2; // The search ran out of nodes or was cancelled before it could decide
+
+    public final int status;
+    public final long nodes;
+    private final int[] moves;
+
+    /**
+     * @param status One of SOLVABLE, UNSOLVABLE or UNKNOWN
+     * @param moves  The moves that win the game, empty unless the status is SOLVABLE
+     * @param nodes  How many positions were searched
+     */
+    public SolveResult(int status, int[] moves, long nodes) {
+        this.status = status;
+        this.moves = moves;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return True if the game can be won
+     */
+    public boolean isSolvable() {
+        return status == SOLVABLE;
+    }
+
+    /**
+     * @return A copy of the moves that win the game, in the order they have to be applied. See Move
+     */
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    /**
+     * @return How many moves it takes to win the game with the found solution
+     */
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(status == SOLVABLE ? "solvable" : status == UNSOLVABLE ? "unsolvable" : "unknown")
+                .append(" after ").append(nodes).append(" nodes");
+        for (int move : moves) {
+            builder.append("\n  ").append(Move.toString(move));
+        }
+        return builder.toString();
+    }
+}
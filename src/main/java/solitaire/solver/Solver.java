@@ -0,0 +1,469 @@
+/*
+    Decides whether a game can be won by searching every reachable position depth first, using the same rules as
+    Game.canMoveStack and Game.cycleStock. Positions that were already searched are remembered in a
+    TranspositionTable so they are not searched again. When a win is found the moves leading to it are returned.
+
+    How long a search takes depends heavily on the first few moves it commits to, so the solver first makes many
+    short probes with a shuffled move order, and only searches exhaustively if none of them finds a win.
+
+    A Solver reuses its table and search stack between calls, so one instance should be kept per thread.
+ */
+
+package solitaire.solver;
+
+import org.jetbrains.annotations.Nullable;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+import solitaire.game.Rules;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Solver {
+    public final static long DEFAULT_MAX_NODES = 2000000;
+    public final static int DEFAULT_MAX_DEPTH = 2000;
+    public final static long PROBE_NODES = 5000;
+
+    // No position has more legal moves than this
+    final static int MAX_MOVES = 256;
+
+    // Searched moves can cycle the stock a number of times before the move itself, stored above the bits of Move
+    private final static int CYCLES_SHIFT = 16;
+    private final static int MOVE_MASK = (1 << CYCLES_SHIFT) - 1;
+
+    private final TranspositionTable table;
+    private final long maxNodes;
+    private final int maxDepth;
+
+    // The search stack, one entry per depth
+    private PackedState[] states;
+    private long[] keys;
+    private long[] nodesAtEntry;
+    private int[][] moveLists;
+    private int[] moveCounts;
+    private int[] nextMoves;
+
+    // The order of moves is shuffled during probes
+    @Nullable
+    private Random shuffle;
+
+    // Scratch space for move generation
+    private final int[] foundationRanks = new int[4];
+    private final int[] foundationStacks = new int[4];
+    private final int[] stockCards = new int[PackedState.CARD_COUNT];
+    private final int[] pileTops = new int[Game.MAIN_PILE_COUNT];
+    private final int[] pileCards = new int[PackedState.CARD_COUNT];
+    private int firstEmptyFoundation;
+    private int firstEmptyPile;
+
+    /**
+     * Creates a solver with a default sized table and node limit
+     */
+    public Solver() {
+        this(new TranspositionTable(), DEFAULT_MAX_NODES, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates a solver
+     *
+     * @param table    The table used to remember searched positions
+     * @param maxNodes How many positions can be searched before giving up with an unknown result
+     * @param maxDepth How many moves deep the search can go before giving up on a line
+     */
+    public Solver(TranspositionTable table, long maxNodes, int maxDepth) {
+        this.table = table;
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+
+        states = new PackedState[0];
+        keys = new long[0];
+        nodesAtEntry = new long[0];
+        moveLists = new int[0][];
+        moveCounts = new int[0];
+        nextMoves = new int[0];
+    }
+
+    /**
+     * Decides whether a game can be won from its current position
+     *
+     * @param game The game to solve, which is not changed
+     * @return The result of the search
+     */
+    public SolveResult solve(Game game) {
+        return solve(PackedState.of(game));
+    }
+
+    /**
+     * Decides whether a game can be won from a position
+     *
+     * @param start The position to search from
+     * @return The result of the search
+     */
+    public SolveResult solve(PackedState start) {
+        if (start.isWon())
+            return new SolveResult(SolveResult.SOLVABLE, new int[0], 1);
+
+        // Up to half of the nodes go to probes, the first one using the unshuffled move order. Probe orders are
+        // seeded by the position so the same position always gives the same result
+        long nodes = 0;
+        for (int probe = 0; nodes + PROBE_NODES <= maxNodes / 2; probe++) {
+            Random order = probe == 0 ? null : new Random(start.hash64() + probe);
+            SolveResult result = probe(start, order, new SearchBudget(PROBE_NODES));
+            nodes += result.nodes;
+            if (result.status != SolveResult.UNKNOWN)
+                return new SolveResult(result.status, result.getMoves(), nodes);
+        }
+
+        table.newSearch();
+        SolveResult result = search(start, new SearchBudget(maxNodes - nodes));
+        return new SolveResult(result.status, result.getMoves(), nodes + result.nodes);
+    }
+
+    /**
+     * Makes one probe from a position, starting with an empty table
+     *
+     * @param start  The position to search from
+     * @param order  The random order to shuffle moves with, or null to keep the usual order
+     * @param budget The node limit of the probe
+     * @return The result of the probe
+     */
+    SolveResult probe(PackedState start, @Nullable Random order, SearchBudget budget) {
+        table.newSearch();
+        shuffle = order;
+        try {
+            return search(start, budget);
+        } finally {
+            shuffle = null;
+        }
+    }
+
+    /**
+     * Searches depth first from a position until a win is found, every position has been searched, or the budget
+     * runs out. The table is not cleared first, so searches of several subtrees can share one table
+     *
+     * @param start  The position to search from
+     * @param budget The node limit of the search
+     * @return The result of the search
+     */
+    SolveResult search(PackedState start, SearchBudget budget) {
+        long nodes = 1;
+        long claimed = 0;
+        boolean incomplete = false;
+
+        int depth = 0;
+        long startKey = start.hash64();
+        table.put(startKey, TranspositionTable.PINNED);
+        enter(0, start, startKey, nodes);
+
+        while (depth >= 0) {
+            if (nodes >= claimed) {
+                if (!budget.claim())
+                    return new SolveResult(SolveResult.UNKNOWN, new int[0], nodes);
+                claimed += SearchBudget.CHUNK;
+            }
+
+            if (nextMoves[depth] == moveCounts[depth]) {
+                // Every move from here has been searched, so the position stays in the table as a dead end
+                table.put(keys[depth], (int) Math.min(nodes - nodesAtEntry[depth], TranspositionTable.PINNED - 1));
+                depth--;
+                continue;
+            }
+
+            int move = moveLists[depth][nextMoves[depth]++];
+            PackedState child = applySearchMove(states[depth], move);
+            if (child == null)
+                continue;
+
+            long key = child.hash64();
+            if (!table.add(key, TranspositionTable.PINNED))
+                continue;
+
+            nodes++;
+            if (child.isWon())
+                return new SolveResult(SolveResult.SOLVABLE, pathMoves(depth), nodes);
+
+            if (depth + 1 >= maxDepth) {
+                incomplete = true;
+                continue;
+            }
+
+            depth++;
+            enter(depth, child, key, nodes);
+        }
+
+        return new SolveResult(incomplete ? SolveResult.UNKNOWN : SolveResult.UNSOLVABLE, new int[0], nodes);
+    }
+
+    /**
+     * Applies a move made by generateMoves, which may cycle the stock first
+     *
+     * @return The position after the move, or null if it is not legal
+     */
+    static @Nullable PackedState applySearchMove(PackedState state, int move) {
+        return state.cycleStock(move >>> CYCLES_SHIFT).apply(move & MOVE_MASK);
+    }
+
+    /**
+     * Turns a move made by generateMoves into the Move sequence Game.applyMove takes, followed by more moves
+     *
+     * @param move The move made by generateMoves
+     * @param rest The moves that follow it
+     * @return The stock cycles of the move, the move itself, then the rest
+     */
+    static int[] expandSearchMove(int move, int[] rest) {
+        int cycles = move >>> CYCLES_SHIFT;
+        int[] moves = new int[cycles + 1 + rest.length];
+        Arrays.fill(moves, 0, cycles, Move.CYCLE_STOCK);
+        moves[cycles] = move & MOVE_MASK;
+        System.arraycopy(rest, 0, moves, cycles + 1, rest.length);
+        return moves;
+    }
+
+    /**
+     * Pushes a position onto the search stack. It must already be pinned in the table so cycles back to it are cut
+     */
+    private void enter(int depth, PackedState state, long key, long nodes) {
+        if (depth >= states.length) {
+            grow(Math.max(64, states.length * 2));
+        }
+
+        states[depth] = state;
+        keys[depth] = key;
+        nodesAtEntry[depth] = nodes;
+        moveCounts[depth] = generateMoves(state, moveLists[depth]);
+        nextMoves[depth] = 0;
+
+        if (shuffle != null) {
+            // Swap about a third of the moves so the probe still mostly follows the usual order
+            int[] list = moveLists[depth];
+            for (int i = moveCounts[depth] - 1; i > 0; i--) {
+                if (shuffle.nextInt(3) == 0) {
+                    int j = shuffle.nextInt(i + 1);
+                    int swap = list[i];
+                    list[i] = list[j];
+                    list[j] = swap;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The moves taken from the start position to the position after the last move made at lastDepth
+     */
+    private int[] pathMoves(int lastDepth) {
+        int length = 0;
+        for (int d = 0; d <= lastDepth; d++) {
+            length += (moveLists[d][nextMoves[d] - 1] >>> CYCLES_SHIFT) + 1;
+        }
+
+        int[] path = new int[length];
+        int i = 0;
+        for (int d = 0; d <= lastDepth; d++) {
+            int move = moveLists[d][nextMoves[d] - 1];
+            for (int cycle = 0; cycle < move >>> CYCLES_SHIFT; cycle++) {
+                path[i++] = Move.CYCLE_STOCK;
+            }
+            path[i++] = move & MOVE_MASK;
+        }
+        return path;
+    }
+
+    private void grow(int size) {
+        int oldSize = states.length;
+        states = Arrays.copyOf(states, size);
+        keys = Arrays.copyOf(keys, size);
+        nodesAtEntry = Arrays.copyOf(nodesAtEntry, size);
+        moveCounts = Arrays.copyOf(moveCounts, size);
+        nextMoves = Arrays.copyOf(nextMoves, size);
+        moveLists = Arrays.copyOf(moveLists, size);
+        for (int i = oldSize; i < size; i++) {
+            moveLists[i] = new int[MAX_MOVES];
+        }
+    }
+
+    /**
+     * Lists the moves worth searching from a position, most promising first. Instead of cycling the stock one card at
+     * a time, every card the stock can be cycled to is played straight away, with the cycles stored in the upper bits
+     * of the move. Moves that only lead to a mirror image of another move's position, like putting a king on the
+     * second of two empty piles, are left out. When a card can be put on a foundation without ever being needed in
+     * the main piles again, that is the only move listed.
+     *
+     * @param state The position
+     * @param moves The buffer to write the moves to
+     * @return How many moves were written
+     */
+    int generateMoves(PackedState state, int[] moves) {
+        firstEmptyFoundation = -1;
+        for (int suit = 0; suit < 4; suit++) {
+            foundationRanks[suit] = -1;
+            foundationStacks[suit] = -1;
+        }
+        for (int f = Game.STACK_FOUNDATION_FIRST; f < Game.STACK_DISPLAYSTOCK; f++) {
+            int top = state.getTopCardId(f);
+            if (top < 0) {
+                if (firstEmptyFoundation < 0)
+                    firstEmptyFoundation = f;
+            } else {
+                foundationRanks[top / 13] = top % 13;
+                foundationStacks[top / 13] = f;
+            }
+        }
+
+        firstEmptyPile = -1;
+        for (int p = 0; p < Game.MAIN_PILE_COUNT; p++) {
+            pileTops[p] = state.getTopCardId(p);
+            if (pileTops[p] < 0 && firstEmptyPile < 0) {
+                firstEmptyPile = p;
+            }
+        }
+
+        int count = 0;
+
+        // Moves onto the foundations, taking a safe one right away
+        for (int source = 0; source <= Game.STACK_DISPLAYSTOCK; source++) {
+            if (source == Game.STACK_FOUNDATION_FIRST)
+                source = Game.STACK_DISPLAYSTOCK;
+
+            int card = state.getTopCardId(source);
+            if (card < 0 || !canGoToFoundation(card))
+                continue;
+
+            int move = Move.of(source, foundationFor(card), 1);
+            if (isSafeToFoundation(card)) {
+                moves[0] = move;
+                return 1;
+            }
+            moves[count++] = move;
+        }
+
+        // Moves of whole face up runs, which turn over a card or empty a pile
+        for (int source = 0; source < Game.MAIN_PILE_COUNT; source++) {
+            int size = state.getCardCount(source);
+            int firstUp = state.getFirstFaceUpIndex(source);
+            if (firstUp < size) {
+                count = addMovesToPiles(state.getCardId(source, firstUp), source, size - firstUp, firstUp > 0,
+                        0, moves, count);
+            }
+        }
+
+        int displayTop = state.getTopCardId(Game.STACK_DISPLAYSTOCK);
+        if (displayTop >= 0) {
+            count = addMovesToPiles(displayTop, Game.STACK_DISPLAYSTOCK, 1, true, 0, moves, count);
+        }
+
+        count = addStockMoves(state, moves, count);
+
+        // Moves of part of a face up run
+        for (int source = 0; source < Game.MAIN_PILE_COUNT; source++) {
+            int size = state.getCardIds(source, pileCards, 0);
+            for (int index = state.getFirstFaceUpIndex(source) + 1; index < size; index++) {
+                count = addMovesToPiles(pileCards[index], source, size - index, true, 0, moves, count);
+            }
+        }
+
+        // Moves back off the foundations
+        for (int source = Game.STACK_FOUNDATION_FIRST; source < Game.STACK_DISPLAYSTOCK; source++) {
+            int top = state.getTopCardId(source);
+            if (top >= 0) {
+                count = addMovesToPiles(top, source, 1, true, 0, moves, count);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds a move for every time the stock can be cycled to a card that can then be played, going around the stock
+     * once. See PackedState.cycleStock for why the order of the stock cards never changes
+     */
+    private int addStockMoves(PackedState state, int[] moves, int count) {
+        int hiddenDisplay = state.getCardCount(Game.STACK_HIDDENDISPLAYSTOCK);
+        int display = state.getCardCount(Game.STACK_DISPLAYSTOCK);
+        int hidden = state.getCardCount(Game.STACK_HIDDENSTOCK);
+        int total = hiddenDisplay + display + hidden;
+
+        state.getCardIds(Game.STACK_HIDDENDISPLAYSTOCK, stockCards, 0);
+        state.getCardIds(Game.STACK_DISPLAYSTOCK, stockCards, hiddenDisplay);
+        state.getCardIds(Game.STACK_HIDDENSTOCK, stockCards, hiddenDisplay + display);
+
+        int startHiddenDisplay = hiddenDisplay;
+        int startDisplay = display;
+        for (int cycles = 1; cycles <= total + 1; cycles++) {
+            if (hidden > 0) {
+                hidden--;
+                display++;
+                if (display > 3) {
+                    display--;
+                    hiddenDisplay++;
+                }
+            } else if (hiddenDisplay > 0) {
+                hidden = hiddenDisplay + display;
+                hiddenDisplay = 0;
+                display = 0;
+            } else {
+                break;
+            }
+
+            if (hiddenDisplay == startHiddenDisplay && display == startDisplay)
+                break;
+            if (display == 0)
+                continue;
+
+            int card = stockCards[hiddenDisplay + display - 1];
+            int cycleBits = cycles << CYCLES_SHIFT;
+            if (canGoToFoundation(card)) {
+                moves[count++] = cycleBits | Move.of(Game.STACK_DISPLAYSTOCK, foundationFor(card), 1);
+            }
+            count = addMovesToPiles(card, Game.STACK_DISPLAYSTOCK, 1, true, cycleBits, moves, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds every legal move of cards onto the main piles. A king is only moved to the first empty pile, and only
+     * when it is not already at the bottom of a pile
+     */
+    private int addMovesToPiles(int card, int source, int cardCount, boolean canMoveKing,
+                                int cycleBits, int[] moves, int count) {
+        if (card % 13 == 12) {
+            if (firstEmptyPile >= 0 && canMoveKing && firstEmptyPile != source) {
+                moves[count++] = cycleBits | Move.of(source, firstEmptyPile, cardCount);
+            }
+            return count;
+        }
+
+        for (int dest = 0; dest < Game.MAIN_PILE_COUNT; dest++) {
+            int top = pileTops[dest];
+            if (dest != source && Rules.canPutOnPile(card, top)) {
+                moves[count++] = cycleBits | Move.of(source, dest, cardCount);
+            }
+        }
+        return count;
+    }
+
+    private boolean canGoToFoundation(int card) {
+        return card % 13 == foundationRanks[card / 13] + 1;
+    }
+
+    /**
+     * @return The foundation a card that can go to the foundations goes to, aces always going to the first empty one
+     */
+    private int foundationFor(int card) {
+        return card % 13 == 0 ? firstEmptyFoundation : foundationStacks[card / 13];
+    }
+
+    /**
+     * A card is safe to put on its foundation when no card that could go on it in the main piles still needs it,
+     * meaning both foundations of the other color already hold the card one rank lower
+     */
+    private boolean isSafeToFoundation(int card) {
+        int rank = card % 13;
+        if (rank <= 1)
+            return true;
+
+        int otherColor = card >= 26 ? 0 : 2;
+        return foundationRanks[otherColor] >= rank - 1 && foundationRanks[otherColor + 1] >= rank - 1;
+    }
+}
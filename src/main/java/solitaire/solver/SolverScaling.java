@@ -0,0 +1,51 @@
+/*
+    Measures how the parallel solver scales: the same deals are solved with 1, 2, 4... threads up to the number of
+    cores and the throughput and speedup over one thread are printed.
+
+    Deals 0 to deals - 1 are solved, so runs on different machines can be compared.
+
+    Usage: SolverScaling [deals] [maxThreads]
+ */
+
+package solitaire.solver;
+
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+
+public class SolverScaling {
+    public static void main(String[] args) {
+        int dealCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        PackedState[] deals = new PackedState[dealCount];
+        for (int i = 0; i < dealCount; i++) {
+            deals[i] = PackedState.of(new Game(null, i));
+        }
+
+        System.out.println("threads  deals/s  nodes/s  solved  speedup");
+        double singleThreaded = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ParallelSolver solver = new ParallelSolver(threads);
+            solver.solve(deals[0]); // Warm up
+
+            int solved = 0;
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (PackedState deal : deals) {
+                SolveResult result = solver.solve(deal);
+                nodes += result.nodes;
+                if (result.isSolvable()) {
+                    solved++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            solver.shutdown();
+
+            if (threads == 1) {
+                singleThreaded = seconds;
+            }
+            System.out.printf("%7d  %7.1f  %7.0f  %6d  %7.2f%n", threads, dealCount / seconds, nodes / seconds,
+                    solved, singleThreaded / seconds);
+        }
+    }
+}
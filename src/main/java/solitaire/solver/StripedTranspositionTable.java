@@ -0,0 +1,59 @@
+/*
+    A TranspositionTable that can be shared by searches running on several threads. Buckets are guarded by a fixed
+    number of locks, each lock covering every bucket whose index matches it in the low bits, so threads only wait on
+    each other when they touch buckets that share a stripe. newSearch must only be called while no search is using
+    the table.
+ */
+
+package solitaire.solver;
+
+public class StripedTranspositionTable extends TranspositionTable {
+    private final static int STRIPES = 1024;
+
+    private final Object[] locks;
+
+    /**
+     * Creates a table with the default capacity
+     */
+    public StripedTranspositionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of entries, see TranspositionTable
+     */
+    public StripedTranspositionTable(int capacity) {
+        super(capacity);
+
+        locks = new Object[STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean contains(long key) {
+        synchronized (lockFor(key)) {
+            return super.contains(key);
+        }
+    }
+
+    @Override
+    public boolean add(long key, int weight) {
+        // Checking and storing under one lock, so two threads can not both claim the same position
+        synchronized (lockFor(key)) {
+            return super.add(key, weight);
+        }
+    }
+
+    @Override
+    public boolean put(long key, int weight) {
+        synchronized (lockFor(key)) {
+            return super.put(key, weight);
+        }
+    }
+
+    private Object lockFor(long key) {
+        return locks[bucketOf(key) & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,144 @@
+/*
+    A fixed size table of position hashes that the solver has already searched, so positions reached again through a
+    different order of moves are not searched twice. Memory use never grows after the table is created.
+
+    The table is split into buckets of four entries. When a bucket is full the entry that saved the least work (the
+    smallest searched subtree) is evicted. Entries on the current search path are pinned with the largest weight so
+    they are only evicted when every entry of the bucket is pinned. Starting a new search is O(1): every entry carries
+    the generation of the search that stored it, and entries of older generations count as empty.
+ */
+
+package solitaire.solver;
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+    public final static int DEFAULT_CAPACITY = 1 << 20;
+    public final static int PINNED = 0xFFFFFF;
+
+    private final static int WAYS = 4;
+    private final static int GENERATION_SHIFT = 24;
+    private final static int MAX_GENERATION = 0xFF;
+
+    private final long[] keys;
+    private final int[] entries; // generation << GENERATION_SHIFT | weight
+    private final int bucketMask;
+    private int generation;
+
+    /**
+     * Creates a table with the default capacity, which uses about 12 MB
+     */
+    public TranspositionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a table that holds at least the given number of entries. Each entry uses 12 bytes
+     *
+     * @param capacity The number of entries, rounded up to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        int buckets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+        if (buckets * WAYS < capacity) {
+            buckets <<= 1;
+        }
+        keys = new long[buckets * WAYS];
+        entries = new int[buckets * WAYS];
+        bucketMask = buckets - 1;
+        generation = 1;
+    }
+
+    /**
+     * Forgets every entry so the table can be reused for a new search
+     */
+    public void newSearch() {
+        generation++;
+        if (generation > MAX_GENERATION) {
+            Arrays.fill(entries, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @param key The hash of a position
+     * @return True if the position has been stored during the current search
+     */
+    public boolean contains(long key) {
+        int start = bucketStart(key);
+        for (int i = start; i < start + WAYS; i++) {
+            if (keys[i] == key && entries[i] >>> GENERATION_SHIFT == generation)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores a position unless it is already stored
+     *
+     * @param key    The hash of the position
+     * @param weight How much work the entry saves, or PINNED while the position is on the search path
+     * @return True if the position was not stored before, even if it could not be stored now because every entry of
+     * its bucket is pinned
+     */
+    public boolean add(long key, int weight) {
+        if (contains(key))
+            return false;
+
+        put(key, weight);
+        return true;
+    }
+
+    /**
+     * Stores a position or updates the weight of an already stored position
+     *
+     * @param key    The hash of the position
+     * @param weight How much work the entry saves, or PINNED while the position is on the search path
+     * @return False if the position could not be stored because every entry of its bucket is pinned
+     */
+    public boolean put(long key, int weight) {
+        weight = Math.min(Math.max(weight, 0), PINNED);
+        int start = bucketStart(key);
+        int victim = -1;
+        int victimWeight = Integer.MAX_VALUE;
+
+        for (int i = start; i < start + WAYS; i++) {
+            boolean current = entries[i] >>> GENERATION_SHIFT == generation;
+            if (current && keys[i] == key) {
+                entries[i] = generation << GENERATION_SHIFT | weight;
+                return true;
+            }
+
+            int entryWeight = current ? entries[i] & PINNED : -1;
+            if (entryWeight < victimWeight) {
+                victim = i;
+                victimWeight = entryWeight;
+            }
+        }
+
+        if (victimWeight == PINNED)
+            return false;
+
+        keys[victim] = key;
+        entries[victim] = generation << GENERATION_SHIFT | weight;
+        return true;
+    }
+
+    /**
+     * @return How many entries the table can hold
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param key The hash of a position
+     * @return The index of the bucket the position is stored in
+     */
+    int bucketOf(long key) {
+        return (int) ((key ^ (key >>> 32)) & bucketMask);
+    }
+
+    private int bucketStart(long key) {
+        return bucketOf(key) * WAYS;
+    }
+}
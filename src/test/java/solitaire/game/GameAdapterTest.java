@@ -0,0 +1,120 @@
+/*
+    Checks that games survive being turned into JSON and back, and that a save written by the first version of the
+    game, with an object for every card and the selected stack, still loads with every card where it was.
+ */
+
+package solitaire.game;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+import solitaire.save.SaveFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GameAdapterTest {
+    private final static int GAMES = 200;
+
+    @Test
+    public void gamesRoundTrip() {
+        Random random = new Random(22);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber * 7919);
+            for (int i = random.nextInt(100); i > 0; i--) {
+                game.applyMove(moves[random.nextInt(game.getLegalMoves(moves))]);
+            }
+            game.minutes = random.nextInt(60);
+            game.seconds = random.nextInt(60);
+
+            String json = SaveFile.GSON.toJson(game);
+            Game loaded = SaveFile.GSON.fromJson(json, Game.class);
+
+            assertEquals(PackedState.of(game), PackedState.of(loaded));
+            assertEquals(game.moves, loaded.moves);
+            assertEquals(game.minutes, loaded.minutes);
+            assertEquals(game.seconds, loaded.seconds);
+            assertEquals(game.getDealNumber(), loaded.getDealNumber());
+            assertEquals(json, SaveFile.GSON.toJson(loaded));
+        }
+    }
+
+    @Test
+    public void firstVersionSaveLoads() throws IOException {
+        String json = readResource("/saves/baseline.json");
+        Game game = SaveFile.GSON.fromJson(json, Game.class);
+        JsonObject expected = new JsonParser().parse(json).getAsJsonObject();
+
+        JsonArray foundations = expected.getAsJsonArray("foundationStacks");
+        for (int i = 0; i < Game.FOUNDATION_COUNT; i++) {
+            assertStack(foundations.get(i), game, Game.STACK_FOUNDATION_FIRST + i);
+        }
+        JsonArray piles = expected.getAsJsonArray("mainPiles");
+        for (int i = 0; i < Game.MAIN_PILE_COUNT; i++) {
+            assertStack(piles.get(i), game, i);
+        }
+        assertStack(expected.get("hiddenStock"), game, Game.STACK_HIDDENSTOCK);
+        assertStack(expected.get("displayStock"), game, Game.STACK_DISPLAYSTOCK);
+        assertStack(expected.get("hiddenDisplayStock"), game, Game.STACK_HIDDENDISPLAYSTOCK);
+
+        assertEquals(5, game.moves);
+        assertEquals(3, game.minutes);
+        assertEquals(42, game.seconds);
+        // Saved before games had deal numbers
+        assertEquals(0, game.getDealNumber());
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void missingStackIsRejected() {
+        JsonObject json = SaveFile.GSON.toJsonTree(new Game((GameListener) null, 1)).getAsJsonObject();
+        json.remove("hiddenStock");
+        SaveFile.GSON.fromJson(json, Game.class);
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void extraPileIsRejected() {
+        JsonObject json = SaveFile.GSON.toJsonTree(new Game((GameListener) null, 1)).getAsJsonObject();
+        JsonArray piles = json.getAsJsonArray("mainPiles");
+        piles.add(piles.get(0));
+        SaveFile.GSON.fromJson(json, Game.class);
+    }
+
+    /**
+     * Checks the cards of a stack against a stack saved with an object for every card
+     */
+    private static void assertStack(JsonElement expected, Game game, int stackId) {
+        JsonArray cards = expected.getAsJsonObject().getAsJsonArray("cards");
+        CardStack stack = game.getStack(stackId);
+        assertEquals("Stack " + stackId, cards.size(), stack.getCardCount());
+
+        for (int i = 0; i < cards.size(); i++) {
+            JsonObject card = cards.get(i).getAsJsonObject();
+            assertEquals("Stack " + stackId + " card " + i, card.get("id").getAsInt(), stack.getCardId(i));
+            assertEquals("Stack " + stackId + " card " + i, card.get("isFaceUp").getAsBoolean(), stack.isFaceUp(i));
+        }
+    }
+
+    private static String readResource(String name) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (InputStream in = GameAdapterTest.class.getResourceAsStream(name);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+}
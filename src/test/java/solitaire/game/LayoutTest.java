@@ -0,0 +1,83 @@
+/*
+    Compares the hit tests of Layout with a brute force search over where every card is drawn. Points all over the
+    board are tested in positions from seeded random games, and Layout has to find the same stack and the same card as
+    looking through the rectangles of every card, the card drawn last winning.
+ */
+
+package solitaire.game;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LayoutTest {
+    private final static int GAMES = 20;
+    private final static int POSITIONS_PER_GAME = 4;
+    private final static int MOVES_BETWEEN_POSITIONS = 25;
+    private final static int STEP = 3;
+
+    @Test
+    public void hitTestsMatchDrawnCards() {
+        Random random = new Random(17);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+
+            for (int position = 0; position < POSITIONS_PER_GAME; position++) {
+                checkEveryPoint(game, "Deal " + dealNumber + " position " + position);
+
+                for (int i = 0; i < MOVES_BETWEEN_POSITIONS; i++) {
+                    int count = game.getLegalMoves(moves);
+                    if (count == 0)
+                        break;
+                    game.applyMove(moves[random.nextInt(count)]);
+                }
+            }
+        }
+    }
+
+    private static void checkEveryPoint(Game game, String position) {
+        for (int y = -STEP; y < Game.BOARD_HEIGHT + 400; y += STEP) {
+            for (int x = -STEP; x < Game.BOARD_WIDTH + STEP; x += STEP) {
+                int stackId = Layout.NONE;
+                int index = Layout.NONE;
+
+                for (int stack = 0; stack < Game.STACK_HIDDENDISPLAYSTOCK; stack++) {
+                    int hit = drawnCardAt(game, stack, x, y);
+                    if (hit != Layout.NONE || (game.getStack(stack).getCardCount() == 0
+                            && inCard(Layout.stackX(stack), Layout.stackY(stack), x, y))) {
+                        assertEquals(position + ": two stacks at " + x + ", " + y, Layout.NONE, stackId);
+                        stackId = stack;
+                        index = hit;
+                    }
+                }
+
+                String point = position + " at " + x + ", " + y;
+                assertEquals(point, stackId, Layout.stackAt(game, x, y));
+                if (stackId != Layout.NONE) {
+                    assertEquals(point, index, Layout.cardAt(game, stackId, x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The index of the card of a stack drawn on top at a point, or NONE
+     */
+    private static int drawnCardAt(Game game, int stackId, int x, int y) {
+        int hit = Layout.NONE;
+        for (int i = 0; i < game.getStack(stackId).getCardCount(); i++) {
+            if (inCard(Layout.cardX(game, stackId, i), Layout.cardY(game, stackId, i), x, y)) {
+                hit = i;
+            }
+        }
+        return hit;
+    }
+
+    private static boolean inCard(int left, int top, int x, int y) {
+        return x >= left && x < left + Layout.CARD_WIDTH && y >= top && y < top + Layout.CARD_HEIGHT;
+    }
+}
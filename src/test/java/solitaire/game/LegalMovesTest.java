@@ -0,0 +1,73 @@
+/*
+    Checks the move generators of Game and PackedState against brute force: in positions reached by seeded random
+    play, every move of every count between every pair of stacks is tried with PackedState.canApply, and the moves it
+    allows have to be exactly the moves that are generated.
+ */
+
+package solitaire.game;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class LegalMovesTest {
+    private final static int GAMES = 200;
+    private final static int MOVES_PER_GAME = 150;
+
+    @Test
+    public void generatedMovesMatchBruteForce() {
+        Random random = new Random(8);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        int[] packedMoves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+
+            for (int i = 0; i < MOVES_PER_GAME; i++) {
+                PackedState state = PackedState.of(game);
+                int count = game.getLegalMoves(moves);
+                int packedCount = state.getLegalMoves(packedMoves);
+
+                String position = "Deal " + dealNumber + " after " + i + " moves";
+                assertArrayEquals(position, Arrays.copyOf(moves, count), Arrays.copyOf(packedMoves, packedCount));
+
+                int[] generated = Arrays.copyOf(moves, count);
+                Arrays.sort(generated);
+                assertArrayEquals(position, bruteForce(state), generated);
+
+                if (count == 0)
+                    break;
+                game.applyMove(moves[random.nextInt(count)]);
+            }
+        }
+    }
+
+    /**
+     * @return Every move canApply allows, sorted. Stock cycles only count when they move a card
+     */
+    private static int[] bruteForce(PackedState state) {
+        int[] legal = new int[Move.MAX_LEGAL_MOVES];
+        int count = 0;
+        for (int from = 0; from < Game.STACK_COUNT; from++) {
+            for (int to = 0; to < Game.STACK_COUNT; to++) {
+                for (int cards = 1; cards <= PackedState.CARD_COUNT; cards++) {
+                    int move = Move.of(from, to, cards);
+                    if (move != Move.REDO && state.canApply(move)) {
+                        legal[count++] = move;
+                    }
+                }
+            }
+        }
+
+        if (state.getCardCount(Game.STACK_HIDDENSTOCK) > 0 || state.getCardCount(Game.STACK_HIDDENDISPLAYSTOCK) > 0) {
+            legal[count++] = Move.CYCLE_STOCK;
+        }
+
+        int[] sorted = Arrays.copyOf(legal, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
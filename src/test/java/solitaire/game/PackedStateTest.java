@@ -0,0 +1,141 @@
+/*
+    Plays seeded random games three ways at once: through Game.applyMove, through clicks on Game.onClick, and on a
+    PackedState. After every move the three have to hold the same cards, so PackedState and the move API keep the
+    rules of clicking.
+ */
+
+package solitaire.game;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedStateTest {
+    private final static int GAMES = 200;
+    private final static int MOVES_PER_GAME = 300;
+
+    @Test
+    public void bytesRoundTrip() {
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            PackedState state = PackedState.of(new Game((GameListener) null, dealNumber));
+            assertEquals(PackedState.SIZE, state.toBytes().length);
+            assertEquals(state, PackedState.fromBytes(state.toBytes()));
+            assertEquals(state, PackedState.of(state.toGame(dealNumber)));
+        }
+    }
+
+    @Test
+    public void impossibleCardCountsAreRejected() {
+        byte[] dealt = PackedState.of(new Game((GameListener) null, 5)).toBytes();
+
+        // Each still holds 52 cards in all, but one stack holds fewer than none or more than it can
+        assertRejected(dealt, 0, -2, Game.STACK_HIDDENSTOCK, 2);
+        assertRejected(dealt, 1, -3, 2, 3);
+        assertRejected(dealt, 0, 13, Game.STACK_HIDDENSTOCK, -13);
+        assertRejected(dealt, Game.STACK_DISPLAYSTOCK, 4, Game.STACK_HIDDENSTOCK, -4);
+        assertRejected(dealt, Game.STACK_FOUNDATION_FIRST, 14, Game.STACK_HIDDENSTOCK, -14);
+    }
+
+    @Test
+    public void movesAndClicksMatchPackedState() {
+        Random random = new Random(2);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        int[] clickedMoves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+            Game clicked = new Game((GameListener) null, dealNumber);
+            PackedState state = PackedState.of(game);
+
+            for (int i = 0; i < MOVES_PER_GAME && !game.checkWinConditions(); i++) {
+                int count = game.getLegalMoves(moves);
+                assertEquals(count, clicked.getLegalMoves(clickedMoves));
+                assertArrayEquals(Arrays.copyOf(moves, count), Arrays.copyOf(clickedMoves, count));
+                if (count == 0)
+                    break;
+
+                int move = moves[random.nextInt(count)];
+                assertTrue(state.canApply(move));
+                state = state.apply(move);
+                assertNotNull(state);
+                assertTrue(Move.toString(move), game.applyMove(move));
+                click(clicked, move);
+
+                assertEquals("Deal " + dealNumber + " after " + Move.toString(move), state, PackedState.of(game));
+                assertEquals("Deal " + dealNumber + " after " + Move.toString(move), state,
+                        PackedState.of(clicked));
+                assertEquals(game.moves, clicked.moves);
+            }
+        }
+    }
+
+    @Test
+    public void illegalMovesChangeNothing() {
+        Random random = new Random(3);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+            for (int i = 0; i < 50; i++) {
+                int count = game.getLegalMoves(moves);
+                game.applyMove(moves[random.nextInt(count)]);
+            }
+
+            PackedState before = PackedState.of(game);
+            for (int from = 0; from < Game.STACK_COUNT; from++) {
+                for (int to = 0; to < Game.STACK_COUNT; to++) {
+                    for (int count = 0; count <= 13; count++) {
+                        int move = Move.of(from, to, count);
+                        if (move == Move.CYCLE_STOCK || move == Move.UNDO || move == Move.REDO || before.canApply(move))
+                            continue;
+
+                        assertFalse(Move.toString(move), game.moveCards(from, count, to));
+                        assertEquals(before, PackedState.of(game));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the card counts of two stacks and checks that the result is not read as a state
+     */
+    private static void assertRejected(byte[] bytes, int stackId, int change, int otherStackId, int otherChange) {
+        byte[] changed = bytes.clone();
+        changed[stackId] += change;
+        changed[otherStackId] += otherChange;
+        try {
+            PackedState.fromBytes(changed);
+            fail("Read counts " + Arrays.toString(Arrays.copyOf(changed, Game.STACK_COUNT)));
+        } catch (IllegalArgumentException e) {
+            // Rejected
+        }
+    }
+
+    /**
+     * Makes a move by clicking on the cards to move and then on the stack to move them to, like a player would
+     */
+    private static void click(Game game, int move) {
+        if (move == Move.CYCLE_STOCK) {
+            game.onClick(Layout.stackX(Game.STACK_HIDDENSTOCK) + 1, Layout.stackY(Game.STACK_HIDDENSTOCK) + 1);
+            return;
+        }
+
+        int from = Move.fromStack(move);
+        int to = Move.toStack(move);
+        clickCard(game, from, game.getStack(from).getCardCount() - Move.count(move));
+        clickCard(game, to, Math.max(0, game.getStack(to).getCardCount() - 1));
+    }
+
+    private static void clickCard(Game game, int stackId, int index) {
+        game.onClick(Layout.cardX(game, stackId, index) + 1, Layout.cardY(game, stackId, index) + 1);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Adds seeded random hashes to SeenPositions and to a LinkedHashSet that forgets its oldest entry the same way, and
+    checks that both remember the same hashes. Most hashes share a few home slots, so long probe runs are moved back
+    when the oldest hash is forgotten. Also checks that cycling the stock of a game comes back to a seen position.
+ */
+
+package solitaire.game;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SeenPositionsTest {
+    private final static int CAPACITY = 100;
+    private final static int STOCK_CARDS = 24;
+
+    @Test
+    public void remembersTheNewestHashes() {
+        Random random = new Random(21);
+        SeenPositions seen = new SeenPositions(CAPACITY);
+        LinkedHashSet<Long> expected = new LinkedHashSet<>();
+
+        for (int i = 0; i < 20000; i++) {
+            // Few different low bits, so many hashes want the same slots
+            long hash = random.nextInt(4) == 0 ? random.nextLong() : (random.nextLong() << 4) | random.nextInt(8);
+            if (random.nextInt(4) == 0 && !expected.isEmpty()) {
+                // Adding a remembered hash again changes nothing
+                hash = expected.iterator().next();
+            }
+
+            boolean added = !expected.contains(hash);
+            if (added) {
+                if (expected.size() == CAPACITY) {
+                    Iterator<Long> oldest = expected.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                expected.add(hash);
+            }
+            assertEquals(added, seen.add(hash));
+            assertEquals(expected.size(), seen.size());
+
+            if (i % 100 == 0) {
+                for (long remembered : expected) {
+                    assertTrue(seen.contains(remembered));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void zeroIsAHashLikeAnyOther() {
+        SeenPositions seen = new SeenPositions(1);
+        assertFalse(seen.contains(0));
+        assertTrue(seen.add(0));
+        assertTrue(seen.contains(0));
+        assertFalse(seen.add(0));
+
+        assertTrue(seen.add(1));
+        assertFalse(seen.contains(0));
+
+        seen.clear();
+        assertEquals(0, seen.size());
+        assertFalse(seen.contains(1));
+    }
+
+    @Test
+    public void cyclingTheStockComesBackToASeenPosition() {
+        Game game = new Game((GameListener) null, 21);
+        SeenPositions seen = new SeenPositions(CAPACITY);
+        assertTrue(seen.add(game.getPositionHash()));
+
+        int cycles = 0;
+        do {
+            assertTrue(game.applyMove(Move.CYCLE_STOCK));
+            cycles++;
+        } while (seen.add(game.getPositionHash()) && cycles <= STOCK_CARDS + 1);
+
+        // Drawing every stock card and turning the stock over again leads back to the deal
+        assertEquals(STOCK_CARDS + 1, cycles);
+        assertEquals(PackedState.of(new Game((GameListener) null, 21)), PackedState.of(game));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+    Plays seeded random games, recording the PackedState after every move, then walks the history with undo and redo.
+    Every step has to land on the recorded state, and redo has to follow the moves made after undoing instead of the
+    ones that were undone. The position hash the game keeps up to date has to match the hash of the recorded state.
+ */
+
+package solitaire.game;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UndoRedoTest {
+    private final static int GAMES = 200;
+    private final static int MOVES_PER_GAME = 200;
+
+    @Test
+    public void undoAndRedoReturnToRecordedStates() {
+        Random random = new Random(9);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+            List<PackedState> states = new ArrayList<>();
+            states.add(PackedState.of(game));
+
+            for (int i = 0; i < MOVES_PER_GAME; i++) {
+                int count = game.getLegalMoves(moves);
+                if (count == 0)
+                    break;
+
+                game.applyMove(moves[random.nextInt(count)]);
+                PackedState state = PackedState.of(game);
+                // Cycling an empty stock records nothing, so it is not a step of the history either
+                if (!state.equals(states.get(states.size() - 1))) {
+                    states.add(state);
+                }
+            }
+
+            String deal = "Deal " + dealNumber;
+            for (int i = states.size() - 2; i >= 0; i--) {
+                assertTrue(deal, game.applyMove(Move.UNDO));
+                assertEquals(deal + " undone to move " + i, states.get(i), PackedState.of(game));
+            }
+            assertFalse(game.canUndo());
+
+            for (int i = 1; i < states.size(); i++) {
+                assertTrue(deal, game.applyMove(Move.REDO));
+                assertEquals(deal + " redone to move " + i, states.get(i), PackedState.of(game));
+            }
+            assertFalse(game.canRedo());
+        }
+    }
+
+    @Test
+    public void newMovesReplaceUndoneMoves() {
+        Random random = new Random(10);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+
+        for (long dealNumber = 0; dealNumber < GAMES; dealNumber++) {
+            Game game = new Game((GameListener) null, dealNumber);
+            // The states the history leads through, and how many of them are behind the game
+            List<PackedState> states = new ArrayList<>();
+            states.add(PackedState.of(game));
+            int position = 0;
+
+            for (int i = 0; i < MOVES_PER_GAME; i++) {
+                int choice = random.nextInt(4);
+                if (choice == 0 && position > 0) {
+                    assertTrue(game.applyMove(Move.UNDO));
+                    position--;
+                } else if (choice == 1 && position < states.size() - 1) {
+                    assertTrue(game.applyMove(Move.REDO));
+                    position++;
+                } else {
+                    int count = game.getLegalMoves(moves);
+                    if (count == 0)
+                        break;
+
+                    game.applyMove(moves[random.nextInt(count)]);
+                    PackedState state = PackedState.of(game);
+                    if (!state.equals(states.get(position))) {
+                        states.subList(position + 1, states.size()).clear();
+                        states.add(state);
+                        position++;
+                    }
+                }
+
+                assertEquals("Deal " + dealNumber + " step " + i, states.get(position), PackedState.of(game));
+                // The hash the stacks kept up to date has to match hashing the position from scratch
+                assertEquals(states.get(position).getPositionHash(), game.getPositionHash());
+                assertEquals(position > 0, game.canUndo());
+                assertEquals(position < states.size() - 1, game.canRedo());
+            }
+        }
+    }
+
+    @Test
+    public void historyForgetsTheOldestMoves() {
+        Game game = new Game((GameListener) null, 1);
+        for (int i = 0; i < MoveHistory.DEFAULT_CAPACITY + 100; i++) {
+            game.applyMove(Move.CYCLE_STOCK);
+        }
+
+        int undone = 0;
+        while (game.applyMove(Move.UNDO)) {
+            undone++;
+        }
+        assertEquals(MoveHistory.DEFAULT_CAPACITY, undone);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+    Draws a fixed board with BoardRenderer and compares it with the golden images in src/test/resources/golden, which
+    were drawn when the renderer was added. The board at full size has to match exactly. The thumbnail is scaled with
+    bilinear filtering, which Java2D pipelines may round differently, so small differences are allowed there.
+
+    Runs headless, see the test task in build.gradle. When a change to the board is meant to be seen, replace the
+    golden images with the ones written to the temporary folder named in the failure.
+ */
+
+package solitaire.graphics;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import solitaire.game.Game;
+import solitaire.game.Layout;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoardRendererTest {
+    private final static double THUMBNAIL_SCALE = 0.1;
+    private final static int THUMBNAIL_TOLERANCE = 8;
+
+    @BeforeClass
+    public static void loadImages() {
+        ImageLoader.init("images");
+    }
+
+    @Test
+    public void boardMatchesGoldenImage() throws IOException {
+        BufferedImage actual = BoardRenderer.render(goldenGame(), 1);
+        BufferedImage expected = readGolden("board.png");
+
+        assertEquals(0, countDifferentPixels(expected, actual, 0, "board"));
+    }
+
+    @Test
+    public void thumbnailMatchesGoldenImage() throws IOException {
+        BufferedImage actual = BoardRenderer.render(goldenGame(), THUMBNAIL_SCALE);
+        BufferedImage expected = readGolden("thumbnail.png");
+
+        assertEquals(0, countDifferentPixels(expected, actual, THUMBNAIL_TOLERANCE, "thumbnail"));
+    }
+
+    @Test
+    public void drawingDoesNotChangeTheGame() {
+        Game game = goldenGame();
+        PackedState before = PackedState.of(game);
+        BufferedImage first = copy(BoardRenderer.render(game, 1));
+        assertEquals(before, PackedState.of(game));
+
+        BoardRenderer renderer = new BoardRenderer(1);
+        renderer.render(new Game(null, 7));
+        assertEquals(0, BoardRenderer.countDifferentPixels(first, renderer.render(game), 0));
+    }
+
+    @Test
+    public void countsDifferentPixels() {
+        BufferedImage a = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        BufferedImage b = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        b.setRGB(1, 1, 0x000005);
+        b.setRGB(2, 2, 0x300000);
+
+        assertEquals(2, BoardRenderer.countDifferentPixels(a, b, 0));
+        assertEquals(1, BoardRenderer.countDifferentPixels(a, b, 5));
+        assertEquals(0, BoardRenderer.countDifferentPixels(a, b, 0x30));
+    }
+
+    /**
+     * @return Deal 42 part way through, with cards on every kind of stack and a selected card, so every sprite is
+     * drawn
+     */
+    private static Game goldenGame() {
+        Game game = new Game(null, 42);
+        Random random = new Random(42);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        for (int i = 0; i < 60; i++) {
+            int count = game.getLegalMoves(moves);
+            game.applyMove(moves[random.nextInt(count)]);
+        }
+
+        int top = game.getStack(0).getCardCount() - 1;
+        game.onClick(Layout.cardX(game, 0, Math.max(top, 0)) + 1, Layout.cardY(game, 0, Math.max(top, 0)) + 1);
+        return game;
+    }
+
+    private static BufferedImage readGolden(String name) throws IOException {
+        try (InputStream in = BoardRendererTest.class.getResourceAsStream("/golden/" + name)) {
+            assertTrue("The golden image " + name + " is missing", in != null);
+            return ImageIO.read(in);
+        }
+    }
+
+    /**
+     * Compares the images, writing the actual image to a temporary file if they differ so it can be looked at
+     */
+    private static int countDifferentPixels(BufferedImage expected, BufferedImage actual, int tolerance, String name)
+            throws IOException {
+        int different = BoardRenderer.countDifferentPixels(expected, actual, tolerance);
+        if (different > 0) {
+            File file = File.createTempFile(name, ".png");
+            ImageIO.write(actual, "png", file);
+            System.err.println(different + " pixels of the " + name + " differ, it was drawn to " + file);
+        }
+        return different;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.getGraphics().drawImage(image, 0, 0, null);
+        return copy;
+    }
+}
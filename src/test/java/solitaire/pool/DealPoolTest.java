@@ -0,0 +1,96 @@
+/*
+    Fills a deal pool in one run, and another in a run that is cut off with the last record and index entry only
+    partly written, then continued. Both pools have to end up byte for byte the same.
+ */
+
+package solitaire.pool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import solitaire.solver.SolveResult;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class DealPoolTest {
+    private final static int DEALS = 200;
+    private final static int STOPPED_AT = 100;
+    private final static long MAX_NODES = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumedRunMatchesUninterruptedRun() throws IOException {
+        Path whole = folder.getRoot().toPath().resolve("whole.pool");
+        try (DealPool pool = new DealPool(whole, MAX_NODES)) {
+            new DealPoolGenerator(pool, 2).generate(DEALS);
+            assertEquals(DEALS, pool.getDealCount());
+        }
+
+        Path resumed = folder.getRoot().toPath().resolve("resumed.pool");
+        try (DealPool pool = new DealPool(resumed, MAX_NODES)) {
+            new DealPoolGenerator(pool, 2).generate(STOPPED_AT);
+        }
+
+        // Tears the last record and the last index entry in half, like a crash in the middle of writing them
+        tear(resumed, DealPool.RECORD_SIZE / 2);
+        tear(index(resumed), 2);
+
+        try (DealPool pool = new DealPool(resumed, MAX_NODES)) {
+            assertEquals(STOPPED_AT - 1, pool.getDealCount());
+            new DealPoolGenerator(pool, 2).generate(DEALS);
+        }
+
+        assertArrayEquals(Files.readAllBytes(whole), Files.readAllBytes(resumed));
+        assertArrayEquals(Files.readAllBytes(index(whole)), Files.readAllBytes(index(resumed)));
+    }
+
+    @Test
+    public void nextWinnableSkipsOtherDeals() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("deals.pool");
+        try (DealPool pool = new DealPool(file, MAX_NODES)) {
+            new DealPoolGenerator(pool, 1).generate(STOPPED_AT);
+
+            int winnable = 0;
+            for (int deal = 0; deal < STOPPED_AT; deal++) {
+                if (pool.getStatus(deal) == SolveResult.SOLVABLE) {
+                    assertEquals(deal, pool.getWinnable(winnable++));
+                }
+            }
+            assertEquals(winnable, pool.getWinnableCount());
+
+            for (int deal = 0; deal < STOPPED_AT; deal++) {
+                int next = pool.nextWinnable(deal);
+                int end = next == -1 ? STOPPED_AT : next;
+                for (int skipped = deal; skipped < end; skipped++) {
+                    assertNotEquals(SolveResult.SOLVABLE, pool.getStatus(skipped));
+                }
+                if (next != -1) {
+                    assertEquals(SolveResult.SOLVABLE, pool.getStatus(next));
+                }
+            }
+        }
+    }
+
+    private static Path index(Path pool) {
+        return pool.resolveSibling(pool.getFileName() + DealPool.INDEX_SUFFIX);
+    }
+
+    /**
+     * Cuts bytes off the end of a file
+     */
+    private static void tear(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+}
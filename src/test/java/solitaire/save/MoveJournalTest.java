@@ -0,0 +1,181 @@
+/*
+    Journals seeded random games with undo and redo, lets the background thread compact the journal while moves are
+    still being made, then recovers the game from the file. The recovered game has to hold the same cards and the same
+    undo and redo as the game that was journaled, also when it was loaded from a save with undo history and undone
+    past the start of the journal.
+ */
+
+package solitaire.save;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MoveJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversTheJournaledGame() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("session.journal");
+        Game game = new Game(null, 11);
+        Random random = new Random(11);
+
+        MoveJournal journal = MoveJournal.start(file, game);
+        play(game, random, 500);
+        journal.close().join();
+
+        assertSameGame(game, MoveJournal.recover(file));
+    }
+
+    @Test
+    public void compactsWhileMovesAreMade() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("session.journal");
+        Game game = new Game(null, 12);
+        Random random = new Random(12);
+
+        MoveJournal journal = MoveJournal.start(file, game);
+        // Most of the journal becomes moves that were undone
+        int records = 0;
+        for (int round = 0; round < 8; round++) {
+            records += play(game, random, 150);
+            while (game.canUndo()) {
+                game.applyMove(Move.UNDO);
+                records++;
+            }
+        }
+        records += play(game, random, 100);
+
+        long deadline = System.currentTimeMillis() + 5 * MoveJournal.FORCE_INTERVAL_MS;
+        // Moves keep coming while the background thread creates and compacts the journal
+        while ((Files.notExists(file) || Files.size(file) >= (long) records * MoveJournal.RECORD_SIZE / 2)
+                && System.currentTimeMillis() < deadline) {
+            records += play(game, random, 1);
+            Thread.sleep(5);
+        }
+        assertTrue("The journal was not compacted",
+                Files.size(file) < (long) records * MoveJournal.RECORD_SIZE / 2);
+
+        play(game, random, 200);
+        journal.close().join();
+
+        assertSameGame(game, MoveJournal.recover(file));
+    }
+
+    @Test
+    public void undoesPastTheStartOfTheJournal() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("session.journal");
+        Game played = new Game(null, 13);
+        Random random = new Random(13);
+        play(played, random, 300);
+        // The game is loaded with its history, so it can be undone further back than the journal goes
+        Game game = SaveFile.fromBytes(SaveFile.toBytes(played));
+        assertTrue(game.canUndo());
+
+        MoveJournal journal = MoveJournal.start(file, game);
+        for (int i = 0; i < 50 && game.canUndo(); i++) {
+            assertTrue(game.applyMove(Move.UNDO));
+        }
+        play(game, random, 100);
+        while (game.canUndo()) {
+            game.applyMove(Move.UNDO);
+        }
+        play(game, random, 100);
+        journal.close().join();
+
+        assertSameGame(game, MoveJournal.recover(file));
+    }
+
+    @Test
+    public void compactsAGameUndonePastTheStartOfTheJournal() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("session.journal");
+        Game played = new Game(null, 14);
+        Random random = new Random(14);
+        play(played, random, 300);
+        Game game = SaveFile.fromBytes(SaveFile.toBytes(played));
+
+        MoveJournal journal = MoveJournal.start(file, game);
+        int records = 0;
+        while (records < MoveJournal.COMPACT_MIN_RECORDS) {
+            while (game.canUndo()) {
+                game.applyMove(Move.UNDO);
+                records++;
+            }
+            records += play(game, random, 100);
+        }
+
+        long deadline = System.currentTimeMillis() + 5 * MoveJournal.FORCE_INTERVAL_MS;
+        // The journal is created by the background thread too
+        while ((Files.notExists(file) || Files.size(file) >= (long) records * MoveJournal.RECORD_SIZE / 2)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("The journal was not compacted",
+                Files.size(file) < (long) records * MoveJournal.RECORD_SIZE / 2);
+
+        play(game, random, 100);
+        journal.close().join();
+
+        assertSameGame(game, MoveJournal.recover(file));
+    }
+
+    /**
+     * Makes random moves, undoing and redoing now and then
+     *
+     * @return How many moves, undos and redos were made, which is how many records they add to the journal
+     */
+    private static int play(Game game, Random random, int steps) {
+        int made = 0;
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        for (int i = 0; i < steps; i++) {
+            int choice = random.nextInt(10);
+            if (choice == 0 && game.canUndo()) {
+                game.applyMove(Move.UNDO);
+                made++;
+            } else if (choice == 1 && game.canRedo()) {
+                game.applyMove(Move.REDO);
+                made++;
+            } else {
+                int count = game.getLegalMoves(moves);
+                if (count > 0) {
+                    game.applyMove(moves[random.nextInt(count)]);
+                    made++;
+                }
+            }
+        }
+        return made;
+    }
+
+    private static void assertSameGame(Game expected, MoveJournal recovered) throws IOException {
+        Game game = recovered.getGame();
+        recovered.close().join();
+
+        assertEquals(PackedState.of(expected), PackedState.of(game));
+        assertEquals(expected.moves, game.moves);
+
+        while (expected.canRedo()) {
+            assertTrue(game.applyMove(Move.REDO));
+            expected.applyMove(Move.REDO);
+            assertEquals(PackedState.of(expected), PackedState.of(game));
+        }
+        assertFalse(game.canRedo());
+
+        while (expected.canUndo()) {
+            assertTrue(game.applyMove(Move.UNDO));
+            expected.applyMove(Move.UNDO);
+            assertEquals(PackedState.of(expected), PackedState.of(game));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+    Checks that games with their undo history survive being saved and loaded, that damaged saves are refused instead
+    of loading a different game, and that saves written by the first version of the game still load and are moved to
+    the binary format when saved again.
+ */
+
+package solitaire.save;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SaveFileTest {
+    private final static int GAMES = 200;
+    private final static int MAGIC = 0x53534156;
+    // Where the parts of a binary save start, see SaveFile
+    private final static int CARDS_OFFSET = 4 + 4 + 1 + 8 + 4 + 4;
+    private final static int HISTORY_OFFSET = CARDS_OFFSET + PackedState.SIZE + 4 + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void gamesRoundTrip() throws IOException {
+        Random random = new Random(23);
+        for (int i = 0; i < GAMES; i++) {
+            Game game = playedGame(random, i * 7919L);
+            Game loaded = SaveFile.fromBytes(SaveFile.toBytes(game));
+
+            assertSameGame(game, loaded);
+            assertArrayEquals(game.getHistory(), loaded.getHistory());
+            assertEquals(game.getUndoCount(), loaded.getUndoCount());
+
+            // The loaded history has to take the loaded game back the same way
+            while (game.canUndo()) {
+                assertTrue(loaded.undo());
+                game.undo();
+                assertEquals(PackedState.of(game), PackedState.of(loaded));
+            }
+        }
+    }
+
+    @Test
+    public void damagedSavesAreRefused() throws IOException {
+        byte[] save = SaveFile.toBytes(playedGame(new Random(1), 1));
+
+        // Every byte after the magic number, which tells the binary format from the old one
+        for (int i = 4; i < save.length; i++) {
+            byte[] damaged = save.clone();
+            damaged[i] ^= 0x10;
+            assertRefused("Byte " + i + " changed", damaged);
+        }
+
+        for (int length = 4; length < save.length; length++) {
+            assertRefused("Cut to " + length + " bytes", Arrays.copyOf(save, length));
+        }
+    }
+
+    @Test
+    public void historyOfAnotherPositionIsRefused() throws IOException {
+        Random random = new Random(6);
+        for (int i = 0; i < 20; i++) {
+            Game game = playedGame(random, i);
+            if (!game.canUndo())
+                continue;
+
+            byte[] save = SaveFile.toBytes(game);
+            byte[] otherCards = PackedState.of(new Game(null, i + 1000)).toBytes();
+            System.arraycopy(otherCards, 0, save, CARDS_OFFSET, otherCards.length);
+            assertCorrupt("Game " + i + " with the cards of another deal", withChecksum(save));
+        }
+    }
+
+    @Test
+    public void historyThatCannotBeRedoneIsRefused() throws IOException {
+        Game game = playedGame(new Random(7), 7);
+        while (game.getHistory().length - game.getUndoCount() < 3 && game.undo()) {
+            // Leaves moves to redo
+        }
+        byte[] save = SaveFile.toBytes(game);
+        ByteBuffer buffer = ByteBuffer.wrap(save);
+
+        // Whether a move turned a card over is known from the cards, so a redo that says otherwise does not fit
+        for (int i = game.getUndoCount(); i < game.getHistory().length; i++) {
+            byte[] damaged = save.clone();
+            int position = HISTORY_OFFSET + i * 4;
+            ByteBuffer.wrap(damaged).putInt(position, buffer.getInt(position) ^ 1 << 16);
+            assertCorrupt("Entry " + i + " changed", withChecksum(damaged));
+        }
+
+        byte[] damaged = save.clone();
+        ByteBuffer.wrap(damaged).putInt(HISTORY_OFFSET - 4, game.getHistory().length + 1);
+        assertCorrupt("More to undo than there is", withChecksum(damaged));
+    }
+
+    @Test
+    public void firstVersionSaveLoadsAndIsMigrated() throws IOException {
+        byte[] json = readResource("/saves/baseline.json");
+        Game expected = SaveFile.GSON.fromJson(new String(json, StandardCharsets.UTF_8), Game.class);
+
+        Path file = folder.getRoot().toPath().resolve("first.sav");
+        Files.write(file, firstVersionSave(new String(json, StandardCharsets.UTF_8)));
+        Game loaded = SaveFile.read(file);
+        assertSameGame(expected, loaded);
+
+        SaveFile.write(loaded, file);
+        assertEquals(MAGIC, ByteBuffer.wrap(Files.readAllBytes(file)).getInt());
+        assertSameGame(expected, SaveFile.read(file));
+    }
+
+    @Test(expected = CorruptSaveException.class)
+    public void changedFirstVersionSaveIsRefused() throws IOException {
+        String json = new String(readResource("/saves/baseline.json"), StandardCharsets.UTF_8);
+        byte[] save = firstVersionSave(json);
+        String changed = json.replace("\"moves\":5", "\"moves\":6");
+        System.arraycopy(changed.getBytes(StandardCharsets.UTF_8), 0, save, 0, changed.length());
+        SaveFile.fromBytes(save);
+    }
+
+    @Test
+    public void writeReplacesTheSaveAndLeavesNothingElse() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("game.sav");
+        Random random = new Random(4);
+        for (int i = 0; i < 5; i++) {
+            Game game = playedGame(random, i);
+            SaveFile.write(game, file);
+            assertSameGame(game, SaveFile.read(file));
+        }
+
+        String[] files = folder.getRoot().list();
+        assertEquals(Arrays.toString(files), 1, files.length);
+    }
+
+    @Test
+    public void writeKeepsPermissions() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("game.sav");
+        Assume.assumeTrue(Files.getFileStore(folder.getRoot().toPath())
+                .supportsFileAttributeView(PosixFileAttributeView.class));
+
+        // A new save gets the permissions of any new file, not the owner only ones of a temporary file
+        SaveFile.write(new Game(null, 1), file);
+        Path reference = Files.createFile(folder.getRoot().toPath().resolve("reference"));
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(file));
+
+        Set<PosixFilePermission> shared = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(file, shared);
+        SaveFile.write(new Game(null, 2), file);
+        assertEquals(shared, Files.getPosixFilePermissions(file));
+    }
+
+    /**
+     * @return A game part way through, with some of its moves undone so it has moves to redo too
+     */
+    private static Game playedGame(Random random, long dealNumber) {
+        Game game = new Game(null, dealNumber);
+        int[] moves = new int[Move.MAX_LEGAL_MOVES];
+        for (int i = random.nextInt(120); i > 0; i--) {
+            game.applyMove(moves[random.nextInt(game.getLegalMoves(moves))]);
+        }
+        for (int i = random.nextInt(10); i > 0; i--) {
+            game.undo();
+        }
+        game.minutes = random.nextInt(60);
+        game.seconds = random.nextInt(60);
+        return game;
+    }
+
+    private static void assertSameGame(Game expected, Game actual) {
+        assertEquals(PackedState.of(expected), PackedState.of(actual));
+        assertEquals(expected.moves, actual.moves);
+        assertEquals(expected.minutes, actual.minutes);
+        assertEquals(expected.seconds, actual.seconds);
+        assertEquals(expected.getDealNumber(), actual.getDealNumber());
+    }
+
+    private static void assertCorrupt(String message, byte[] save) throws IOException {
+        try {
+            SaveFile.fromBytes(save);
+            fail(message + " loaded");
+        } catch (CorruptSaveException e) {
+            // Refused
+        }
+    }
+
+    /**
+     * Replaces the checksum at the end of a changed save, so the save is only refused if what it holds is checked
+     */
+    private static byte[] withChecksum(byte[] save) {
+        CRC32 crc = new CRC32();
+        crc.update(save, 0, save.length - 4);
+        ByteBuffer.wrap(save).putInt(save.length - 4, (int) crc.getValue());
+        return save;
+    }
+
+    private static void assertRefused(String message, byte[] save) {
+        try {
+            SaveFile.fromBytes(save);
+            fail(message + " loaded");
+        } catch (IOException e) {
+            // Refused
+        }
+    }
+
+    /**
+     * Writes a save the way the first version did: the JSON, a line break, and the SHA-256 hash of the JSON turned
+     * into text with the default charset
+     */
+    private static byte[] firstVersionSave(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(bytes)) {
+            writer.println(json);
+            writer.print(new String(sha256(json.getBytes(StandardCharsets.UTF_8))));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] sha256(byte[] bytes) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = SaveFileTest.class.getResourceAsStream(name)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
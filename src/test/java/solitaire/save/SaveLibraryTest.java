@@ -0,0 +1,77 @@
+/*
+    Opens a library of a folder of saves and checks that its index is kept in the index folder, not in the folder of
+    saves, and that opening the library again finds the saves through the index.
+ */
+
+package solitaire.save;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import solitaire.game.Game;
+import solitaire.game.PackedState;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SaveLibraryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexIsKeptOutsideTheSaveFolder() throws Exception {
+        Path saves = folder.newFolder("saves").toPath();
+        Path indexes = folder.getRoot().toPath().resolve("indexes");
+        Game game = new Game(null, 24);
+        SaveFile.write(game, saves.resolve("game" + SaveLibrary.SAVE_SUFFIX));
+
+        List<SaveSummary> found = openAndList(saves, indexes);
+        assertEquals(1, found.size());
+        assertEquals(PackedState.of(game), found.get(0).getCards());
+
+        assertArrayEquals(new String[]{"game" + SaveLibrary.SAVE_SUFFIX}, saves.toFile().list());
+        String indexName = SaveLibrary.indexName(saves.toAbsolutePath().normalize());
+        assertArrayEquals(new String[]{indexName}, indexes.toFile().list());
+
+        // Read back from the index
+        found = openAndList(saves, indexes);
+        assertEquals(1, found.size());
+        assertEquals(game.getDealNumber(), found.get(0).getDealNumber());
+    }
+
+    @Test
+    public void foldersGetTheirOwnIndex() {
+        Path root = folder.getRoot().toPath().toAbsolutePath();
+        String first = SaveLibrary.indexName(root.resolve("a"));
+        String second = SaveLibrary.indexName(root.resolve("b"));
+
+        assertEquals(first, SaveLibrary.indexName(root.resolve("a")));
+        assertNotEquals(first, second);
+        assertTrue(first, first.endsWith(SaveLibrary.INDEX_SUFFIX));
+    }
+
+    /**
+     * Opens the library and waits until it was told about saves, which is after the index was read or written
+     */
+    private static List<SaveSummary> openAndList(Path saves, Path indexes) throws Exception {
+        CompletableFuture<List<SaveSummary>> found = new CompletableFuture<>();
+        SaveLibrary library = SaveLibrary.open(saves, indexes, opened -> {
+            if (!opened.getSaves().isEmpty()) {
+                found.complete(opened.getSaves());
+            }
+        }, Runnable::run);
+
+        try {
+            return found.get(10, TimeUnit.SECONDS);
+        } finally {
+            library.close();
+        }
+    }
+}
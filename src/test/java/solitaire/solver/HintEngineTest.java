@@ -0,0 +1,73 @@
+/*
+    Checks which hints HintEngine keeps: a hint the search decided is handed out again from the cache, while a hint
+    found when the time budget ran out is searched for again. The listeners run on the thread that delivers the hint,
+    which is the asking thread for a cached hint and the background thread for a searched one.
+ */
+
+package solitaire.solver;
+
+import org.junit.Test;
+import solitaire.game.Game;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HintEngineTest {
+    @Test
+    public void decidedHintsAreCached() throws Exception {
+        HintEngine engine = new HintEngine(Runnable::run, 10000);
+        try {
+            Game game = nearlyWonGame();
+            assertEquals(SolveResult.SOLVABLE, requestHint(engine, game).status);
+            assertSame(Thread.currentThread(), deliveringThread(engine, game));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void hintsOutOfTimeAreSearchedAgain() throws Exception {
+        HintEngine engine = new HintEngine(Runnable::run, 0);
+        try {
+            Game game = new Game(null, 0);
+            assertEquals(SolveResult.UNKNOWN, requestHint(engine, game).status);
+            assertNotSame(Thread.currentThread(), deliveringThread(engine, game));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * @return A game a few moves away from being won, found by playing most of the solution of a deal
+     */
+    private static Game nearlyWonGame() {
+        Solver solver = new Solver(new TranspositionTable(1 << 16), 200000, Solver.DEFAULT_MAX_DEPTH);
+        for (long dealNumber = 0; ; dealNumber++) {
+            SolveResult result = solver.solve(new Game(null, dealNumber));
+            if (result.isSolvable()) {
+                Game game = new Game(null, dealNumber);
+                int[] moves = result.getMoves();
+                for (int i = 0; i < moves.length - 10; i++) {
+                    game.applyMove(moves[i]);
+                }
+                return game;
+            }
+        }
+    }
+
+    private static Hint requestHint(HintEngine engine, Game game) throws Exception {
+        CompletableFuture<Hint> hint = new CompletableFuture<>();
+        engine.requestHint(game, hint::complete);
+        return hint.get(30, TimeUnit.SECONDS);
+    }
+
+    private static Thread deliveringThread(HintEngine engine, Game game) throws Exception {
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        engine.requestHint(game, hint -> thread.complete(Thread.currentThread()));
+        return thread.get(30, TimeUnit.SECONDS);
+    }
+}
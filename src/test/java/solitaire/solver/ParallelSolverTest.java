@@ -0,0 +1,107 @@
+/*
+    Solves seeded deals with ParallelSolver and checks the results against Solver: every solution has to win the game
+    when played through the move API, and both solvers have to agree on which deals can be won. The subtree search is
+    also run on its own, without the probes that decide most deals first, to check that a win stops the other subtree
+    tasks, and that positions pinned by the search paths of other threads never make a winnable deal unsolvable.
+ */
+
+package solitaire.solver;
+
+import org.junit.After;
+import org.junit.Test;
+import solitaire.game.Game;
+import solitaire.game.GameListener;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSolverTest {
+    private final static int THREADS = 4;
+    private final static long MAX_NODES = 500000;
+    // Deals Solver wins or proves unsolvable within a few thousand nodes
+    private final static long[] SOLVABLE_DEALS = {2, 3, 4, 5, 7, 9, 10, 12, 13, 16};
+    private final static long[] UNSOLVABLE_DEALS = {162, 964, 2740};
+
+    private ParallelSolver solver;
+
+    @After
+    public void shutdown() {
+        if (solver != null) {
+            solver.shutdown();
+        }
+    }
+
+    @Test
+    public void solutionsWinTheGame() {
+        solver = new ParallelSolver(THREADS, new StripedTranspositionTable(1 << 18), MAX_NODES,
+                Solver.DEFAULT_MAX_DEPTH);
+
+        for (long dealNumber : SOLVABLE_DEALS) {
+            SolveResult result = solver.solve(deal(dealNumber));
+            assertEquals("Deal " + dealNumber, SolveResult.SOLVABLE, result.status);
+            replay(dealNumber, result);
+        }
+    }
+
+    @Test
+    public void agreesWithSolver() {
+        solver = new ParallelSolver(THREADS, new StripedTranspositionTable(1 << 18), MAX_NODES,
+                Solver.DEFAULT_MAX_DEPTH);
+
+        for (long[] deals : new long[][]{SOLVABLE_DEALS, UNSOLVABLE_DEALS}) {
+            for (long dealNumber : deals) {
+                Solver single = new Solver(new TranspositionTable(1 << 16), MAX_NODES, Solver.DEFAULT_MAX_DEPTH);
+                int expected = single.solve(deal(dealNumber)).status;
+                assertNotEquals("Deal " + dealNumber + " was not decided", SolveResult.UNKNOWN, expected);
+                assertEquals("Deal " + dealNumber, expected, solver.solve(deal(dealNumber)).status);
+            }
+        }
+    }
+
+    @Test
+    public void winStopsTheOtherSubtrees() {
+        // One thread runs the tasks in the same order every time, so the node counts are repeatable. The subtrees
+        // left after the win would use up the whole budget if they were searched
+        solver = new ParallelSolver(1, new StripedTranspositionTable(1 << 18), MAX_NODES, Solver.DEFAULT_MAX_DEPTH);
+
+        for (long dealNumber : new long[]{3, 5}) {
+            SolveResult result = solver.searchSubtrees(PackedState.of(deal(dealNumber)), MAX_NODES);
+            assertEquals("Deal " + dealNumber, SolveResult.SOLVABLE, result.status);
+            assertTrue("Deal " + dealNumber + " searched " + result.nodes + " nodes after its win",
+                    result.nodes < MAX_NODES / 10);
+            replay(dealNumber, result);
+        }
+    }
+
+    @Test
+    public void pinnedPositionsOfOtherThreadsDoNotHideWins() {
+        // Every search goes through the table shared by the threads, and the table is reused from deal to deal
+        solver = new ParallelSolver(THREADS, new StripedTranspositionTable(1 << 16), MAX_NODES,
+                Solver.DEFAULT_MAX_DEPTH);
+
+        for (int round = 0; round < 3; round++) {
+            for (long dealNumber : SOLVABLE_DEALS) {
+                SolveResult result = solver.searchSubtrees(PackedState.of(deal(dealNumber)), MAX_NODES);
+                assertNotEquals("Deal " + dealNumber + " in round " + round, SolveResult.UNSOLVABLE, result.status);
+                if (result.isSolvable()) {
+                    replay(dealNumber, result);
+                }
+            }
+        }
+    }
+
+    private static Game deal(long dealNumber) {
+        return new Game((GameListener) null, dealNumber);
+    }
+
+    private static void replay(long dealNumber, SolveResult result) {
+        Game game = deal(dealNumber);
+        for (int move : result.getMoves()) {
+            assertTrue("Deal " + dealNumber + ": " + Move.toString(move) + " is not legal", game.applyMove(move));
+        }
+        assertTrue("Deal " + dealNumber + " is not won after its solution", game.checkWinConditions());
+    }
+}
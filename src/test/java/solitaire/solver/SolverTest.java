@@ -0,0 +1,67 @@
+/*
+    Solves seeded deals and plays every solution found on a Game through the move API. Each solution has to be made
+    of legal moves and end with the game won.
+ */
+
+package solitaire.solver;
+
+import org.junit.Test;
+import solitaire.game.Game;
+import solitaire.game.Move;
+import solitaire.game.PackedState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SolverTest {
+    private final static int DEALS = 40;
+    private final static long MAX_NODES = 200000;
+
+    @Test
+    public void solutionsWinTheGame() {
+        Solver solver = new Solver(new TranspositionTable(1 << 16), MAX_NODES, Solver.DEFAULT_MAX_DEPTH);
+        int solved = 0;
+
+        for (long dealNumber = 0; dealNumber < DEALS; dealNumber++) {
+            SolveResult result = solver.solve(new Game(null, dealNumber));
+            if (!result.isSolvable())
+                continue;
+
+            solved++;
+            replay(dealNumber, result);
+        }
+
+        // Most deals are winnable and found quickly, so a solver that finds nothing is broken
+        assertTrue("Only " + solved + " of " + DEALS + " deals were solved", solved >= DEALS / 2);
+    }
+
+    @Test
+    public void wonPositionIsSolvedWithoutMoves() {
+        SolveResult result = new Solver().solve(wonState());
+        assertEquals(SolveResult.SOLVABLE, result.status);
+        assertEquals(0, result.getMoveCount());
+    }
+
+    private static void replay(long dealNumber, SolveResult result) {
+        Game game = new Game(null, dealNumber);
+        for (int move : result.getMoves()) {
+            assertTrue("Deal " + dealNumber + ": " + Move.toString(move) + " is not legal", game.applyMove(move));
+        }
+        assertTrue("Deal " + dealNumber + " is not won after its solution", game.checkWinConditions());
+    }
+
+    /**
+     * @return A position with all 52 cards on the foundations
+     */
+    private static PackedState wonState() {
+        byte[] bytes = new byte[PackedState.SIZE];
+        int offset = Game.STACK_COUNT;
+        for (int foundation = 0; foundation < Game.FOUNDATION_COUNT; foundation++) {
+            bytes[Game.STACK_FOUNDATION_FIRST + foundation] = 13;
+            for (int rank = 0; rank < 13; rank++) {
+                bytes[offset++] = (byte) (0x40 | foundation * 13 + rank);
+            }
+        }
+        return PackedState.fromBytes(bytes);
+    }
+}